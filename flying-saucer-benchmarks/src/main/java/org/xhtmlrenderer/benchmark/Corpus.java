@@ -0,0 +1,198 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.util.Random;
+
+/**
+ * The generated documents the benchmarks run over. Each one stresses a
+ * different part of the renderer; the text is random but the same from run
+ * to run, so results can be compared between builds.
+ */
+public enum Corpus {
+    /** Paragraphs of plain text, mostly line breaking. */
+    LONG_TEXT {
+        String getStylesheet() {
+            return "body { font: 11pt serif; margin: 2em; }\n" +
+                    "p { text-align: justify; margin: 0 0 0.5em 0; }\n" +
+                    "p.lead { font-size: 14pt; font-weight: bold; }\n" +
+                    "em { color: #336; }\n";
+        }
+
+        void appendBody(final StringBuilder out, final Random random) {
+            for (int i = 0; i < 2000; i++) {
+                out.append(i % 25 == 0 ? "<p class=\"lead\">" : "<p>");
+                appendWords(out, random, 40 + random.nextInt(80));
+                out.append(" <em>");
+                appendWords(out, random, 3);
+                out.append("</em>.</p>\n");
+            }
+        }
+    },
+
+    /** A single table with many rows, sized by the automatic table layout. */
+    HUGE_TABLE {
+        String getStylesheet() {
+            return "body { font: 9pt sans-serif; }\n" +
+                    "table { border-collapse: collapse; width: 100%; }\n" +
+                    "th, td { border: 1px solid #999; padding: 2px 4px; }\n" +
+                    "thead { display: table-header-group; background: #ddd; }\n" +
+                    "tr.odd td { background: #f4f4f4; }\n" +
+                    "td.number { text-align: right; }\n";
+        }
+
+        void appendBody(final StringBuilder out, final Random random) {
+            out.append("<table><thead><tr>");
+            for (int column = 0; column < 8; column++) {
+                out.append("<th>Column ").append(column).append("</th>");
+            }
+            out.append("</tr></thead><tbody>\n");
+            for (int row = 0; row < 1000; row++) {
+                out.append(row % 2 == 0 ? "<tr>" : "<tr class=\"odd\">");
+                for (int column = 0; column < 8; column++) {
+                    if (column % 2 == 0) {
+                        out.append("<td>");
+                        appendWords(out, random, 1 + random.nextInt(4));
+                    } else {
+                        out.append("<td class=\"number\">").append(random.nextInt(100000));
+                    }
+                    out.append("</td>");
+                }
+                out.append("</tr>\n");
+            }
+            out.append("</tbody></table>\n");
+        }
+    },
+
+    /** Deeply nested blocks and inlines, mostly cascade and box building. */
+    DEEP_NESTING {
+        String getStylesheet() {
+            return "body { font: 10pt sans-serif; }\n" +
+                    "div { margin-left: 1px; padding: 1px; border-left: 1px solid #ccc; }\n" +
+                    "div > div > div { border-color: #999; }\n" +
+                    "div.a span { color: #a00; }\n" +
+                    "div.b + div.a span span { font-style: italic; }\n";
+        }
+
+        void appendBody(final StringBuilder out, final Random random) {
+            for (int tree = 0; tree < 50; tree++) {
+                for (int depth = 0; depth < 100; depth++) {
+                    out.append(depth % 2 == 0 ? "<div class=\"a\">" : "<div class=\"b\">");
+                }
+                for (int depth = 0; depth < 20; depth++) {
+                    out.append("<span>");
+                }
+                appendWords(out, random, 10);
+                for (int depth = 0; depth < 20; depth++) {
+                    out.append("</span>");
+                }
+                for (int depth = 0; depth < 100; depth++) {
+                    out.append("</div>");
+                }
+                out.append('\n');
+            }
+        }
+    },
+
+    /** Text flowing around many small floats. */
+    MANY_FLOATS {
+        String getStylesheet() {
+            return "body { font: 10pt serif; }\n" +
+                    ".left { float: left; width: 60px; height: 40px; margin: 2px; background: #cde; }\n" +
+                    ".right { float: right; width: 80px; height: 30px; margin: 2px; background: #edc; }\n" +
+                    ".clear { clear: both; }\n";
+        }
+
+        void appendBody(final StringBuilder out, final Random random) {
+            for (int i = 0; i < 1000; i++) {
+                out.append(random.nextBoolean() ? "<div class=\"left\">" : "<div class=\"right\">");
+                appendWords(out, random, 2);
+                out.append("</div><p>");
+                appendWords(out, random, 10 + random.nextInt(30));
+                out.append("</p>\n");
+                if (i % 50 == 49) {
+                    out.append("<div class=\"clear\"></div>\n");
+                }
+            }
+        }
+    },
+
+    /** Short chapters each starting a new page, with running headers and page numbers. */
+    MANY_PAGES {
+        String getStylesheet() {
+            return "@page { size: a4; margin: 2cm;\n" +
+                    "  @top-center { content: element(header); }\n" +
+                    "  @bottom-right { content: \"Page \" counter(page) \" of \" counter(pages); } }\n" +
+                    "body { font: 11pt serif; }\n" +
+                    ".header { position: running(header); font-size: 8pt; }\n" +
+                    "h1 { page-break-before: always; font-size: 16pt; }\n" +
+                    "p { margin: 0 0 0.5em 0; }\n";
+        }
+
+        void appendBody(final StringBuilder out, final Random random) {
+            out.append("<div class=\"header\">Benchmark corpus</div>\n");
+            for (int chapter = 0; chapter < 300; chapter++) {
+                out.append("<h1>Chapter ").append(chapter + 1).append("</h1>\n");
+                for (int i = 0; i < 6; i++) {
+                    out.append("<p>");
+                    appendWords(out, random, 30 + random.nextInt(60));
+                    out.append("</p>\n");
+                }
+            }
+        }
+    };
+
+    private static final String[] WORDS = {
+            "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit",
+            "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore",
+            "magna", "aliqua", "enim", "ad", "minim", "veniam", "quis", "nostrud",
+            "exercitation", "ullamco", "laboris", "nisi", "aliquip", "ex", "ea", "commodo",
+            "consequat", "duis", "aute", "irure", "in", "reprehenderit", "voluptate"
+    };
+
+    /**
+     * @return the contents of the document's <code>style</code> element
+     */
+    abstract String getStylesheet();
+
+    abstract void appendBody(StringBuilder out, Random random);
+
+    /**
+     * @return the document as XHTML
+     */
+    public String getDocument() {
+        final StringBuilder out = new StringBuilder(1024 * 1024);
+        out.append("<html xmlns=\"http://www.w3.org/1999/xhtml\"><head><title>");
+        out.append(name());
+        out.append("</title><style type=\"text/css\">\n");
+        out.append(getStylesheet());
+        out.append("</style></head><body>\n");
+        appendBody(out, new Random(name().hashCode()));
+        out.append("</body></html>\n");
+        return out.toString();
+    }
+
+    private static void appendWords(final StringBuilder out, final Random random, final int count) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                out.append(' ');
+            }
+            out.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+    }
+}
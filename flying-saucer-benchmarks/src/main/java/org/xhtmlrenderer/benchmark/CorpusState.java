@@ -0,0 +1,96 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.awt.Rectangle;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.resource.HTMLResource;
+import org.xhtmlrenderer.simple.HtmlNamespaceHandler;
+import org.xhtmlrenderer.swing.AWTFontResolver;
+import org.xhtmlrenderer.swing.Java2DTextRenderer;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+
+/**
+ * One document of the {@link Corpus}, generated and parsed once per trial.
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+    /** Width of the viewport for screen layout, in pixels. */
+    static final int VIEWPORT_WIDTH = 800;
+
+    @Param({"LONG_TEXT", "HUGE_TABLE", "DEEP_NESTING", "MANY_FLOATS", "MANY_PAGES"})
+    public Corpus corpus;
+
+    String html;
+    Document document;
+
+    @Setup
+    public void setUp() {
+        html = corpus.getDocument();
+        document = HTMLResource.load(html).getDocument();
+    }
+
+    /**
+     * @return a context set up for screen media the way
+     * {@link org.xhtmlrenderer.swing.Java2DRenderer} does it
+     */
+    static SharedContext newSharedContext() {
+        final SharedContext result = new SharedContext(new NaiveUserAgent());
+        result.setFontResolver(new AWTFontResolver());
+        result.setTextRenderer(new Java2DTextRenderer());
+        result.setDPI(72);
+        result.setDotsPerPixel(1);
+        result.setPrint(false);
+        result.setInteractive(false);
+        result.set_TempCanvas(new Rectangle(0, 0, VIEWPORT_WIDTH, 1000));
+        return result;
+    }
+
+    /**
+     * Matches the document against its stylesheets, the cascaded styles
+     * themselves are only computed when they are asked for.
+     */
+    void setDocumentContext(final SharedContext context) {
+        context.reset();
+        context.getCss().flushStyleSheets();
+        context.setNamespaceHandler(new HtmlNamespaceHandler());
+        context.getCss().setDocumentContext(context, context.getNamespaceHandler(), document, NULL_USER_INTERFACE);
+    }
+
+    private static final UserInterface NULL_USER_INTERFACE = new UserInterface() {
+        public boolean isHover(final Element e) {
+            return false;
+        }
+
+        public boolean isActive(final Element e) {
+            return false;
+        }
+
+        public boolean isFocus(final Element e) {
+            return false;
+        }
+    };
+}
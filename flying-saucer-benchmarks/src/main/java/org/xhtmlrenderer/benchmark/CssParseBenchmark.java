@@ -0,0 +1,98 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xhtmlrenderer.css.parser.CSSErrorHandler;
+import org.xhtmlrenderer.css.parser.CSSParser;
+import org.xhtmlrenderer.css.sheet.Stylesheet;
+import org.xhtmlrenderer.css.sheet.StylesheetInfo.CSSOrigin;
+import org.xhtmlrenderer.util.Configuration;
+
+/**
+ * Parsing stylesheets: the user agent's default stylesheet, which is parsed
+ * for every renderer that doesn't share it, and the stylesheets of the
+ * whole {@link Corpus}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CssParseBenchmark {
+    private static final CSSErrorHandler IGNORE_ERRORS = new CSSErrorHandler() {
+        public void error(final String uri, final String message) {
+        }
+    };
+
+    private String _defaultStylesheet;
+    private String _corpusStylesheets;
+
+    @Setup
+    public void setUp() throws IOException {
+        final String uri = Configuration.valueFor("xr.css.user-agent-default-css") + "XhtmlNamespaceHandler.css";
+        final InputStream in = CssParseBenchmark.class.getResourceAsStream(uri);
+        try {
+            final Reader reader = new InputStreamReader(in, "UTF-8");
+            final StringBuilder text = new StringBuilder();
+            final char[] buffer = new char[4096];
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, count);
+            }
+            _defaultStylesheet = text.toString();
+        } finally {
+            in.close();
+        }
+
+        final StringBuilder sheets = new StringBuilder();
+        for (final Corpus corpus : Corpus.values()) {
+            sheets.append(corpus.getStylesheet());
+        }
+        _corpusStylesheets = sheets.toString();
+    }
+
+    @Benchmark
+    public Stylesheet parseDefaultStylesheet() throws IOException {
+        return new CSSParser(IGNORE_ERRORS).parseStylesheet(
+                "XhtmlNamespaceHandler.css", CSSOrigin.USER_AGENT, new StringReader(_defaultStylesheet));
+    }
+
+    @Benchmark
+    public Stylesheet parseCorpusStylesheets() throws IOException {
+        return new CSSParser(IGNORE_ERRORS).parseStylesheet(
+                "corpus.css", CSSOrigin.AUTHOR, new StringReader(_corpusStylesheets));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xhtmlrenderer.layout.BoxBuilder;
+import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.swing.Java2DFontContext;
+import org.xhtmlrenderer.util.ImageUtil;
+
+/**
+ * Building the box tree and laying it out for the screen. The document is
+ * matched against its stylesheets before each invocation, the cascaded
+ * styles are computed while the boxes are built and so are part of the
+ * measurement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class LayoutBenchmark {
+    private SharedContext _sharedContext;
+    private BufferedImage _canvas;
+
+    @Setup
+    public void setUp() {
+        _sharedContext = CorpusState.newSharedContext();
+        _canvas = ImageUtil.createCompatibleBufferedImage(1, 1);
+    }
+
+    @Setup(Level.Invocation)
+    public void setDocument(final CorpusState state) {
+        state.setDocumentContext(_sharedContext);
+    }
+
+    @Benchmark
+    public BlockBox layout(final CorpusState state) {
+        final LayoutContext c = _sharedContext.newLayoutContextInstance();
+        c.setFontContext(new Java2DFontContext(_canvas.createGraphics()));
+        _sharedContext.getTextRenderer().setup(c.getFontContext());
+
+        final BlockBox root = BoxBuilder.createRootBox(c, state.document);
+        root.setContainingBlock(new ViewportBox(new Rectangle(0, 0, CorpusState.VIEWPORT_WIDTH, 1000)));
+        root.layout(c);
+        return root;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xhtmlrenderer.swing.PageImageListener;
+import org.xhtmlrenderer.swing.PagedImageRenderer;
+
+/**
+ * Rendering every page of a document which has already been laid out to an
+ * image with {@link PagedImageRenderer}, using a pool of
+ * <code>threads</code> threads. The layout is done once per trial and isn't
+ * measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class PagedImageBenchmark {
+    @Param({"1", "4"})
+    public int threads;
+
+    private PagedImageRenderer _renderer;
+    private ForkJoinPool _pool;
+
+    @Setup
+    public void layout(final CorpusState state) {
+        _renderer = new PagedImageRenderer(state.document, null);
+        _renderer.layout();
+        _pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void shutdown() {
+        _pool.shutdown();
+    }
+
+    @Benchmark
+    public long renderPages() throws IOException {
+        final AtomicLong pixels = new AtomicLong();
+        _renderer.renderPages(1.0, _pool, new PageImageListener() {
+            public void pageRendered(final BufferedImage image, final int pageNo) {
+                pixels.addAndGet(image.getWidth() * image.getHeight());
+            }
+        });
+        return pixels.get();
+    }
+}
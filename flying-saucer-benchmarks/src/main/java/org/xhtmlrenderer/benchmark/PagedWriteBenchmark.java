@@ -0,0 +1,69 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.pdf.ITextRendererFactory;
+
+import com.lowagie.text.DocumentException;
+
+/**
+ * Writing a document which has already been laid out as PDF, i.e. painting
+ * it one page at a time. The paged box index of each layer is built while
+ * the first page is painted and is part of the measurement. To compare with
+ * painting without the index run with
+ * <code>-jvmArgsAppend -Dxr.renderer.paged-box-index=false</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class PagedWriteBenchmark {
+    private final ITextRendererFactory _factory = new ITextRendererFactory();
+
+    private ITextRenderer _renderer;
+
+    @Setup(Level.Invocation)
+    public void layout(final CorpusState state) {
+        _renderer = _factory.createRenderer();
+        _renderer.setDocument(state.document, null);
+        _renderer.layout();
+    }
+
+    @Benchmark
+    public long createPDF() throws DocumentException {
+        final PdfBenchmark.CountingOutputStream out = new PdfBenchmark.CountingOutputStream();
+        _renderer.createPDF(out);
+        return out.getCount();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.benchmark;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xhtmlrenderer.pdf.ITextRenderer;
+import org.xhtmlrenderer.pdf.ITextRendererFactory;
+
+import com.lowagie.text.DocumentException;
+
+/**
+ * Laying out a document for print and writing it as PDF. Renderers come
+ * from one {@link ITextRendererFactory}, so the default stylesheet and the
+ * fonts are set up once as in a server rendering many documents.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PdfBenchmark {
+    private final ITextRendererFactory _factory = new ITextRendererFactory();
+
+    @Benchmark
+    public long createPDF(final CorpusState state) throws DocumentException {
+        final ITextRenderer renderer = _factory.createRenderer();
+        renderer.setDocument(state.document, null);
+        renderer.layout();
+
+        final CountingOutputStream out = new CountingOutputStream();
+        renderer.createPDF(out);
+        return out.getCount();
+    }
+
+    /**
+     * Discards the PDF, only its size is kept.
+     */
+    static final class CountingOutputStream extends OutputStream {
+        private long _count;
+
+        public void write(final int b) {
+            _count++;
+        }
+
+        public void write(final byte[] b, final int off, final int len) {
+            _count += len;
+        }
+
+        long getCount() {
+            return _count;
+        }
+    }
+}
@@ -47,16 +47,29 @@ public class ContentFunctionFactory
     		new TargetCounterFunction(),
     		new LeaderFunction()));
     
+    private boolean _pageCountReferenced;
+    
     public ContentFunction lookupFunction(final LayoutContext c, final FSFunction function) 
     {
         for (final ContentFunction f : _functions) {
             if (f.canHandle(c, function)) {
+                if (f instanceof PagesCounterFunction) {
+                    _pageCountReferenced = true;
+                }
                 return f;
             }
         }
         return null;
     }
     
+    /**
+     * Whether <code>counter(pages)</code> has been looked up. Its value is
+     * only known once the whole document has been laid out.
+     */
+    public boolean isPageCountReferenced() {
+        return _pageCountReferenced;
+    }
+    
     public void registerFunction(final ContentFunction function) {
         _functions.add(function);
     }
@@ -19,8 +19,12 @@
  */
 package org.xhtmlrenderer.context;
 
+import java.util.List;
+
 import org.jsoup.nodes.Element;
 import org.xhtmlrenderer.css.extend.AttributeResolver;
+import org.xhtmlrenderer.css.extend.StylesheetFactory;
+import org.xhtmlrenderer.css.sheet.PropertyDeclaration;
 import org.xhtmlrenderer.extend.NamespaceHandler;
 import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.extend.UserInterface;
@@ -97,6 +101,10 @@ public class StandardAttributeResolver implements AttributeResolver {
         return nsh.getNonCssStyling((Element) e);
     }
 
+    public List<PropertyDeclaration> getNonCssStyleDeclarations(final Object e, final StylesheetFactory factory) {
+        return nsh.getNonCssStyleDeclarations((Element) e, factory);
+    }
+
     /**
      * Gets the elementStyling attribute of the StandardAttributeResolver object
      *
@@ -0,0 +1,158 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.context;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.xhtmlrenderer.css.sheet.Ruleset;
+import org.xhtmlrenderer.css.sheet.StylesheetInfo.CSSOrigin;
+
+/**
+ * A bounded cache of parsed style declarations (the contents of
+ * <code>style</code> attributes and the CSS generated for presentational
+ * attributes), shared by all {@link StylesheetFactoryImpl}s. Generated
+ * documents tend to repeat the same few declarations on thousands of
+ * elements, which are then only parsed once.
+ * <p/>
+ * The cached {@link Ruleset}s are shared by every document using the same
+ * declaration, so they must not be modified.
+ * <p/>
+ * Lookups don't lock. The cache keeps two generations of entries, when
+ * the current one is full it becomes the old one and entries found there
+ * are moved back to the current one. So at most twice the capacity is
+ * held, and declarations which keep being used stay cached.
+ */
+public class StyleDeclarationCache {
+    private final int _capacity;
+
+    private volatile ConcurrentHashMap<Key, Ruleset> _current;
+    private volatile ConcurrentHashMap<Key, Ruleset> _previous;
+
+    private final AtomicLong _hits = new AtomicLong();
+    private final AtomicLong _misses = new AtomicLong();
+
+    /**
+     * @param capacity the number of declarations per generation, 0 disables
+     * the cache
+     */
+    public StyleDeclarationCache(final int capacity) {
+        _capacity = capacity;
+        _current = new ConcurrentHashMap<Key, Ruleset>();
+        _previous = new ConcurrentHashMap<Key, Ruleset>();
+    }
+
+    /**
+     * @return the cached ruleset, or <code>null</code> if the declaration
+     * hasn't been parsed yet (or has been dropped from the cache)
+     */
+    public Ruleset get(final CSSOrigin origin, final boolean cmykColors, final String declaration) {
+        if (_capacity <= 0) {
+            _misses.incrementAndGet();
+            return null;
+        }
+
+        final Key key = new Key(origin, cmykColors, declaration);
+        Ruleset result = _current.get(key);
+        if (result == null) {
+            result = _previous.get(key);
+            if (result != null) {
+                add(key, result);
+            }
+        }
+
+        if (result == null) {
+            _misses.incrementAndGet();
+        } else {
+            _hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    public void put(final CSSOrigin origin, final boolean cmykColors, final String declaration, final Ruleset ruleset) {
+        if (_capacity > 0) {
+            add(new Key(origin, cmykColors, declaration), ruleset);
+        }
+    }
+
+    private void add(final Key key, final Ruleset ruleset) {
+        final ConcurrentHashMap<Key, Ruleset> current = _current;
+        current.put(key, ruleset);
+        if (current.size() > _capacity) {
+            synchronized (this) {
+                if (_current == current) {
+                    _previous = current;
+                    _current = new ConcurrentHashMap<Key, Ruleset>();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (this) {
+            _current = new ConcurrentHashMap<Key, Ruleset>();
+            _previous = new ConcurrentHashMap<Key, Ruleset>();
+        }
+    }
+
+    /**
+     * @return the number of lookups which found a parsed declaration
+     */
+    public long getHitCount() {
+        return _hits.get();
+    }
+
+    /**
+     * @return the number of lookups which had to parse the declaration
+     */
+    public long getMissCount() {
+        return _misses.get();
+    }
+
+    public void resetStatistics() {
+        _hits.set(0);
+        _misses.set(0);
+    }
+
+    private static final class Key {
+        private final CSSOrigin _origin;
+        private final boolean _cmykColors;
+        private final String _declaration;
+        private final int _hash;
+
+        Key(final CSSOrigin origin, final boolean cmykColors, final String declaration) {
+            _origin = origin;
+            _cmykColors = cmykColors;
+            _declaration = declaration;
+            _hash = (declaration.hashCode() * 31 + origin.hashCode()) * 31 + (cmykColors ? 1 : 0);
+        }
+
+        public int hashCode() {
+            return _hash;
+        }
+
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return _hash == other._hash && _origin == other._origin &&
+                    _cmykColors == other._cmykColors && _declaration.equals(other._declaration);
+        }
+    }
+}
@@ -43,6 +43,7 @@ import org.xhtmlrenderer.extend.NamespaceHandler;
 import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.extend.UserInterface;
 import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
 
 
 /**
@@ -83,6 +84,10 @@ public class StyleReference {
         _doc = doc;
         final AttributeResolver attRes = new StandardAttributeResolver(_nsh, _uac, ui);
 
+        if (_uac instanceof NaiveUserAgent) {
+            ((NaiveUserAgent) _uac).prefetchResources(doc);
+        }
+
         final List<StylesheetInfo> infos = getStylesheets();
         LOGGER.info("media = " + _context.getMedia());
         _matcher = new org.xhtmlrenderer.css.newmatch.Matcher(
@@ -93,6 +98,18 @@ public class StyleReference {
                 _context.getMedia());
     }
     
+    /**
+     * Drops the matcher and the document it was created for. Parsed
+     * stylesheets, including the default one, are kept.
+     */
+    public void resetDocumentContext() {
+        _doc = null;
+        _matcher = null;
+        if (_uac instanceof NaiveUserAgent) {
+            ((NaiveUserAgent) _uac).clearPrefetchedResources();
+        }
+    }
+
     private List<Stylesheet> readAndParseAll(final List<StylesheetInfo> infos, final String medium) {
         final List<Stylesheet> result = new ArrayList<Stylesheet>(infos.size() + 15);
         for (final StylesheetInfo info : infos) {
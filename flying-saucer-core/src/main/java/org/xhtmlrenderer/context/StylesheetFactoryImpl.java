@@ -37,6 +37,7 @@ import org.xhtmlrenderer.css.sheet.StylesheetInfo;
 import org.xhtmlrenderer.css.sheet.StylesheetInfo.CSSOrigin;
 import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.resource.CSSResource;
+import org.xhtmlrenderer.util.Configuration;
 
 /**
  * A Factory class for Cascading Style Sheets. Sheets are parsed using a single
@@ -48,11 +49,16 @@ import org.xhtmlrenderer.resource.CSSResource;
 public class StylesheetFactoryImpl implements StylesheetFactory {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(StylesheetFactoryImpl.class);
+
+    private static final StyleDeclarationCache STYLE_DECLARATION_CACHE = new StyleDeclarationCache(
+            Configuration.valueAsInt("xr.css.style-declaration-cache-size", 4096));
+
 	/**
      * the UserAgentCallback to resolve uris
      */
     private UserAgentCallback _userAgentCallback;
     private final CSSParser _cssParser;
+    private volatile boolean _supportCMYKColors;
 
     public StylesheetFactoryImpl(final UserAgentCallback userAgentCallback) {
         _userAgentCallback = userAgentCallback;
@@ -66,7 +72,11 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
     public synchronized Stylesheet parse(final Reader reader, final StylesheetInfo info) {
         try {
         	final Stylesheet s1 = _cssParser.parseStylesheet(info.getUri(), info.getOrigin(), reader);
-        	_userAgentCallback.getStylesheetCache().putStylesheet(info.getUri(), s1);
+        	// Inline and default sheets are never looked up by URI, so keep
+        	// them out of the (possibly shared) cache
+        	if (info.getUri() != null && !info.isInline()) {
+        		_userAgentCallback.getStylesheetCache().putStylesheet(info.getUri(), s1);
+        	}
             return s1; 
         } catch (final IOException e) {
             LOGGER.warn("Couldn't parse stylesheet at URI " + info.getUri() + ": " + e.getMessage(), e);
@@ -100,8 +110,24 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
         }
     }
 
-    public synchronized Ruleset parseStyleDeclaration(final CSSOrigin origin, final String styleDeclaration) {
-        return _cssParser.parseDeclaration(origin, styleDeclaration);
+    public Ruleset parseStyleDeclaration(final CSSOrigin origin, final String styleDeclaration) {
+        final boolean cmykColors = _supportCMYKColors;
+        Ruleset result = STYLE_DECLARATION_CACHE.get(origin, cmykColors, styleDeclaration);
+        if (result == null) {
+            synchronized (this) {
+                result = _cssParser.parseDeclaration(origin, styleDeclaration);
+            }
+            STYLE_DECLARATION_CACHE.put(origin, cmykColors, styleDeclaration, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cache of parsed style declarations shared by all factories,
+     * e.g. to look at its hit rate.
+     */
+    public static StyleDeclarationCache getStyleDeclarationCache() {
+        return STYLE_DECLARATION_CACHE;
     }
 
     public Stylesheet getStylesheet(final StylesheetInfo info) 
@@ -127,7 +153,8 @@ public class StylesheetFactoryImpl implements StylesheetFactory {
     	return _userAgentCallback;
     }
     
-    public void setSupportCMYKColors(final boolean b) {
+    public synchronized void setSupportCMYKColors(final boolean b) {
+        _supportCMYKColors = b;
         _cssParser.setSupportCMYKColors(b);
     }
 }
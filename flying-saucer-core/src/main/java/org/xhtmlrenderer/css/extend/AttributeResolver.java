@@ -19,6 +19,9 @@
  */
 package org.xhtmlrenderer.css.extend;
 
+import java.util.List;
+
+import org.xhtmlrenderer.css.sheet.PropertyDeclaration;
 
 /**
  * In XML, an application may or may not know how to find the ID and/or class
@@ -72,6 +75,15 @@ public interface AttributeResolver {
      */
     public String getNonCssStyling(Object e);
 
+    /**
+     * may return null
+     *
+     * @param e PARAM
+     * @param factory parses the non css styling if need be
+     * @return The non css styling as declarations, which must not be changed
+     */
+    public List<PropertyDeclaration> getNonCssStyleDeclarations(Object e, StylesheetFactory factory);
+
     /**
      * may return null
      *
@@ -62,6 +62,13 @@ public class CascadedStyle {
     private final Map<CSSName, PropertyDeclaration> cascadedProperties;
     
     private String fingerprint;
+
+    /**
+     * The cascaded declarations in property order and a 64-bit hash of them,
+     * these give the structural identity used by {@link #equals(Object)}.
+     */
+    private final PropertyDeclaration[] _declarations;
+    private final long _hash;
     
     /**
      * Creates a <code>CascadedStyle</code>, setting the display property to
@@ -130,9 +137,11 @@ public class CascadedStyle {
      *             specificity.
      */
     CascadedStyle(final java.util.Iterator<PropertyDeclaration> iter) {
-        this();
-
+        cascadedProperties = new TreeMap<CSSName, PropertyDeclaration>();
         addProperties(iter);
+
+        _declarations = toDeclarationArray(cascadedProperties);
+        _hash = hash(_declarations);
     }
 
     private void addProperties(final java.util.Iterator<PropertyDeclaration> iter) {
@@ -162,6 +171,23 @@ public class CascadedStyle {
         cascadedProperties = new TreeMap<CSSName, PropertyDeclaration>(startingPoint.cascadedProperties);
         
         addProperties(props);
+
+        _declarations = toDeclarationArray(cascadedProperties);
+        _hash = hash(_declarations);
+    }
+
+    private static PropertyDeclaration[] toDeclarationArray(final Map<CSSName, PropertyDeclaration> properties) {
+        return properties.values().toArray(new PropertyDeclaration[properties.size()]);
+    }
+
+    private static long hash(final PropertyDeclaration[] declarations) {
+        long result = declarations.length;
+        for (final PropertyDeclaration declaration : declarations) {
+            final long value = ((long) declaration.getCSSName().FS_ID << 32) |
+                    (declaration.getFingerprint().hashCode() & 0xFFFFFFFFL);
+            result = result * 0x9E3779B97F4A7C15L + value;
+        }
+        return result;
     }
 
 
@@ -172,6 +198,8 @@ public class CascadedStyle {
      */
     private CascadedStyle() {
         cascadedProperties = new TreeMap<CSSName, PropertyDeclaration>();
+        _declarations = new PropertyDeclaration[0];
+        _hash = hash(_declarations);
     }
 
     /**
@@ -239,6 +267,38 @@ public class CascadedStyle {
 
     public int countAssigned() { return cascadedProperties.size(); }
 
+    /**
+     * Two cascaded styles are equal if they assign the same values to the
+     * same properties, regardless of which rules the declarations came from.
+     * This is what {@link #getFingerprint()} compares, without building the
+     * string.
+     */
+    public boolean equals(final Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof CascadedStyle)) {
+            return false;
+        }
+        final CascadedStyle other = (CascadedStyle) obj;
+        if (_hash != other._hash || _declarations.length != other._declarations.length) {
+            return false;
+        }
+        for (int i = 0; i < _declarations.length; i++) {
+            final PropertyDeclaration mine = _declarations[i];
+            final PropertyDeclaration theirs = other._declarations[i];
+            if (mine != theirs && (mine.getCSSName() != theirs.getCSSName() ||
+                    !mine.getFingerprint().equals(theirs.getFingerprint()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        return (int) (_hash ^ (_hash >>> 32));
+    }
+
     public String getFingerprint() {
         if (this.fingerprint == null) {
             final StringBuilder sb = new StringBuilder();
@@ -21,6 +21,7 @@
 package org.xhtmlrenderer.css.newmatch;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -30,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +45,8 @@ import org.xhtmlrenderer.css.sheet.PageRule;
 import org.xhtmlrenderer.css.sheet.PropertyDeclaration;
 import org.xhtmlrenderer.css.sheet.Ruleset;
 import org.xhtmlrenderer.css.sheet.Stylesheet;
+import org.xhtmlrenderer.util.ConcurrentIdentityMap;
+import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.Util;
 
 
@@ -58,9 +62,9 @@ public class Matcher {
     private final org.xhtmlrenderer.css.extend.TreeResolver _treeRes;
     private final org.xhtmlrenderer.css.extend.StylesheetFactory _styleFactory;
 
-    private java.util.Map<Object, Mapper> _map;
+    private ConcurrentIdentityMap<Object, Mapper> _map;
 
-    //handle dynamic
+    //handle dynamic; these and the Mapper tree may be filled from several threads at once
     private Set<Object> _hoverElements;
     private Set<Object> _activeElements;
     private Set<Object> _focusElements;
@@ -68,6 +72,31 @@ public class Matcher {
     
     private final List<PageRule> _pageRules;
     private final List<FontFaceRule> _fontFaceRules;
+
+    /**
+     * The document selectors on the descendant axis, which are carried forward
+     * to every Mapper. They are held (and indexed) once here instead of being
+     * copied into the axes of each Mapper.
+     */
+    private List<Selector> _descendantSelectors;
+    private int[] _descendantRanks;
+    private volatile SelectorIndex _descendantIndex;
+
+    private boolean _useSelectorIndex = Configuration.isTrue("xr.css.matcher.selector-index", true);
+
+    /**
+     * One instance of each distinct cascaded style handed out, elements
+     * styled alike get the same instance.
+     */
+    private final ConcurrentHashMap<CascadedStyle, CascadedStyle> _cascadedStyles =
+            new ConcurrentHashMap<CascadedStyle, CascadedStyle>();
+
+    /**
+     * The page styles handed out so far, by page name and pseudo-page. Every
+     * page with the same name and pseudo-page gets the same instance.
+     */
+    private final ConcurrentHashMap<List<String>, PageInfo> _pageInfos =
+            new ConcurrentHashMap<List<String>, PageInfo>();
     
     public Matcher(
             final TreeResolver tr, final AttributeResolver ar, final StylesheetFactory factory, final List<Stylesheet> stylesheets, final String medium) {
@@ -85,6 +114,11 @@ public class Matcher {
         _map.remove(e);
     }
 
+    private CascadedStyle intern(final CascadedStyle style) {
+        final CascadedStyle existing = _cascadedStyles.putIfAbsent(style, style);
+        return existing == null ? style : existing;
+    }
+
     public CascadedStyle getCascadedStyle(final Object e, final boolean restyle) {
         synchronized (e) {
             Mapper em;
@@ -109,6 +143,19 @@ public class Matcher {
     }
     
     public PageInfo getPageCascadedStyle(final String pageName, final String pseudoPage) {
+        final List<String> key = Arrays.asList(pageName, pseudoPage);
+        PageInfo result = _pageInfos.get(key);
+        if (result == null) {
+            result = createPageInfo(pageName, pseudoPage);
+            final PageInfo existing = _pageInfos.putIfAbsent(key, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+    private PageInfo createPageInfo(final String pageName, final String pseudoPage) {
         final List<PropertyDeclaration> props = new ArrayList<PropertyDeclaration>();
         final Map<MarginBoxName, List<PropertyDeclaration>> marginBoxes = new HashMap<MarginBoxName, List<PropertyDeclaration>>();
 
@@ -129,6 +176,20 @@ public class Matcher {
         return new PageInfo(props, style, marginBoxes);
     }
     
+    /**
+     * Whether elements are only matched against the selectors a
+     * {@link SelectorIndex} returns for their id, classes and name (the
+     * default), or against every selector in turn. Both give the same result,
+     * the linear scan is kept for comparison.
+     */
+    public void setUseSelectorIndex(final boolean useSelectorIndex) {
+        _useSelectorIndex = useSelectorIndex;
+    }
+
+    public boolean isUseSelectorIndex() {
+        return _useSelectorIndex;
+    }
+
     public List<FontFaceRule> getFontFaceRules() {
         return _fontFaceRules;
     }
@@ -167,29 +228,44 @@ public class Matcher {
         final java.util.TreeMap<String, Selector> sorter = new java.util.TreeMap<String, Selector>();
         addAllStylesheets(stylesheets, sorter, medium);
         LOGGER.info("Matcher created with " + sorter.size() + " selectors");
-        return new Mapper(sorter.values());
+
+        // The position in sort order is a selector's rank. Selectors chained from it
+        // inherit the rank, so every Mapper's axes can be merged with the
+        // descendant selectors without losing the order from the sort.
+        _descendantSelectors = new ArrayList<Selector>(sorter.size());
+        final int[] descendantRanks = new int[sorter.size()];
+        final AxesBuilder docAxes = new AxesBuilder(10);
+        int rank = 0;
+        for (final Selector selector : sorter.values()) {
+            if (selector.getAxis() == Selector.DESCENDANT_AXIS) {
+                descendantRanks[_descendantSelectors.size()] = rank;
+                _descendantSelectors.add(selector);
+            } else {
+                docAxes.add(selector, rank);
+            }
+            rank++;
+        }
+        _descendantRanks = descendantRanks;
+
+        return docAxes.createMapper();
     }
     
     private void addAllStylesheets(final List<Stylesheet> stylesheets, final TreeMap<String, Selector> sorter, final String medium) {
         int count = 0;
-        int pCount = 0;
         for (final Stylesheet stylesheet : stylesheets) {
             for (final Object obj : stylesheet.getContents()) {
                 if (obj instanceof Ruleset) {
                     for (final Selector selector : ((Ruleset)obj).getFSSelectors()) {
-                        selector.setPos(++count);
-                        sorter.put(selector.getOrder(), selector);
+                        sorter.put(selector.getOrder(++count), selector);
                     }
                 } else if (obj instanceof PageRule) {
-                    ((PageRule)obj).setPos(++pCount);
                     _pageRules.add((PageRule) obj);
                 } else if (obj instanceof MediaRule) {
                     final MediaRule mediaRule = (MediaRule)obj;
                     if (mediaRule.matches(medium)) {
                         for (final Ruleset ruleset : mediaRule.getContents()) {
                             for (final Selector selector : ruleset.getFSSelectors()) {
-                                selector.setPos(++count);
-                                sorter.put(selector.getOrder(), selector);
+                                sorter.put(selector.getOrder(++count), selector);
                             }
                         }
                     }
@@ -199,6 +275,8 @@ public class Matcher {
             _fontFaceRules.addAll(stylesheet.getFontFaceRules());
         }
         
+        // The sort is stable, so page rules of equal specificity stay in
+        // document order without numbering them
         Collections.sort(_pageRules, new Comparator<PageRule>() {
             public int compare(final PageRule o1, final PageRule o2) {
                 final PageRule p1 = (PageRule)o1;
@@ -220,11 +298,11 @@ public class Matcher {
     }
 
     private void newMaps() {
-        _map = Collections.synchronizedMap(new java.util.HashMap<Object, Mapper>());
-        _hoverElements = Collections.synchronizedSet(new java.util.HashSet<Object>());
-        _activeElements = Collections.synchronizedSet(new java.util.HashSet<Object>());
-        _focusElements = Collections.synchronizedSet(new java.util.HashSet<Object>());
-        _visitElements = Collections.synchronizedSet(new java.util.HashSet<Object>());
+        _map = new ConcurrentIdentityMap<Object, Mapper>();
+        _hoverElements = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+        _activeElements = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+        _focusElements = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+        _visitElements = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
     }
 
     private Mapper getMapper(final Object e) {
@@ -236,6 +314,16 @@ public class Matcher {
         return m;
     }
 
+    private SelectorIndex getDescendantIndex() {
+        SelectorIndex result = _descendantIndex;
+        if (result == null) {
+            // threads racing here build equal indexes, any one of them will do
+            result = new SelectorIndex(_descendantSelectors);
+            _descendantIndex = result;
+        }
+        return result;
+    }
+
     private static java.util.Iterator<Ruleset> getMatchedRulesets(final List<Selector> mappedSelectors) {
         return
                 new java.util.Iterator<Ruleset>() {
@@ -298,35 +386,67 @@ public class Matcher {
         }
     }
 
-    private org.xhtmlrenderer.css.sheet.Ruleset getNonCssStyle(final Object e) {
+    private List<PropertyDeclaration> getNonCssStyle(final Object e) {
         synchronized (e) {
             if (_attRes == null || _styleFactory == null) {
                 return null;
             }
-            final String style = _attRes.getNonCssStyling(e);
-            if (Util.isNullOrEmpty(style)) {
-                return null;
+            return _attRes.getNonCssStyleDeclarations(e, _styleFactory);
+        }
+    }
+
+    /**
+     * Collects the axes of a new Mapper along with their ranks
+     */
+    private class AxesBuilder {
+        private final List<Selector> axes;
+        private int[] ranks;
+
+        AxesBuilder(final int capacity) {
+            axes = new ArrayList<Selector>(capacity);
+            ranks = new int[capacity];
+        }
+
+        void add(final Selector selector, final int rank) {
+            if (axes.size() == ranks.length) {
+                final int[] grown = new int[ranks.length * 2 + 1];
+                System.arraycopy(ranks, 0, grown, 0, ranks.length);
+                ranks = grown;
             }
-            return _styleFactory.parseStyleDeclaration(org.xhtmlrenderer.css.sheet.StylesheetInfo.CSSOrigin.AUTHOR, style);
+            ranks[axes.size()] = rank;
+            axes.add(selector);
+        }
+
+        Mapper createMapper() {
+            final Mapper result = new Mapper();
+            result.axes = axes;
+            result.ranks = ranks;
+            return result;
         }
     }
 
     /**
      * Mapper represents a local CSS for a Node that is used to match the Node's
      * children.
+     * <p/>
+     * The selectors to match are the document descendant selectors (which apply
+     * at every level) merged by rank with this Mapper's own axes.
      *
      * @author Torbjoern Gannholm
      */
     class Mapper {
+        /**
+         * Mappers with more axes than this index them instead of checking each one
+         */
+        private static final int INDEX_THRESHOLD = 16;
+
         java.util.List<Selector> axes;
+        private int[] ranks;
         private HashMap<String, List<Selector>> pseudoSelectors;
         private List<Selector> mappedSelectors;
-        private HashMap<String, Mapper> children;
-
-        Mapper(final java.util.Collection<Selector> selectors) {
-            axes = new java.util.ArrayList<Selector>(selectors.size());
-            axes.addAll(selectors);
-        }
+        private volatile ConcurrentHashMap<String, Mapper> children;
+        private volatile SelectorIndex index;
+        private volatile int[] allAxes;
 
         private Mapper() {
         }
@@ -339,67 +459,210 @@ public class Matcher {
          *         (more correct: preserves the sort order from Matcher creation)
          */
         Mapper mapChild(final Object e) {
+            if (_useSelectorIndex) {
+                return mapChildIndexed(e);
+            }
             //Mapper childMapper = new Mapper();
-            final java.util.List<Selector> childAxes = new ArrayList<Selector>(axes.size() + 10);
+            final AxesBuilder childAxes = new AxesBuilder(axes.size() + 10);
             final java.util.HashMap<String, List<Selector>> pseudoSelectors = new java.util.HashMap<String, List<Selector>>();
             final java.util.List<Selector> mappedSelectors = new java.util.LinkedList<Selector>();
             final StringBuilder key = new StringBuilder();
-            for (int i = 0, size = axes.size(); i < size; i++) {
-                final Selector sel = axes.get(i);
+            int d = 0;
+            int a = 0;
+            final int dSize = _descendantSelectors.size();
+            final int aSize = axes.size();
+            while (d < dSize || a < aSize) {
+                final Selector sel;
+                final int rank;
+                if (a == aSize || (d < dSize && _descendantRanks[d] <= ranks[a])) {
+                    //carried forward to all descendants through _descendantSelectors
+                    sel = _descendantSelectors.get(d);
+                    rank = _descendantRanks[d++];
+                } else {
+                    sel = axes.get(a);
+                    rank = ranks[a++];
+                    if (sel.getAxis() == Selector.DESCENDANT_AXIS) {
+                        //carry it forward to other descendants
+                        childAxes.add(sel, rank);
+                    } else if (sel.getAxis() == Selector.IMMEDIATE_SIBLING_AXIS) {
+                        throw new RuntimeException();
+                    }
+                }
+                final Selector chain = matchSelector(e, sel, pseudoSelectors, mappedSelectors, key);
+                if (chain != null) {
+                    childAxes.add(chain, rank);
+                }
+            }
+            return linkChild(e, key.toString(), childAxes, pseudoSelectors, mappedSelectors);
+        }
+
+        /**
+         * Same as the linear scan in {@link #mapChild(Object)}, but only the
+         * candidate selectors for the element's id, classes and name are matched.
+         * The axes for the child are only worked out if no Mapper with the same
+         * key exists yet.
+         */
+        private Mapper mapChildIndexed(final Object e) {
+            final int[] dCandidates = getDescendantIndex().getCandidates(e, _attRes, _treeRes);
+            final int[] aCandidates = getAxesCandidates(e);
+            final java.util.HashMap<String, List<Selector>> pseudoSelectors = new java.util.HashMap<String, List<Selector>>();
+            final java.util.List<Selector> mappedSelectors = new java.util.LinkedList<Selector>();
+            final StringBuilder key = new StringBuilder();
+
+            //chained selectors found, with their rank and the axis they came from (-1 for a descendant selector)
+            final int max = dCandidates.length + aCandidates.length;
+            final Selector[] chains = new Selector[max];
+            final int[] chainRanks = new int[max];
+            final int[] chainSources = new int[max];
+            int chainCount = 0;
+
+            int i = 0;
+            int j = 0;
+            while (i < dCandidates.length || j < aCandidates.length) {
+                final Selector sel;
+                final int rank;
+                final int source;
+                if (j == aCandidates.length ||
+                        (i < dCandidates.length && _descendantRanks[dCandidates[i]] <= ranks[aCandidates[j]])) {
+                    sel = _descendantSelectors.get(dCandidates[i]);
+                    rank = _descendantRanks[dCandidates[i++]];
+                    source = -1;
+                } else {
+                    source = aCandidates[j++];
+                    sel = axes.get(source);
+                    rank = ranks[source];
+                }
+                final Selector chain = matchSelector(e, sel, pseudoSelectors, mappedSelectors, key);
+                if (chain != null) {
+                    chains[chainCount] = chain;
+                    chainRanks[chainCount] = rank;
+                    chainSources[chainCount++] = source;
+                }
+            }
+
+            final Map<String, Mapper> children = this.children;
+            if (children != null) {
+                final Mapper childMapper = children.get(key.toString());
+                if (childMapper != null) {
+                    link(e, childMapper);
+                    return childMapper;
+                }
+            }
+
+            final AxesBuilder childAxes = new AxesBuilder(axes.size() + chainCount);
+            int k = 0;
+            for (int a = 0, size = axes.size(); a < size; a++) {
+                while (k < chainCount && chainSources[k] == -1 && chainRanks[k] <= ranks[a]) {
+                    childAxes.add(chains[k], chainRanks[k]);
+                    k++;
+                }
+                final Selector sel = axes.get(a);
                 if (sel.getAxis() == Selector.DESCENDANT_AXIS) {
                     //carry it forward to other descendants
-                    childAxes.add(sel);
+                    childAxes.add(sel, ranks[a]);
                 } else if (sel.getAxis() == Selector.IMMEDIATE_SIBLING_AXIS) {
                     throw new RuntimeException();
                 }
-                if (!sel.matches(e, _attRes, _treeRes)) {
-                    continue;
+                if (k < chainCount && chainSources[k] == a) {
+                    childAxes.add(chains[k], chainRanks[k]);
+                    k++;
                 }
-                //Assumption: if it is a pseudo-element, it does not also have dynamic pseudo-class
-                final String pseudoElement = sel.getPseudoElement();
-                if (pseudoElement != null) {
-                    java.util.List<Selector> l = pseudoSelectors.get(pseudoElement);
-                    if (l == null) {
-                        l = new java.util.LinkedList<Selector>();
-                        pseudoSelectors.put(pseudoElement, l);
-                    }
-                    l.add(sel);
-                    key.append(sel.getSelectorID()).append(":");
-                    continue;
-                }
-                if (sel.isPseudoClass(Selector.VISITED_PSEUDOCLASS)) {
-                    _visitElements.add(e);
-                }
-                if (sel.isPseudoClass(Selector.ACTIVE_PSEUDOCLASS)) {
-                    _activeElements.add(e);
-                }
-                if (sel.isPseudoClass(Selector.HOVER_PSEUDOCLASS)) {
-                    _hoverElements.add(e);
+            }
+            for (; k < chainCount; k++) {
+                childAxes.add(chains[k], chainRanks[k]);
+            }
+            return linkChild(e, key.toString(), childAxes, pseudoSelectors, mappedSelectors);
+        }
+
+        private int[] getAxesCandidates(final Object e) {
+            if (axes.size() > INDEX_THRESHOLD) {
+                SelectorIndex result = index;
+                if (result == null) {
+                    result = new SelectorIndex(axes);
+                    index = result;
                 }
-                if (sel.isPseudoClass(Selector.FOCUS_PSEUDOCLASS)) {
-                    _focusElements.add(e);
+                return result.getCandidates(e, _attRes, _treeRes);
+            }
+            int[] result = allAxes;
+            if (result == null) {
+                result = new int[axes.size()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = i;
                 }
-                if (!sel.matchesDynamic(e, _attRes, _treeRes)) {
-                    continue;
+                allAxes = result;
+            }
+            return result;
+        }
+
+        /**
+         * Matches a single selector against the element, recording the result in
+         * the pseudo-element map, mapped selector list and mapper key.
+         *
+         * @return the chained selector to be matched against children, or null
+         */
+        private Selector matchSelector(final Object e, final Selector sel,
+                final java.util.Map<String, List<Selector>> pseudoSelectors, final List<Selector> mappedSelectors, final StringBuilder key) {
+            if (!sel.matches(e, _attRes, _treeRes)) {
+                return null;
+            }
+            //Assumption: if it is a pseudo-element, it does not also have dynamic pseudo-class
+            final String pseudoElement = sel.getPseudoElement();
+            if (pseudoElement != null) {
+                java.util.List<Selector> l = pseudoSelectors.get(pseudoElement);
+                if (l == null) {
+                    l = new java.util.LinkedList<Selector>();
+                    pseudoSelectors.put(pseudoElement, l);
                 }
+                l.add(sel);
                 key.append(sel.getSelectorID()).append(":");
-                final Selector chain = sel.getChainedSelector();
-                if (chain == null) {
-                    mappedSelectors.add(sel);
-                } else if (chain.getAxis() == Selector.IMMEDIATE_SIBLING_AXIS) {
-                    throw new RuntimeException();
-                } else {
-                    childAxes.add(chain);
+                return null;
+            }
+            if (sel.isPseudoClass(Selector.VISITED_PSEUDOCLASS)) {
+                _visitElements.add(e);
+            }
+            if (sel.isPseudoClass(Selector.ACTIVE_PSEUDOCLASS)) {
+                _activeElements.add(e);
+            }
+            if (sel.isPseudoClass(Selector.HOVER_PSEUDOCLASS)) {
+                _hoverElements.add(e);
+            }
+            if (sel.isPseudoClass(Selector.FOCUS_PSEUDOCLASS)) {
+                _focusElements.add(e);
+            }
+            if (!sel.matchesDynamic(e, _attRes, _treeRes)) {
+                return null;
+            }
+            key.append(sel.getSelectorID()).append(":");
+            final Selector chain = sel.getChainedSelector();
+            if (chain == null) {
+                mappedSelectors.add(sel);
+            } else if (chain.getAxis() == Selector.IMMEDIATE_SIBLING_AXIS) {
+                throw new RuntimeException();
+            }
+            return chain;
+        }
+
+        private Mapper linkChild(final Object e, final String key, final AxesBuilder childAxes,
+                final java.util.HashMap<String, List<Selector>> pseudoSelectors, final List<Selector> mappedSelectors) {
+            ConcurrentHashMap<String, Mapper> children = this.children;
+            if (children == null) {
+                synchronized (this) {
+                    children = this.children;
+                    if (children == null) {
+                        children = new ConcurrentHashMap<String, Mapper>(4);
+                        this.children = children;
+                    }
                 }
             }
-            if (children == null) children = new HashMap<String, Mapper>();
-            Mapper childMapper = children.get(key.toString());
+            Mapper childMapper = children.get(key);
             if (childMapper == null) {
-                childMapper = new Mapper();
-                childMapper.axes = childAxes;
+                childMapper = childAxes.createMapper();
                 childMapper.pseudoSelectors = pseudoSelectors;
                 childMapper.mappedSelectors = mappedSelectors;
-                children.put(key.toString(), childMapper);
+                final Mapper existing = children.putIfAbsent(key, childMapper);
+                if (existing != null) {
+                    childMapper = existing;
+                }
             }
             link(e, childMapper);
             return childMapper;
@@ -410,11 +673,11 @@ public class Matcher {
             synchronized (e) {
                 CascadedStyle cs = null;
                 final org.xhtmlrenderer.css.sheet.Ruleset elementStyling = getElementStyle(e);
-                final org.xhtmlrenderer.css.sheet.Ruleset nonCssStyling = getNonCssStyle(e);
+                final List<PropertyDeclaration> nonCssStyling = getNonCssStyle(e);
                 final List<PropertyDeclaration> propList = new LinkedList<PropertyDeclaration>();
                 //specificity 0,0,0,0
                 if (nonCssStyling != null) {
-                    propList.addAll(nonCssStyling.getPropertyDeclarations());
+                    propList.addAll(nonCssStyling);
                 }
                 //these should have been returned in order of specificity
                 for (final Iterator<Ruleset> i = getMatchedRulesets(mappedSelectors); i.hasNext();) {
@@ -428,7 +691,7 @@ public class Matcher {
                 if (propList.size() == 0)
                     cs = CascadedStyle.emptyCascadedStyle;
                 else {
-                    cs = new CascadedStyle(propList.iterator());
+                    cs = intern(new CascadedStyle(propList.iterator()));
                 }
 
                 result = cs;
@@ -457,7 +720,7 @@ public class Matcher {
             if (propList.size() == 0)
                 cs = CascadedStyle.emptyCascadedStyle;//already internalized
             else {
-                cs = new CascadedStyle(propList.iterator());
+                cs = intern(new CascadedStyle(propList.iterator()));
             }
             return cs;
         }
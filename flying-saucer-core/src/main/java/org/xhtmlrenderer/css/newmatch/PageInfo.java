@@ -29,6 +29,8 @@ import org.xhtmlrenderer.css.constants.MarginBoxName;
 import org.xhtmlrenderer.css.parser.PropertyValueImp;
 import org.xhtmlrenderer.css.sheet.PropertyDeclaration;
 import org.xhtmlrenderer.css.sheet.StylesheetInfo;
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.css.style.EmptyStyle;
 
 public class PageInfo {
     private final List<PropertyDeclaration> _properties;
@@ -37,6 +39,8 @@ public class PageInfo {
     
     private final List<PropertyDeclaration> _xmpPropertyList;
     
+    private volatile CalculatedStyle _calculatedPageStyle;
+    
     public PageInfo(final List<PropertyDeclaration> properties, final CascadedStyle pageStyle, final Map<MarginBoxName, List<PropertyDeclaration>> marginBoxes) {
         _properties = properties;
         _pageStyle = pageStyle;
@@ -53,6 +57,19 @@ public class PageInfo {
         return _pageStyle;
     }
     
+    /**
+     * The page style applied to the initial values. It is derived once and
+     * shared by all pages using this <code>PageInfo</code>.
+     */
+    public CalculatedStyle getCalculatedPageStyle() {
+        CalculatedStyle result = _calculatedPageStyle;
+        if (result == null) {
+            result = new EmptyStyle().deriveStyle(_pageStyle);
+            _calculatedPageStyle = result;
+        }
+        return result;
+    }
+    
     public List<PropertyDeclaration> getProperties() {
         return _properties;
     }
@@ -19,6 +19,8 @@
  */
 package org.xhtmlrenderer.css.newmatch;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xhtmlrenderer.css.extend.AttributeResolver;
@@ -54,6 +56,10 @@ public class Selector {
 
     private java.util.List<Condition> conditions;
 
+    //keys used by SelectorIndex, the first #id and .class condition seen
+    private String _indexID;
+    private String _indexClass;
+
     public final static int DESCENDANT_AXIS = 0;
     public final static int CHILD_AXIS = 1;
     public final static int IMMEDIATE_SIBLING_AXIS = 2;
@@ -67,10 +73,10 @@ public class Selector {
      * Give each a unique ID to be able to create a key to internalize Matcher.Mappers
      */
     private final int selectorID;
-    private static int selectorCount = 0;
+    private static final AtomicInteger selectorCount = new AtomicInteger();
 
     public Selector() {
-        selectorID = selectorCount++;
+        selectorID = selectorCount.getAndIncrement();
     }
 
     /**
@@ -206,6 +212,9 @@ public class Selector {
      */
     public void addIDCondition(final String id) {
         _specificityB++;
+        if (_indexID == null) {
+            _indexID = id;
+        }
         addCondition(Condition.createIDCondition(id));
     }
 
@@ -214,6 +223,9 @@ public class Selector {
      */
     public void addClassCondition(final String className) {
         _specificityC++;
+        if (_indexClass == null) {
+            _indexClass = className;
+        }
         addCondition(Condition.createClassCondition(className));
     }
 
@@ -385,13 +397,22 @@ public class Selector {
      * @return The order value
      */
     String getOrder() {
+        return getOrder(_pos);
+    }
+
+    /**
+     * As {@link #getOrder()}, but for the selector at position <code>pos</code>.
+     * Parsed stylesheets may be shared between documents (and threads), so
+     * the Matcher uses this rather than storing its positions in the selector.
+     */
+    String getOrder(final int pos) {
         if (chainedSelector != null) {
-            return chainedSelector.getOrder();
+            return chainedSelector.getOrder(pos);
         }//only "deepest" value is correct
         final String b = "000" + getSpecificityB();
         final String c = "000" + getSpecificityC();
         final String d = "000" + getSpecificityD();
-        final String p = "00000" + _pos;
+        final String p = "00000" + pos;
         return "0" + b.substring(b.length() - 3) + c.substring(c.length() - 3) + d.substring(d.length() - 3) + p.substring(p.length() - 5);
     }
 
@@ -442,6 +463,30 @@ public class Selector {
     public int getSelectorID() {
         return selectorID;
     }
+
+    /**
+     * The id this selector requires of the element it is matched against,
+     * or null if it has no #id condition
+     */
+    String getIndexID() {
+        return _indexID;
+    }
+
+    /**
+     * One of the classes this selector requires of the element it is matched
+     * against, or null if it has no .class condition
+     */
+    String getIndexClass() {
+        return _indexClass;
+    }
+
+    /**
+     * The element name this selector requires, or null if it applies to
+     * elements with any name (or only matches a namespaced name)
+     */
+    String getIndexName() {
+        return _namespaceURI == null ? _name : null;
+    }
     
     public void setName(final String name) {
         _name = name;
@@ -0,0 +1,158 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.css.newmatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xhtmlrenderer.css.extend.AttributeResolver;
+import org.xhtmlrenderer.css.extend.TreeResolver;
+
+/**
+ * Buckets the selectors of a Matcher.Mapper by the id, class or element name
+ * an element must have to match them. Each selector goes into exactly one
+ * bucket (id before class before name), selectors without any of these go
+ * into the universal bucket.
+ * <p/>
+ * Candidates are returned as positions in the indexed list, in ascending order,
+ * so the specificity order the list was sorted in is preserved.
+ * Every candidate must still be checked with {@link Selector#matches}.
+ */
+class SelectorIndex {
+    private static final int[] EMPTY = new int[0];
+
+    private final Map<String, int[]> _byID;
+    private final Map<String, int[]> _byClass;
+    private final Map<String, int[]> _byName;
+    private final int[] _universal;
+
+    SelectorIndex(final List<Selector> selectors) {
+        final Map<String, List<Integer>> byID = new HashMap<String, List<Integer>>();
+        final Map<String, List<Integer>> byClass = new HashMap<String, List<Integer>>();
+        final Map<String, List<Integer>> byName = new HashMap<String, List<Integer>>();
+        final List<Integer> universal = new ArrayList<Integer>();
+
+        for (int i = 0, size = selectors.size(); i < size; i++) {
+            final Selector sel = selectors.get(i);
+            if (sel.getIndexID() != null) {
+                add(byID, sel.getIndexID(), i);
+            } else if (sel.getIndexClass() != null) {
+                add(byClass, sel.getIndexClass(), i);
+            } else if (sel.getIndexName() != null) {
+                add(byName, sel.getIndexName(), i);
+            } else {
+                universal.add(i);
+            }
+        }
+
+        _byID = toArrays(byID);
+        _byClass = toArrays(byClass);
+        _byName = toArrays(byName);
+        _universal = toArray(universal);
+    }
+
+    /**
+     * @return the positions of all selectors that could match <code>e</code>,
+     * in ascending order
+     */
+    int[] getCandidates(final Object e, final AttributeResolver attRes, final TreeResolver treeRes) {
+        int[] byID = EMPTY;
+        int[][] byClass = null;
+        int classCount = 0;
+
+        if (attRes != null) {
+            if (!_byID.isEmpty()) {
+                byID = lookup(_byID, attRes.getID(e));
+            }
+            if (!_byClass.isEmpty()) {
+                final String c = attRes.getClass(e);
+                if (c != null) {
+                    final String[] classes = Condition.split(c, ' ');
+                    byClass = new int[classes.length][];
+                    CLASSES: for (int i = 0; i < classes.length; i++) {
+                        for (int j = 0; j < i; j++) {
+                            if (classes[i].equals(classes[j])) {
+                                continue CLASSES;
+                            }
+                        }
+                        byClass[classCount++] = lookup(_byClass, classes[i]);
+                    }
+                }
+            }
+        }
+        final int[] byName = _byName.isEmpty() ? EMPTY : lookup(_byName, treeRes.getElementName(e));
+
+        int length = _universal.length + byID.length + byName.length;
+        for (int i = 0; i < classCount; i++) {
+            length += byClass[i].length;
+        }
+
+        final int[] result = new int[length];
+        int pos = 0;
+        pos = append(result, pos, _universal);
+        pos = append(result, pos, byID);
+        pos = append(result, pos, byName);
+        for (int i = 0; i < classCount; i++) {
+            pos = append(result, pos, byClass[i]);
+        }
+        Arrays.sort(result);
+
+        return result;
+    }
+
+    private static int append(final int[] target, final int pos, final int[] source) {
+        System.arraycopy(source, 0, target, pos, source.length);
+        return pos + source.length;
+    }
+
+    private static int[] lookup(final Map<String, int[]> bucket, final String key) {
+        if (key == null) {
+            return EMPTY;
+        }
+        final int[] result = bucket.get(key);
+        return result == null ? EMPTY : result;
+    }
+
+    private static void add(final Map<String, List<Integer>> bucket, final String key, final int pos) {
+        List<Integer> l = bucket.get(key);
+        if (l == null) {
+            l = new ArrayList<Integer>();
+            bucket.put(key, l);
+        }
+        l.add(pos);
+    }
+
+    private static Map<String, int[]> toArrays(final Map<String, List<Integer>> buckets) {
+        final Map<String, int[]> result = new HashMap<String, int[]>(buckets.size() * 2);
+        for (final Map.Entry<String, List<Integer>> entry : buckets.entrySet()) {
+            result.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        return result;
+    }
+
+    private static int[] toArray(final List<Integer> positions) {
+        final int[] result = new int[positions.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = positions.get(i);
+        }
+        return result;
+    }
+}
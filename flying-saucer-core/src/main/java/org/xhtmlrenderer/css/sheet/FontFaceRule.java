@@ -28,7 +28,7 @@ import org.xhtmlrenderer.util.XRRuntimeException;
 public class FontFaceRule implements RulesetContainer {
     private CSSOrigin _origin;
     private Ruleset _ruleset;
-    private CalculatedStyle _calculatedStyle;
+    private volatile CalculatedStyle _calculatedStyle;
 
     public FontFaceRule(final CSSOrigin origin) {
         _origin = origin;
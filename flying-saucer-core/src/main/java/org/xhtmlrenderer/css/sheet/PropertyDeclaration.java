@@ -71,7 +71,7 @@ public class PropertyDeclaration {
     /**
      * Description of the Field
      */
-    private boolean identIsSet;
+    private volatile boolean identIsSet;
     
     private String _fingerprint;
 
@@ -24,6 +24,7 @@ import java.awt.Cursor;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import org.slf4j.Logger;
@@ -48,6 +49,7 @@ import org.xhtmlrenderer.css.style.derived.RectPropertySet;
 import org.xhtmlrenderer.css.value.FontSpecification;
 import org.xhtmlrenderer.render.FSFont;
 import org.xhtmlrenderer.render.FSFontMetrics;
+import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.GeneralUtil;
 import org.xhtmlrenderer.util.XRRuntimeException;
 
@@ -95,16 +97,16 @@ public class CalculatedStyle {
     private BackgroundSize _backgroundSize;
 
     /**
-     * Cache child styles of this style that have the same cascaded properties
+     * The most child styles cached per style, further children are derived
+     * each time they are asked for.
      */
-    private final java.util.HashMap<String, CalculatedStyle> _childCache = new java.util.HashMap<String, CalculatedStyle>();
-    /*private java.util.HashMap _childCache = new java.util.LinkedHashMap(5, 0.75f, true) {
-        private static final int MAX_ENTRIES = 10;
+    private static final int CHILD_CACHE_SIZE = Configuration.valueAsInt("xr.css.derived-style-cache-size", 256);
 
-        protected boolean removeEldestEntry(Map.Entry eldest) {
-            return size() > MAX_ENTRIES;
-        }
-    };*/
+    /**
+     * Cache child styles of this style that have the same cascaded properties
+     */
+    private final ConcurrentHashMap<CascadedStyle, CalculatedStyle> _childCache =
+            new ConcurrentHashMap<CascadedStyle, CalculatedStyle>(4);
 
     /**
      * Our main array of property values defined in this style, keyed
@@ -175,18 +177,23 @@ public class CalculatedStyle {
     /**
      * derives a child style from this style.
      * <p/>
-     * depends on the ability to return the identical CascadedStyle each time a child style is needed
+     * children with equal cascaded styles (see {@link CascadedStyle#equals(Object)}) share one derived style,
+     * as long as it could be cached
      *
      * @param matched the CascadedStyle to apply
      * @return The derived child style
      */
-    public synchronized CalculatedStyle deriveStyle(final CascadedStyle matched) {
-        final String fingerprint = matched.getFingerprint();
-        CalculatedStyle cs = _childCache.get(fingerprint);
+    public CalculatedStyle deriveStyle(final CascadedStyle matched) {
+        CalculatedStyle cs = _childCache.get(matched);
 
         if (cs == null) {
             cs = new CalculatedStyle(this, matched);
-            _childCache.put(fingerprint, cs);
+            if (_childCache.size() < CHILD_CACHE_SIZE) {
+                final CalculatedStyle existing = _childCache.putIfAbsent(matched, cs);
+                if (existing != null) {
+                    cs = existing;
+                }
+            }
         }
         return cs;
     }
@@ -567,6 +574,8 @@ public class CalculatedStyle {
     /**
      * Returns a {@link FSDerivedValue} by name. Because we are a derived
      * style, the property will already be resolved at this point.
+     * Values not set on this style are looked up and remembered on first use;
+     * threads racing to do so remember the same value.
      *
      * @param cssName The CSS property name, e.g. "font-family"
      * @return See desc.
@@ -20,8 +20,8 @@
  */
 package org.xhtmlrenderer.css.style.derived;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.constants.IdentValue;
@@ -32,7 +32,8 @@ import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.FSDerivedValue;
 
 public class DerivedValueFactory {
-    private static final Map<String, FSDerivedValue> CACHED_COLORS = new HashMap<String, FSDerivedValue>();
+    // Shared by every renderer in the JVM, which may be on different threads
+    private static final Map<String, FSDerivedValue> CACHED_COLORS = new ConcurrentHashMap<String, FSDerivedValue>();
     
     public static FSDerivedValue newDerivedValue(
             final CalculatedStyle style, final CSSName cssName, final PropertyValue value) {
@@ -24,6 +24,7 @@ import java.util.List;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.xhtmlrenderer.css.extend.StylesheetFactory;
+import org.xhtmlrenderer.css.sheet.PropertyDeclaration;
 import org.xhtmlrenderer.css.sheet.StylesheetInfo;
 
 /**
@@ -78,6 +79,14 @@ public interface NamespaceHandler
      */
     String getNonCssStyling(Element e);
 
+    /**
+     * The declarations {@link #getNonCssStyling(Element)} parses to, parsed
+     * with <code>factory</code> if need be. Elements with the same
+     * presentational attributes may be given the same list, which must not
+     * be changed. May return null.
+     */
+    List<PropertyDeclaration> getNonCssStyleDeclarations(Element e, StylesheetFactory factory);
+
     /**
      * may return null
      */
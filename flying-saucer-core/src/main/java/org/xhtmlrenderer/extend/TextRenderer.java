@@ -24,6 +24,7 @@ import java.awt.Rectangle;
 
 import org.xhtmlrenderer.render.FSFont;
 import org.xhtmlrenderer.render.FSFontMetrics;
+import org.xhtmlrenderer.render.FSTextWidths;
 import org.xhtmlrenderer.render.JustificationInfo;
 
 public interface TextRenderer {
@@ -45,6 +46,13 @@ public interface TextRenderer {
 
     public int getWidth(FontContext context, FSFont font, String string);
 
+    /**
+     * Measures <code>string</code> once, so the width of any substring of it
+     * can be looked up afterwards. Line breaking uses this instead of
+     * measuring each candidate line with {@link #getWidth}.
+     */
+    public FSTextWidths getTextWidths(FontContext context, FSFont font, String string);
+
     public void setFontScale(float scale);
 
     public float getFontScale();
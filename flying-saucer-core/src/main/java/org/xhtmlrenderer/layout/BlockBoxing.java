@@ -62,12 +62,27 @@ public class BlockBoxing {
             relayoutDataList = new RelayoutDataList(localChildren.size());
         }
 
+        final CompletedPageTracker tracker = c.isPrint() ? c.getCompletedPageTracker() : null;
+        final CompletedPageTracker.Frame frame = tracker == null ? null : tracker.push(block, localChildren);
+        final LayoutProgressTracker progress = c.isPrint() ? null : c.getLayoutProgressTracker();
+        final LayoutProgressTracker.Frame progressFrame =
+                progress == null ? null : progress.push(block, localChildren);
+
         int pageCount = NO_PAGE_TRIM;
         BlockBox previousChildBox = null;
         for (final Box box : localChildren) {
             final BlockBox child = (BlockBox) box;
             offset++;
 
+            c.checkCancelled();
+
+            if (frame != null) {
+                frame.setCurrent(offset);
+            }
+            if (progressFrame != null) {
+                progressFrame.setCurrent(offset);
+            }
+
             RelayoutData relayoutData = null;
 
             boolean mayCheckKeepTogether = false;
@@ -86,15 +101,22 @@ public class BlockBoxing {
                 }
             }
 
+            if (c.isPrint()) {
+                c.setPageClearRelayoutBox(child);
+            }
             layoutBlockChild(
                     c, block, child, false, childOffset, NO_PAGE_TRIM,
                     relayoutData == null ? null : relayoutData.getLayoutState());
 
             if (c.isPrint()) {
+                c.setPageClearRelayoutBox(null);
                 final boolean needPageClear = child.isNeedPageClear();
                 if (needPageClear || mayCheckKeepTogether) {
                     c.setMayCheckKeepTogether(mayCheckKeepTogether);
-                    final boolean tryToAvoidPageBreak = child.getStyle().isAvoidPageBreakInside() && child.crossesPageBreak(c);
+                    // A box which needs a page clear may not have finished
+                    // its layout but it always crosses the page break
+                    final boolean tryToAvoidPageBreak = child.getStyle().isAvoidPageBreakInside() &&
+                            (needPageClear || child.crossesPageBreak(c));
                     final boolean keepWithInline = child.isNeedsKeepWithInline(c);
                     if (tryToAvoidPageBreak || needPageClear || keepWithInline) {
                         c.restoreStateForRelayout(relayoutData.getLayoutState());
@@ -149,7 +171,36 @@ public class BlockBoxing {
             }
 
             previousChildBox = child;
+
+            if (tracker != null) {
+                tracker.childCompleted(c, frame);
+            }
+            if (progress != null) {
+                progress.childCompleted(c, progressFrame);
+            }
+        }
+
+        if (tracker != null) {
+            tracker.pop(frame);
         }
+        if (progress != null) {
+            progress.pop(progressFrame);
+        }
+    }
+
+    /**
+     * Whether a page break between two adjacent siblings should be avoided,
+     * making them part of the same run.
+     */
+    static boolean isPageBreakAvoided(final BlockBox previous, final BlockBox current) {
+        final IdentValue previousAfter =
+                previous.getStyle().getIdent(CSSName.PAGE_BREAK_AFTER);
+        final IdentValue currentBefore =
+                current.getStyle().getIdent(CSSName.PAGE_BREAK_BEFORE);
+
+        return (previousAfter == IdentValue.AVOID && currentBefore == IdentValue.AUTO) ||
+                (previousAfter == IdentValue.AUTO && currentBefore == IdentValue.AVOID) ||
+                (previousAfter == IdentValue.AVOID && currentBefore == IdentValue.AVOID);
     }
 
     private static RelayoutRunResult processPageBreakAvoidRun(final LayoutContext c, final BlockBox block,
@@ -370,14 +421,7 @@ public class BlockBoxing {
             final RelayoutData previousData = get(offset - 1);
             final RelayoutData currentData = get(offset);
 
-            final IdentValue previousAfter =
-                    previous.getStyle().getIdent(CSSName.PAGE_BREAK_AFTER);
-            final IdentValue currentBefore =
-                    current.getStyle().getIdent(CSSName.PAGE_BREAK_BEFORE);
-
-            if ((previousAfter == IdentValue.AVOID && currentBefore == IdentValue.AUTO) ||
-                    (previousAfter == IdentValue.AUTO && currentBefore == IdentValue.AVOID) ||
-                    (previousAfter == IdentValue.AVOID && currentBefore == IdentValue.AVOID)) {
+            if (isPageBreakAvoided(previous, current)) {
                 if (! previousData.isInRun()) {
                     previousData.setStartsRun(true);
                 }
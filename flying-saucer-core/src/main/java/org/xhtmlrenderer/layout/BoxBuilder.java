@@ -83,6 +83,8 @@ public class BoxBuilder {
     public static BlockBox createRootBox(final LayoutContext c, final Document document) {
         final Element root = document;
 
+        c.getSharedContext().resolveStyles(document);
+
         final CalculatedStyle style = c.getSharedContext().getStyle(root);
 
         BlockBox result;
@@ -109,6 +111,8 @@ public class BoxBuilder {
     }
 
     public static void createChildren(final LayoutContext c, final BlockBox parent) {
+        c.checkCancelled();
+
         final List<Styleable> children = new ArrayList<Styleable>();
 
         final ChildBoxInfo info = new ChildBoxInfo();
@@ -143,7 +147,7 @@ public class BoxBuilder {
         final Element source = c.getRootLayer().getMaster().getElement(); // HACK
 
         final ChildBoxInfo info = new ChildBoxInfo();
-        final CalculatedStyle pageStyle = new EmptyStyle().deriveStyle(pageInfo.getPageStyle());
+        final CalculatedStyle pageStyle = pageInfo.getCalculatedPageStyle();
 
         final CalculatedStyle tableStyle = pageStyle.deriveStyle(
                 CascadedStyle.createLayoutStyle(new PropertyDeclaration[] {
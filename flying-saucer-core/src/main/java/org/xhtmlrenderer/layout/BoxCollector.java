@@ -37,6 +37,24 @@ import org.xhtmlrenderer.render.RenderingContext;
  * added to separate lists as they are painted in separate render phases.
  */
 public class BoxCollector {
+    private final PagedBoxIndex _index;
+
+    private Shape _indexedClip;
+    private int _indexedTop;
+    private int _indexedBottom;
+
+    public BoxCollector() {
+        this(null);
+    }
+
+    /**
+     * @param index if not <code>null</code>, used to skip the children of
+     * indexed boxes which lie entirely above or below the clip
+     */
+    BoxCollector(final PagedBoxIndex index) {
+        _index = index;
+    }
+
     public void collect(
             final CssContext c, final Shape clip, final Layer layer, 
             final List<Box> blockContent, final List<Box> inlineContent, final BoxRangeLists rangeLists) {
@@ -134,7 +152,14 @@ public class BoxCollector {
 
             if (container.getPaintingInfo() == null || intersectsAggregateBounds) {
                 if (container.getLayer() == null || container == layer.getMaster()) {
-                    for (int i = 0; i < container.getChildCount(); i++) {
+                    int first = 0;
+                    int last = container.getChildCount() - 1;
+                    if (_index != null && clip != null) {
+                        final int[] range = getChildRange(clip, container);
+                        first = range[0];
+                        last = range[1];
+                    }
+                    for (int i = first; i <= last; i++) {
                         final Box child = container.getChild(i);
                         collect(c, clip, layer, child, blockContent, inlineContent, rangeLists);
                     }
@@ -148,6 +173,16 @@ public class BoxCollector {
                 blockRangeStart, inlineRangeStart);
     }
 
+    private int[] getChildRange(final Shape clip, final Box container) {
+        if (clip != _indexedClip) {
+            final Rectangle bounds = clip.getBounds();
+            _indexedClip = clip;
+            _indexedTop = bounds.y;
+            _indexedBottom = bounds.y + bounds.height;
+        }
+        return _index.getChildRange(container, _indexedTop, _indexedBottom);
+    }
+
     private void saveRangeData(
             final CssContext c, final Box container, final List<Box> blockContent, final List<Box> inlineContent,
             final BoxRangeLists rangeLists, final boolean isBlock, final int blockStart, final int inlineStart,
@@ -21,9 +21,12 @@
 package org.xhtmlrenderer.layout;
 
 import java.text.BreakIterator;
+import java.text.StringCharacterIterator;
+
 import org.xhtmlrenderer.css.constants.IdentValue;
 import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.render.FSFont;
+import org.xhtmlrenderer.render.FSTextWidths;
 
 /**
  * A utility class that scans the text of a single inline box, looking for the
@@ -108,83 +111,75 @@ public class Breaker {
             final LineBreakContext context, final int avail, final CalculatedStyle style,
             final boolean tryToBreakAnywhere)
     {
-        final String currentString = context.getStartSubstring();
+        final FSFont font = style.getFSFont(c);
+        final FSTextWidths widths = getTextWidths(c, context, font);
+        final String master = context.getMaster();
+        final int start = context.getStart();
+        final int length = master.length() - start;
 
         final BreakIterator iter = c.getTextBreaker();
-        iter.setText(currentString);
-
-        final FSFont font = style.getFSFont(c);
-        int width = 0;
-        int next = 0;
-        int last = 0;
-        
-        if (currentString.length() >= 5)
-        {
-        	// First we get the width of the first five characters.
-        	// This should give us a crude idea of the average width of a char.
-        	final float widthChar5 = c.getTextRenderer().getWidth(
-        			c.getFontContext(), font, currentString.substring(0, 4));
-        	
-        	final float sampledCharLength = widthChar5 / 5; 
-
-        	int estimate = 0;
-        	        	
-        	if (sampledCharLength != 0)
-        		estimate = (int) (avail / sampledCharLength); 
-
-            // Now iterate the possible line breaks until we reach the estimate.
-            do
-            {
-            	next = iter.next();
-            	if (next == BreakIterator.DONE)
-            		break;
-            	last = next;
+        iter.setText(new StringCharacterIterator(master, start, master.length(), start));
+
+        // Find the longest run of text that fits. Widths never decrease as
+        // the run gets longer, so we can binary search for it.
+        int fits = -1;
+        int low = 0;
+        int high = length;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (widths.getWidth(start, start + mid) < avail) {
+                fits = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
             }
-            while (next < estimate);
-
-            // Next, measure our text at the break point.
-            final String broken = currentString.substring(0, last);
-            width = c.getTextRenderer().getWidth(c.getFontContext(), font, broken);
         }
 
-        // If we still have room go to one break past.
-        while (width < avail)
-        {
-        	next = iter.next();
-        	if (next == BreakIterator.DONE)
-        		break;
-        	last = next;
-        	final String broken = currentString.substring(0, next);
-        	width = c.getTextRenderer().getWidth(c.getFontContext(), font, broken);
-        }
-        
-        if (width >= avail)
-        	context.setNeedsNewLine(true);
-        
-        while (width >= avail)
-        {
-        	next = iter.previous();
-        	if (next == 0 || next == BreakIterator.DONE)
-        		break;
-        	last = next;
-        	final String broken = currentString.substring(0, next);
-        	width = c.getTextRenderer().getWidth(c.getFontContext(), font, broken);        	
+        int last;
+        int width;
+        if (fits == length) {
+            // Everything fits, break at the end of the text
+            last = length;
+            width = widths.getWidth(start, master.length());
+        } else {
+            context.setNeedsNewLine(true);
+
+            // The last break opportunity that still fits, if there is one
+            int next = fits < 0 ? BreakIterator.DONE : iter.preceding(start + fits + 1);
+            if (next != BreakIterator.DONE && next != start) {
+                last = next - start;
+                width = widths.getWidth(start, next);
+            } else {
+                // Otherwise the first break opportunity, which doesn't fit
+                next = iter.following(start + Math.max(fits, 0));
+                last = next == BreakIterator.DONE ? length : next - start;
+                width = widths.getWidth(start, start + last);
+            }
         }
-        
+
         if (width >= avail && !tryToBreakAnywhere)
         	context.setUnbreakable(true);
         else if (width >= avail)
         {
             while (width >= avail && last > 0)
             {
-            	final String broken = currentString.substring(0, last);
-            	width = c.getTextRenderer().getWidth(c.getFontContext(), font, broken);
+            	width = widths.getWidth(start, start + last);
             	last--;
             }
         }
-        
+
         context.setWidth(width);
-        context.setEnd(context.getStart() + last);
+        context.setEnd(start + last);
+    }
+
+    private static FSTextWidths getTextWidths(final LayoutContext c,
+            final LineBreakContext context, final FSFont font) {
+        FSTextWidths result = context.getTextWidths(font);
+        if (result == null) {
+            result = c.getTextRenderer().getTextWidths(c.getFontContext(), font, context.getMaster());
+            context.setTextWidths(font, result);
+        }
+        return result;
     }
 
 }
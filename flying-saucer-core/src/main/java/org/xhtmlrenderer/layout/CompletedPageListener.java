@@ -0,0 +1,38 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.layout;
+
+/**
+ * Receives pages while a document is still being laid out in print mode, see
+ * {@link LayoutContext#setCompletedPageListener(CompletedPageListener)}.
+ */
+public interface CompletedPageListener {
+    /**
+     * Called when layout has moved past the first <code>pageCount</code>
+     * pages of the root layer. The content on these pages won't change
+     * anymore and can be painted now. While the call lasts, the blocks still
+     * being laid out extend past these pages and the root layer only paints
+     * content which has been laid out. Afterwards the boxes lying entirely on
+     * these pages are emptied to free memory, so they must not be painted
+     * again.
+     *
+     * @param pageCount the number of completed pages, never less than in
+     * the previous call
+     */
+    public void pagesCompleted(LayoutContext c, int pageCount);
+}
@@ -0,0 +1,478 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.layout;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.newtable.RowData;
+import org.xhtmlrenderer.newtable.TableCellBox;
+import org.xhtmlrenderer.newtable.TableRowBox;
+import org.xhtmlrenderer.newtable.TableSectionBox;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.FloatedBoxData;
+import org.xhtmlrenderer.render.InlineLayoutBox;
+import org.xhtmlrenderer.render.LineBox;
+import org.xhtmlrenderer.render.PageBox;
+
+/**
+ * Follows {@link BlockBoxing} through the document to find the pages which
+ * are complete and hands them to a {@link CompletedPageListener}.
+ * <p/>
+ * Every block laying out block content pushes a {@link Frame}. The frames
+ * of the blocks around the current position form a chain starting at the
+ * root box. When a child has been laid out, everything above it is complete,
+ * unless something in the chain may still be laid out again: a block
+ * avoiding page breaks inside, a run of siblings avoiding page breaks
+ * between them, a paginated table or table rows sharing a cell. Pages are
+ * then only completed up to the top of that block.
+ * <p/>
+ * After the listener has painted the pages, the children of the blocks in
+ * the chain which lie entirely on them are emptied. The children themselves
+ * stay in the tree with their position and size, since later siblings, the
+ * id map and the PDF outline still refer to them.
+ */
+class CompletedPageTracker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompletedPageTracker.class);
+
+    private final CompletedPageListener _listener;
+    private final List<Frame> _frames = new ArrayList<Frame>();
+
+    private int _completedPageCount;
+    private int _completedBottom = Integer.MIN_VALUE;
+
+    private LayoutContext _marginContext;
+
+    private boolean _warnedMovedUp;
+    private boolean _warnedPageCount;
+
+    CompletedPageTracker(final CompletedPageListener listener) {
+        _listener = listener;
+    }
+
+    Frame push(final BlockBox block, final List<Box> children) {
+        final Frame result = new Frame(block, children);
+        _frames.add(result);
+        return result;
+    }
+
+    void pop(final Frame frame) {
+        if (_frames.isEmpty() || _frames.remove(_frames.size() - 1) != frame) {
+            throw new IllegalStateException("Frames must be popped in the reverse order of being pushed");
+        }
+    }
+
+    /**
+     * Called by {@link BlockBoxing} once the current child of
+     * <code>frame</code> won't be laid out again by its parent.
+     */
+    void childCompleted(final LayoutContext c, final Frame frame) {
+        final int depth = _frames.size();
+        if (depth == 0 || ! _frames.get(0)._block.isRoot()) {
+            return;
+        }
+
+        final BlockBox child = frame.getChild(frame._current);
+        if (getFlowTop(child) < _completedBottom && ! _warnedMovedUp) {
+            LOGGER.warn("Content was laid out on a page which has already been written. " +
+                    "Negative margins are not supported when writing pages during layout.");
+            _warnedMovedUp = true;
+        }
+
+        final List<PageBox> pages = c.getRootLayer().getPages();
+        // The last page is the one being filled
+        if (_completedPageCount >= pages.size() - 1 ||
+                pages.get(_completedPageCount).getBottom() > getFlowBottom(child)) {
+            return;
+        }
+
+        // For each frame, the last child which may be painted
+        final int[] ends = new int[depth];
+        int chain = depth;
+        int safeLine = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            final Frame f = _frames.get(i);
+            final int current = f._current;
+            if (i == depth - 1) {
+                final int heldFrom = f.getHeldFrom(current, true);
+                ends[i] = heldFrom - 1;
+                if (heldFrom <= current) {
+                    safeLine = Math.min(safeLine, getFlowTop(f.getChild(heldFrom)));
+                } else {
+                    safeLine = Math.min(safeLine, getFlowBottom(f.getChild(current)));
+                }
+            } else {
+                final int heldFrom = f.getHeldFrom(current, false);
+                final BlockBox currentChild = f.getChild(current);
+                if (heldFrom < current || _frames.get(i + 1)._block != currentChild ||
+                        isHeldWhileInProgress(currentChild)) {
+                    ends[i] = heldFrom - 1;
+                    safeLine = Math.min(safeLine, getFlowTop(f.getChild(heldFrom)));
+                    chain = i + 1;
+                    break;
+                }
+                ends[i] = current;
+            }
+        }
+
+        int count = _completedPageCount;
+        while (count < pages.size() - 1 && pages.get(count).getBottom() <= safeLine) {
+            count++;
+        }
+        if (count == _completedPageCount) {
+            return;
+        }
+
+        final int bottom = pages.get(count - 1).getBottom();
+        paint(c, chain, ends, count, bottom);
+
+        _completedPageCount = count;
+        _completedBottom = bottom;
+
+        release(c, chain, ends, bottom);
+    }
+
+    /**
+     * Warns about content which couldn't be painted on the pages written
+     * during layout.
+     */
+    void finish(final LayoutContext c) {
+        if (_completedPageCount == 0 || c.getRootLayer() == null) {
+            return;
+        }
+
+        for (final Layer child : c.getRootLayer().getChildren()) {
+            final CalculatedStyle style = child.getMaster().getStyle();
+            if (style.isFixed() ||
+                    (style.isAbsolute() && child.getMaster().getAbsY() < _completedBottom)) {
+                LOGGER.warn("Absolute or fixed content of the root element is missing from " +
+                        _completedPageCount + " pages written during layout");
+                break;
+            }
+        }
+    }
+
+    /**
+     * Whether a block in the chain may be laid out again as a whole, or
+     * can only be painted once its final height is known.
+     */
+    private boolean isHeldWhileInProgress(final BlockBox block) {
+        final CalculatedStyle style = block.getStyle();
+        return style.isAvoidPageBreakInside() || style.isKeepWithInline() ||
+                (style.isTable() && style.isPaginateTable()) ||
+                ! style.isAutoHeight() || ! style.isMaxHeightNone();
+    }
+
+    private void paint(final LayoutContext c, final int chain, final int[] ends,
+                       final int count, final int bottom) {
+        final PagedBoxIndex index = new PagedBoxIndex();
+        final int[] heights = new int[chain];
+        final PaintingInfo[] infos = new PaintingInfo[chain];
+
+        for (int i = 0; i < chain; i++) {
+            final Frame f = _frames.get(i);
+            final BlockBox block = f._block;
+
+            index.setChildRange(block, f._released, ends[i]);
+            for (int j = f._released; j <= getLastCompleted(chain, ends, i); j++) {
+                f.getChild(j).calcPaintingInfo(c, true);
+            }
+
+            // Blocks still being laid out continue past the completed pages,
+            // their bottom border and padding will be on a later page
+            heights[i] = block.getHeight();
+            infos[i] = block.getPaintingInfo();
+            final int height = bottom - block.getAbsY() +
+                    block.getMarginBorderPadding(c, CalculatedStyle.BOTTOM) + 1;
+            if (height > block.getHeight()) {
+                block.setHeight(height);
+            }
+
+            final PaintingInfo info = new PaintingInfo();
+            info.setOuterMarginCorner(new Dimension(
+                    block.getAbsX() + block.getWidth(), block.getAbsY() + block.getHeight()));
+            info.setAggregateBounds(new Rectangle(
+                    Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, Integer.MAX_VALUE, Integer.MAX_VALUE));
+            block.setPaintingInfo(info);
+
+            if (block.getLayer() != null) {
+                block.getLayer().setPagedBoxIndex(index);
+            }
+        }
+
+        final Layer rootLayer = _frames.get(0)._block.getLayer();
+        layoutMarginAreas(c, rootLayer, count);
+
+        rootLayer.setLayoutInProgress(true);
+        try {
+            _listener.pagesCompleted(c, count);
+        } finally {
+            rootLayer.setLayoutInProgress(false);
+            for (int i = 0; i < chain; i++) {
+                final BlockBox block = _frames.get(i)._block;
+                block.setHeight(heights[i]);
+                block.setPaintingInfo(infos[i]);
+                if (block.getLayer() != null) {
+                    block.getLayer().setPagedBoxIndex(null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lays out the margin boxes of the completed pages. The layout of the
+     * document continues afterwards, so they get a context of their own.
+     */
+    private void layoutMarginAreas(final LayoutContext c, final Layer rootLayer, final int count) {
+        if (_marginContext == null) {
+            _marginContext = c.getSharedContext().newLayoutContextInstance();
+            _marginContext.setFontContext(c.getFontContext());
+            _marginContext.setRootLayer(rootLayer);
+            _marginContext.setRootDocumentLayer(rootLayer);
+        }
+
+        final List<PageBox> pages = rootLayer.getPages();
+        for (int i = _completedPageCount; i < count; i++) {
+            pages.get(i).layout(_marginContext);
+        }
+
+        if (! _warnedPageCount && (c.getContentFunctionFactory().isPageCountReferenced() ||
+                _marginContext.getContentFunctionFactory().isPageCountReferenced())) {
+            LOGGER.warn("counter(pages) gives the number of pages laid out so far " +
+                    "on pages written during layout");
+            _warnedPageCount = true;
+        }
+    }
+
+    /**
+     * The child of a frame in the chain before the next frame is still
+     * being laid out.
+     */
+    private int getLastCompleted(final int chain, final int[] ends, final int i) {
+        return i < chain - 1 ? ends[i] - 1 : ends[i];
+    }
+
+    private void release(final LayoutContext c, final int chain, final int[] ends, final int bottom) {
+        for (int i = 0; i < chain; i++) {
+            final Frame f = _frames.get(i);
+            final int last = getLastCompleted(chain, ends, i);
+            while (f._released <= last) {
+                final Box child = f.getChild(f._released);
+                final Rectangle bounds = child.getPaintingInfo().getAggregateBounds();
+                if (bounds.y + bounds.height > bottom || hasFloatBelow(c, child, bottom)) {
+                    break;
+                }
+                release(child);
+                f._released++;
+            }
+        }
+    }
+
+    /**
+     * Floats aren't part of the painting info of the block containing them,
+     * and may have been moved to a later page than the block.
+     */
+    private boolean hasFloatBelow(final LayoutContext c, final Box box, final int bottom) {
+        if (box instanceof BlockBox && ((BlockBox) box).isFloated()) {
+            final Rectangle bounds = box.calcPaintingInfo(c, true).getAggregateBounds();
+            if (bounds.y + bounds.height > bottom) {
+                return true;
+            }
+        }
+
+        for (int i = 0; i < box.getChildCount(); i++) {
+            if (hasFloatBelow(c, box.getChild(i), bottom)) {
+                return true;
+            }
+        }
+
+        if (box instanceof LineBox) {
+            for (final Box content : ((LineBox) box).getNonFlowContent()) {
+                if (hasFloatBelow(c, content, bottom)) {
+                    return true;
+                }
+            }
+        } else if (box instanceof InlineLayoutBox) {
+            for (final Object child : ((InlineLayoutBox) box).getInlineChildren()) {
+                if (child instanceof Box && hasFloatBelow(c, (Box) child, bottom)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private void release(final Box box) {
+        if (box instanceof BlockBox) {
+            final BlockBox block = (BlockBox) box;
+            if (block.getStyle().isRunning()) {
+                // Still needed for the margin boxes of later pages
+                return;
+            }
+            if (block.isFloated()) {
+                final FloatedBoxData data = block.getFloatedBoxData();
+                if (data.getManager() != null) {
+                    data.getManager().removeFloat(block);
+                }
+                if (data.getDrawingLayer() != null) {
+                    data.getDrawingLayer().removeFloat(block);
+                }
+            }
+        }
+
+        final Layer layer = box.getLayer();
+        if (layer != null) {
+            if (layer.isRequiresLayout()) {
+                // Absolute content which is positioned when its containing
+                // layer is finished
+                return;
+            }
+            layer.detach();
+        }
+
+        for (int i = 0; i < box.getChildCount(); i++) {
+            release(box.getChild(i));
+        }
+
+        if (box instanceof LineBox) {
+            for (final Box content : ((LineBox) box).getNonFlowContent()) {
+                release(content);
+            }
+        } else if (box instanceof InlineLayoutBox) {
+            for (final Object child : ((InlineLayoutBox) box).getInlineChildren()) {
+                if (child instanceof Box) {
+                    release((Box) child);
+                }
+            }
+        }
+
+        // The section's grid and collapsed borders refer to its rows and cells
+        if (! (box instanceof TableSectionBox || box instanceof TableRowBox)) {
+            box.removeAllChildren();
+        }
+    }
+
+    private static int getFlowTop(final Box box) {
+        final Dimension offset = box.getRelativeOffset();
+        return offset == null ? box.getAbsY() : box.getAbsY() - offset.height;
+    }
+
+    private static int getFlowBottom(final Box box) {
+        return getFlowTop(box) + box.getHeight();
+    }
+
+    static class Frame {
+        private final BlockBox _block;
+        private final List<Box> _children;
+
+        private int _current;
+        private int _released;
+
+        Frame(final BlockBox block, final List<Box> children) {
+            _block = block;
+            _children = children;
+        }
+
+        void setCurrent(final int current) {
+            _current = current;
+        }
+
+        BlockBox getChild(final int i) {
+            return (BlockBox) _children.get(i);
+        }
+
+        /**
+         * Returns the first child which may still be laid out again along
+         * with the child at <code>index</code>, or the child following it
+         * if there is none.
+         *
+         * @param completed whether the child at <code>index</code> has been
+         * laid out or is still being laid out
+         */
+        int getHeldFrom(final int index, final boolean completed) {
+            int result = completed ? index + 1 : index;
+
+            // See BlockBoxing.processPageBreakAvoidRun(), a run is checked
+            // after the child following it
+            if (completed) {
+                if (index < _children.size() - 1 && (isLinked(index) || isLinked(index + 1))) {
+                    result = getRunStart(index);
+                }
+            } else if (isLinked(index)) {
+                result = getRunStart(index);
+            } else if (isLinked(index - 1)) {
+                result = getRunStart(index - 1);
+            }
+
+            if (_block instanceof TableSectionBox) {
+                final TableSectionBox section = (TableSectionBox) _block;
+                if (! completed || spansIntoNextRow(section, index)) {
+                    result = Math.min(result, getRowGroupStart(section, index));
+                }
+            }
+
+            return result;
+        }
+
+        private boolean isLinked(final int index) {
+            return index > 0 && index < _children.size() &&
+                    BlockBoxing.isPageBreakAvoided(getChild(index - 1), getChild(index));
+        }
+
+        private int getRunStart(int index) {
+            while (isLinked(index)) {
+                index--;
+            }
+            return index;
+        }
+
+        /**
+         * Rows sharing a cell are laid out again when the cell's last row is
+         * laid out.
+         */
+        private int getRowGroupStart(final TableSectionBox section, int row) {
+            while (row > 0 && spansIntoNextRow(section, row - 1)) {
+                row--;
+            }
+            return row;
+        }
+
+        private boolean spansIntoNextRow(final TableSectionBox section, final int row) {
+            final List<RowData> grid = section.getGrid();
+            if (row + 1 >= grid.size()) {
+                return false;
+            }
+            final List<TableCellBox> cells = grid.get(row).getRow();
+            for (int col = 0; col < cells.size(); col++) {
+                final TableCellBox cell = cells.get(col);
+                if (cell != null && cell != TableCellBox.SPANNING_CELL &&
+                        section.cellAt(row + 1, col) == cell) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
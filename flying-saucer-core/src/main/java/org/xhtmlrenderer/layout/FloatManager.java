@@ -264,6 +264,10 @@ public class FloatManager {
         }
     }
 
+    public boolean hasFloats() {
+        return ! _leftFloats.isEmpty() || ! _rightFloats.isEmpty();
+    }
+
     public void removeFloat(final BlockBox floater) {
         removeFloat(floater, getFloats(LEFT));
         removeFloat(floater, getFloats(RIGHT));
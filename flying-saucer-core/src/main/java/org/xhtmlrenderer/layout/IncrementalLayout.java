@@ -0,0 +1,470 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.layout;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xhtmlrenderer.css.constants.CSSName;
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.newtable.TableBox;
+import org.xhtmlrenderer.newtable.TableCellBox;
+import org.xhtmlrenderer.newtable.TableRowBox;
+import org.xhtmlrenderer.newtable.TableSectionBox;
+import org.xhtmlrenderer.render.AnonymousBlockBox;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.InlineLayoutBox;
+import org.xhtmlrenderer.render.LineBox;
+import org.xhtmlrenderer.render.ViewportBox;
+
+/**
+ * Lays out the parts of an already laid out (screen) document which have been
+ * marked with {@link Box#markNeedsRelayout()}, or which show a replaced
+ * element (typically an image which has finished loading) whose size has
+ * changed, again instead of the whole document.  Such a box is laid out again
+ * through the nearest ancestor which is either
+ * <ul>
+ * <li>a block whose size does not depend on its content and which establishes
+ * a block formatting context (e.g. a fixed size <code>overflow: hidden</code>
+ * block, float or absolutely positioned box). Only its children are laid out
+ * again.</li>
+ * <li>a block in the normal flow. It is laid out again and the content after
+ * it is moved up or down by however much its height changed.</li>
+ * </ul>
+ * Anything this cannot handle (floats around moved content, relatively
+ * positioned inline content, shrink-to-fit or table ancestors whose width may
+ * depend on the changed content, ...) makes {@link #layout(LayoutContext, BlockBox)}
+ * return <code>false</code> and the caller must lay out the whole document
+ * instead.
+ */
+public class IncrementalLayout {
+    private IncrementalLayout() {
+    }
+
+    /**
+     * Lays out the boxes below <code>root</code> which have been marked, or
+     * which show a replaced element whose size has changed, again.  Returns
+     * <code>false</code> if that is not possible, in which case the layout
+     * may have been partially updated and the whole document must be reset
+     * and laid out again.
+     */
+    public static boolean layout(final LayoutContext c, final BlockBox root) {
+        if (c.isPrint() || root.getLayer() == null) {
+            return false;
+        }
+
+        final List<Box> marked = new ArrayList<Box>();
+        collectMarked(c, root, marked);
+        if (marked.isEmpty()) {
+            return true;
+        }
+
+        final Layer rootLayer = root.getLayer();
+        if (! isRepositionable(rootLayer)) {
+            return false;
+        }
+
+        final List<BlockBox> relayoutRoots = new ArrayList<BlockBox>();
+        for (final Box box : marked) {
+            final BlockBox relayoutRoot = findRelayoutRoot(box);
+            if (relayoutRoot == null) {
+                return false;
+            }
+            if (! relayoutRoots.contains(relayoutRoot)) {
+                relayoutRoots.add(relayoutRoot);
+            }
+        }
+        removeNested(relayoutRoots);
+
+        for (final BlockBox relayoutRoot : relayoutRoots) {
+            if (containsLayersOf(rootLayer, relayoutRoot)) {
+                return false;
+            }
+            if (! isContentIndependent(relayoutRoot) && isNearFloats(relayoutRoot)) {
+                return false;
+            }
+        }
+
+        c.setRootLayer(rootLayer);
+
+        boolean moved = false;
+        for (final BlockBox relayoutRoot : relayoutRoots) {
+            if (isContentIndependent(relayoutRoot)) {
+                relayoutRoot.layoutChildrenAgain(c);
+            } else {
+                final int delta = layoutInFlow(c, relayoutRoot);
+                if (isNearFloats(relayoutRoot)) {
+                    return false;
+                }
+                if (delta != 0) {
+                    moveFollowingContent(relayoutRoot, delta);
+                    moved = true;
+                }
+            }
+        }
+
+        if (! isRepositionable(rootLayer)) {
+            return false;
+        }
+        if (moved) {
+            positionLayers(c, rootLayer);
+        }
+
+        clearPaintingInfo(root);
+
+        return true;
+    }
+
+    private static void collectMarked(final LayoutContext c, final Box box, final List<Box> result) {
+        if (box.isNeedsRelayout() ||
+                (box instanceof BlockBox && ((BlockBox)box).isReplacedElementResized(c))) {
+            box.clearNeedsRelayout();
+            result.add(box);
+        } else {
+            for (final Box child : getContent(box)) {
+                collectMarked(c, child, result);
+            }
+        }
+    }
+
+    /**
+     * Returns the child boxes of <code>box</code> including the boxes inside
+     * inline content and the floats and absolutely positioned boxes in a line.
+     */
+    private static List<Box> getContent(final Box box) {
+        final List<Box> result = new ArrayList<Box>(box.getChildren());
+        if (box instanceof LineBox) {
+            result.addAll(((LineBox)box).getNonFlowContent());
+        } else if (box instanceof InlineLayoutBox) {
+            final InlineLayoutBox iB = (InlineLayoutBox)box;
+            for (int i = 0; i < iB.getInlineChildCount(); i++) {
+                final Object child = iB.getInlineChild(i);
+                if (child instanceof Box) {
+                    result.add((Box)child);
+                }
+            }
+        }
+        return result;
+    }
+
+    static void clearPaintingInfo(final Box box) {
+        box.setPaintingInfo(null);
+        for (final Box child : getContent(box)) {
+            clearPaintingInfo(child);
+        }
+    }
+
+    private static BlockBox findRelayoutRoot(final Box box) {
+        for (Box current = box; current != null; current = getLayoutParent(current)) {
+            if (current instanceof BlockBox) {
+                final BlockBox block = (BlockBox)current;
+                if (isContentIndependent(block) && isAncestorsUnaffected(block)) {
+                    return block;
+                }
+                if (isInFlow(block) && block.getLayer() == null &&
+                        isAncestorsUnaffected(block) &&
+                        isHeightChangeAbsorbable(block)) {
+                    return block;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Floats and absolutely positioned boxes inside a line have no parent so
+     * continue with their containing block (but not the viewport).
+     */
+    private static Box getLayoutParent(final Box box) {
+        if (box.getParent() != null) {
+            return box.getParent();
+        } else {
+            final Box containingBlock = box.getContainingBlock();
+            return containingBlock instanceof BlockBox && ! (containingBlock instanceof ViewportBox) ?
+                    containingBlock : null;
+        }
+    }
+
+    private static void removeNested(final List<BlockBox> relayoutRoots) {
+        for (int i = relayoutRoots.size() - 1; i >= 0; i--) {
+            for (Box parent = getLayoutParent(relayoutRoots.get(i)); parent != null; parent = getLayoutParent(parent)) {
+                if (relayoutRoots.contains(parent)) {
+                    relayoutRoots.remove(i);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * A block whose size is fixed by its style and which establishes a block
+     * formatting context, so laying out its children again cannot affect
+     * anything outside it.
+     */
+    private static boolean isContentIndependent(final BlockBox block) {
+        final CalculatedStyle style = block.getStyle();
+        return ! block.isReplaced() &&
+                ! block.isInline() &&
+                ! isTablePart(block) &&
+                ! style.isListItem() &&
+                style.establishesBFC() &&
+                ! style.isAutoWidth() &&
+                ! block.isAutoHeight();
+    }
+
+    private static boolean isInFlow(final BlockBox block) {
+        final CalculatedStyle style = block.getStyle();
+        return block.getParent() instanceof BlockBox &&
+                ((BlockBox)block.getParent()).getChildrenContentType() == BlockBox.CONTENT_BLOCK &&
+                ! (block instanceof AnonymousBlockBox) &&
+                ! (block instanceof TableSectionBox) &&
+                ! (block instanceof TableRowBox) &&
+                ! (block instanceof TableCellBox) &&
+                ! style.isAbsolute() &&
+                ! style.isFixed() &&
+                ! style.isFloated();
+    }
+
+    private static boolean isTablePart(final Box box) {
+        return box instanceof TableBox || box instanceof TableSectionBox ||
+                box instanceof TableRowBox || box instanceof TableCellBox;
+    }
+
+    /**
+     * Whether none of the ancestors lays out its content in a way the
+     * content of <code>block</code> takes part in (list markers, first line
+     * and first letter styles) or sizes itself to fit it.
+     */
+    private static boolean isAncestorsUnaffected(final BlockBox block) {
+        final boolean fixedWidth = isContentIndependent(block);
+        for (Box parent = getLayoutParent(block); parent != null; parent = getLayoutParent(parent)) {
+            if (parent instanceof BlockBox) {
+                final BlockBox ancestor = (BlockBox)parent;
+                if (ancestor.getStyle().isListItem() ||
+                        ancestor.getFirstLineStyle() != null ||
+                        ancestor.getFirstLetterStyle() != null) {
+                    return false;
+                }
+                if (! fixedWidth && isShrinkToFit(ancestor)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isShrinkToFit(final BlockBox block) {
+        if (isTablePart(block)) {
+            return true;
+        }
+        final CalculatedStyle style = block.getStyle();
+        return style.isAutoWidth() &&
+                (block.isInline() || style.isFloated() || style.isAbsolute() || style.isFixed());
+    }
+
+    /**
+     * Whether a change in the height of <code>block</code> can be handled by
+     * moving the content after it, i.e. whether the ancestors up to the first
+     * one with a fixed height (or the root) simply stack their children.
+     */
+    private static boolean isHeightChangeAbsorbable(final BlockBox block) {
+        for (Box parent = block.getParent(); parent != null; parent = parent.getParent()) {
+            if (! (parent instanceof BlockBox)) {
+                return false;
+            }
+            final BlockBox ancestor = (BlockBox)parent;
+            if (isTablePart(ancestor)) {
+                return false;
+            }
+            if (! ancestor.isAutoHeight()) {
+                return true;
+            }
+            final CalculatedStyle style = ancestor.getStyle();
+            if (style.asFloat(CSSName.MIN_HEIGHT) != 0 || ! style.isMaxHeightNone()) {
+                return false;
+            }
+            if (ancestor.getParent() == null) {
+                return true;
+            }
+            if (! isInFlow(ancestor)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static int layoutInFlow(final LayoutContext c, final BlockBox block) {
+        final int oldHeight = block.getHeight();
+        final Layer containingLayer = block.getContainingLayer();
+
+        // Collapsed margins are worked out by the parent and previous siblings
+        // so keep those of the block and its descendants
+        final Map<BlockBox, int[]> margins = new IdentityHashMap<BlockBox, int[]>();
+        saveMargins(c, block, margins);
+
+        block.reset(c);
+        restoreMargins(c, margins);
+
+        c.pushLayer(containingLayer);
+        c.pushBFC(new BlockFormattingContext(block, c));
+        block.initContainingLayer(c);
+        block.calcCanvasLocation();
+        block.layout(c);
+        c.popBFC();
+        c.popLayer();
+
+        return block.getHeight() - oldHeight;
+    }
+
+    private static void saveMargins(final LayoutContext c, final BlockBox block, final Map<BlockBox, int[]> margins) {
+        if (block.isTopMarginCalculated() || block.isBottomMarginCalculated()) {
+            margins.put(block, new int[] {
+                    block.isTopMarginCalculated() ? (int)block.getMargin(c).top() : Integer.MIN_VALUE,
+                    block.isBottomMarginCalculated() ? (int)block.getMargin(c).bottom() : Integer.MIN_VALUE });
+        }
+        if (block.getChildrenContentType() == BlockBox.CONTENT_BLOCK) {
+            for (int i = 0; i < block.getChildCount(); i++) {
+                saveMargins(c, (BlockBox)block.getChild(i), margins);
+            }
+        }
+    }
+
+    private static void restoreMargins(final LayoutContext c, final Map<BlockBox, int[]> margins) {
+        for (final Map.Entry<BlockBox, int[]> entry : margins.entrySet()) {
+            final BlockBox block = entry.getKey();
+            final int[] margin = entry.getValue();
+            if (margin[0] != Integer.MIN_VALUE) {
+                block.setMarginTop(c, margin[0]);
+                block.setTopMarginCalculated(true);
+            }
+            if (margin[1] != Integer.MIN_VALUE) {
+                block.setMarginBottom(c, margin[1]);
+                block.setBottomMarginCalculated(true);
+            }
+        }
+    }
+
+    private static void moveFollowingContent(final BlockBox block, final int delta) {
+        Box current = block;
+        while (current.getParent() != null) {
+            final BlockBox parent = (BlockBox)current.getParent();
+            boolean following = false;
+            for (int i = 0; i < parent.getChildCount(); i++) {
+                final Box child = parent.getChild(i);
+                if (following) {
+                    child.setY(child.getY() + delta);
+                    child.calcCanvasLocation();
+                    child.calcChildLocations();
+                } else if (child == current) {
+                    following = true;
+                }
+            }
+
+            if (! parent.isAutoHeight()) {
+                break;
+            }
+            parent.setHeight(parent.getHeight() + delta);
+            current = parent;
+        }
+    }
+
+    private static void positionLayers(final LayoutContext c, final Layer layer) {
+        layer.positionChildren(c);
+        for (final Layer child : layer.getChildren()) {
+            positionLayers(c, child);
+        }
+    }
+
+    /**
+     * Whether positioning the child layers again (see
+     * {@link Layer#positionChildren(LayoutContext)}) leaves any already
+     * positioned layer where it is.  Relatively positioned inline content
+     * is moved by its offset every time.
+     */
+    private static boolean isRepositionable(final Layer layer) {
+        for (final Layer child : layer.getChildren()) {
+            final Box master = child.getMaster();
+            if (master.getStyle().isRelative() &&
+                    (child.isInline() || ((BlockBox)master).isInline())) {
+                return false;
+            }
+            if (! isRepositionable(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether a block formatting context which lays out <code>block</code>
+     * or the content moved after it contains floats.  Floats in other block
+     * formatting contexts are moved along with their root.
+     */
+    private static boolean isNearFloats(final BlockBox block) {
+        // Floats inside a block laid out again end up in a formatting context
+        // of its own even if the block does not establish one
+        if (! block.getStyle().establishesBFC() && hasFloats(block)) {
+            return true;
+        }
+        boolean stopped = false;
+        for (Box parent = block.getParent(); parent instanceof BlockBox; parent = parent.getParent()) {
+            final BlockBox ancestor = (BlockBox)parent;
+            if (! ancestor.isAutoHeight()) {
+                stopped = true;
+            }
+            if (ancestor.getPersistentBFC() != null) {
+                if (hasFloats(ancestor)) {
+                    return true;
+                }
+                if (stopped) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasFloats(final BlockBox block) {
+        return block.getPersistentBFC() != null &&
+                block.getPersistentBFC().getFloatManager().hasFloats();
+    }
+
+    /**
+     * Whether any layer below <code>layer</code> belongs to a box inside
+     * <code>block</code>. Laying out such a block again would move its
+     * layers behind their siblings.
+     */
+    private static boolean containsLayersOf(final Layer layer, final BlockBox block) {
+        for (final Layer child : layer.getChildren()) {
+            if (child != block.getLayer()) {
+                for (Box box = child.getMaster(); box != null; box = getLayoutParent(box)) {
+                    if (box == block) {
+                        return true;
+                    }
+                }
+                if (containsLayersOf(child, block)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
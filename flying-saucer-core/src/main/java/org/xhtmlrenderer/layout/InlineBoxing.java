@@ -748,6 +748,8 @@ public class InlineBoxing {
                                  final int maxAvailableWidth, final List<FloatLayoutResult> pendingFloats,
                                  final boolean hasFirstLinePCs, final List<Layer> pendingInlineLayers,
                                  final MarkerData markerData, final int contentStart, final boolean alwaysBreak) {
+        c.checkCancelled();
+
         current.setContentStart(contentStart);
         current.prunePendingInlineBoxes();
 
@@ -35,9 +35,7 @@ import java.util.Set;
 import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.constants.PageElementPosition;
 import org.xhtmlrenderer.css.newmatch.PageInfo;
-import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.css.style.CssContext;
-import org.xhtmlrenderer.css.style.EmptyStyle;
 import org.xhtmlrenderer.newtable.CollapsedBorderValue;
 import org.xhtmlrenderer.newtable.TableBox;
 import org.xhtmlrenderer.newtable.TableCellBox;
@@ -45,9 +43,11 @@ import org.xhtmlrenderer.render.BlockBox;
 import org.xhtmlrenderer.render.Box;
 import org.xhtmlrenderer.render.BoxDimensions;
 import org.xhtmlrenderer.render.InlineLayoutBox;
+import org.xhtmlrenderer.render.LineBox;
 import org.xhtmlrenderer.render.PageBox;
 import org.xhtmlrenderer.render.RenderingContext;
 import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.util.Configuration;
 
 /**
  * All positioned content as well as content with an overflow value other
@@ -86,6 +86,8 @@ public class Layer {
     
     private Map<String, List<BlockBox>> _runningBlocks;
     
+    private Map<Object, TableBox> _marginAreaTables;
+    
     private Box _selectionStart;
     private Box _selectionEnd;
     
@@ -97,6 +99,14 @@ public class Layer {
     
     private float _opacity;
     
+    private PagedBoxIndex _pagedBoxIndex;
+
+    /**
+     * Set on the root layer while completed pages are painted before the
+     * rest of the document has been laid out
+     */
+    private boolean _layoutInProgress;
+    
     public Layer(final Box master) {
         this(null, master);
         setStackingContext(true);
@@ -329,7 +339,7 @@ public class Layer {
             final List<Box> blocks = new ArrayList<>();
             final List<Box> lines = new ArrayList<>();
     
-            final BoxCollector collector = new BoxCollector();
+            final BoxCollector collector = new BoxCollector(getPagedBoxIndex(c));
             collector.collect(c, c.getOutputDevice().getClip(), this, blocks, lines, rangeLists);
     
             if (! isInline()) {
@@ -339,7 +349,12 @@ public class Layer {
                 }
             }
             
-            if (isRootLayer() || isStackingContext()) {
+            // On screen, positioned content is only moved into place once
+            // layout has finished
+            final boolean paintLayers = (isRootLayer() || isStackingContext()) &&
+                    (c.isPrint() || ! isLayoutInProgress(c));
+
+            if (paintLayers) {
                 paintLayers(c, getSortedLayers(NEGATIVE));
             }
             
@@ -352,7 +367,7 @@ public class Layer {
             paintReplacedElements(c, blocks, rangeLists);
             paintSelection(c, lines); // XXX do only when there is a selection
     
-            if (isRootLayer() || isStackingContext()) {
+            if (paintLayers) {
                 paintLayers(c, collectLayers(AUTO));
                 // TODO z-index: 0 layers should be painted atomically
                 paintLayers(c, getSortedLayers(ZERO));
@@ -361,7 +376,104 @@ public class Layer {
         }
     }
     
-    private List<BlockBox> getFloats() {
+    /**
+     * When printing, the layer is painted once per page against a clip
+     * covering only that page. The index built here on the first page lets
+     * the box collector skip the content on the other pages. Fixed layers
+     * move from page to page, so they aren't indexed. Like the painting info
+     * it is built from, the index is built again once the layer has been
+     * laid out again.
+     */
+    private PagedBoxIndex getPagedBoxIndex(final RenderingContext c) {
+        if (isInline() || getMaster().getStyle().isFixed()) {
+            return null;
+        }
+        if (isLayoutInProgress(c)) {
+            // Either the range of laid out children set by the
+            // CompletedPageTracker or LayoutProgressTracker or nothing, an
+            // index built now would be out of date once layout continues
+            return _pagedBoxIndex;
+        }
+        if (! c.isPrint() || ! Configuration.isTrue("xr.renderer.paged-box-index", true)) {
+            return null;
+        }
+        final PaintingInfo info = getMaster().calcPaintingInfo(c, true);
+        if (_pagedBoxIndex == null || ! _pagedBoxIndex.isBuiltFrom(info)) {
+            _pagedBoxIndex = new PagedBoxIndex(c, this, info);
+        }
+        return _pagedBoxIndex;
+    }
+
+    /**
+     * Prepares the layer and the layers it contains for painting several
+     * pages at the same time: painting info and the paged box index are
+     * calculated now instead of while the first page is painted.
+     *
+     * @return the boxes which still change while they are painted (fixed
+     * boxes, paginated tables repeating their header or footer and lines
+     * containing page counters). Pages showing one of them must not be
+     * painted at the same time.
+     */
+    public List<Box> prepareConcurrentPainting(final RenderingContext c) {
+        final List<Box> result = new ArrayList<>();
+        prepareLayersForConcurrentPainting(c, result);
+        collectChangedWhilePainted(getMaster(), result);
+        return result;
+    }
+
+    private void prepareLayersForConcurrentPainting(final RenderingContext c, final List<Box> result) {
+        if (getMaster().getStyle().isFixed()) {
+            result.add(getMaster());
+        } else {
+            getMaster().calcPaintingInfo(c, true);
+            getPagedBoxIndex(c);
+        }
+
+        for (final Layer child : getChildren()) {
+            child.prepareLayersForConcurrentPainting(c, result);
+        }
+    }
+
+    private static void collectChangedWhilePainted(final Box box, final List<Box> result) {
+        if (box instanceof TableBox && ((TableBox) box).hasContentLimitContainer()) {
+            result.add(box);
+            return;
+        }
+
+        if (box instanceof LineBox) {
+            final LineBox line = (LineBox) box;
+            if (line.isContainsDynamicFunction()) {
+                result.add(line);
+            }
+            for (final Box content : line.getNonFlowContent()) {
+                collectChangedWhilePainted(content, result);
+            }
+        } else if (box instanceof InlineLayoutBox) {
+            for (final Object child : ((InlineLayoutBox) box).getInlineChildren()) {
+                if (child instanceof Box) {
+                    collectChangedWhilePainted((Box) child, result);
+                }
+            }
+        }
+
+        for (int i = 0; i < box.getChildCount(); i++) {
+            collectChangedWhilePainted(box.getChild(i), result);
+        }
+    }
+
+    void setPagedBoxIndex(final PagedBoxIndex pagedBoxIndex) {
+        _pagedBoxIndex = pagedBoxIndex;
+    }
+
+    void setLayoutInProgress(final boolean layoutInProgress) {
+        _layoutInProgress = layoutInProgress;
+    }
+
+    private static boolean isLayoutInProgress(final RenderingContext c) {
+        return c.getRootLayer() != null && c.getRootLayer()._layoutInProgress;
+    }
+    
+    List<BlockBox> getFloats() {
         return _floats == null ? Collections.<BlockBox>emptyList() : _floats;
     }
     
@@ -809,8 +921,7 @@ public class Layer {
         final PageInfo pageInfo = c.getCss().getPageStyle(pageName, pseudoPage);
         result.setPageInfo(pageInfo);
         
-        final CalculatedStyle cs = new EmptyStyle().deriveStyle(pageInfo.getPageStyle());
-        result.setStyle(cs);
+        result.setStyle(pageInfo.getCalculatedPageStyle());
         result.setOuterPageWidth(result.getWidth(c));
         
         return result;
@@ -1074,12 +1185,36 @@ public class Layer {
         }
     }
     
+    /**
+     * Whether a margin area for <code>key</code> has already been laid out.
+     * Its table may be <code>null</code> if the margin area is empty.
+     */
+    public boolean hasMarginAreaTable(final Object key) {
+        return _marginAreaTables != null && _marginAreaTables.containsKey(key);
+    }
+
+    /**
+     * Returns a laid out margin area table which can be shown on more than
+     * one page, see {@link PageBox}. Only used on the root document layer.
+     */
+    public TableBox getMarginAreaTable(final Object key) {
+        return _marginAreaTables == null ? null : _marginAreaTables.get(key);
+    }
+    
+    public void putMarginAreaTable(final Object key, final TableBox table) {
+        if (_marginAreaTables == null) {
+            _marginAreaTables = new HashMap<Object, TableBox>();
+        }
+        _marginAreaTables.put(key, table);
+    }
+    
     public void addPageSequence(final BlockBox start) {
         if (_pageSequences == null) {
             _pageSequences = new HashSet<>();
         }
         
         _pageSequences.add(start);
+        _sortedPageSequences = null;
     }
     
     private List<BlockBox> getSortedPageSequences() {
@@ -27,6 +27,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 import org.xhtmlrenderer.context.ContentFunctionFactory;
 import org.xhtmlrenderer.context.StyleReference;
@@ -82,6 +83,13 @@ public class LayoutContext implements CssContext {
     private boolean _mayCheckKeepTogether = true;
     
     private BreakAtLineContext _breakAtLineContext;
+
+    private Box _pageClearRelayoutBox;
+
+    private CompletedPageTracker _completedPageTracker;
+    private LayoutProgressTracker _layoutProgressTracker;
+
+    private volatile boolean _cancelled;
     
     // TODO: Should this go in shared context as break iterators may be slow to
     // start up?
@@ -325,6 +333,80 @@ public class LayoutContext implements CssContext {
         return _sharedContext;
     }
 
+    /**
+     * Sets a listener which is given pages as soon as layout has moved past
+     * them, so they can be written out before the whole document has been
+     * laid out. Only content in the normal flow of the root layer is
+     * followed; pages are held back while the content on them may still be
+     * laid out again (e.g. to avoid a page break or inside a paginated
+     * table). The margin boxes of completed pages are laid out before the
+     * listener is called. Content which is only positioned once the root
+     * layer is finished (absolute and fixed boxes of the root layer) isn't
+     * painted on completed pages.
+     *
+     * @param listener the listener, or <code>null</code> to stop following
+     * the layout
+     */
+    public void setCompletedPageListener(final CompletedPageListener listener) {
+        if (_completedPageTracker != null) {
+            _completedPageTracker.finish(this);
+        }
+        _completedPageTracker = listener == null ? null : new CompletedPageTracker(listener);
+    }
+
+    CompletedPageTracker getCompletedPageTracker() {
+        return _completedPageTracker;
+    }
+
+    /**
+     * Sets a listener which is told how far layout has got on screen, so
+     * the content laid out so far can be painted before the whole document
+     * has been laid out. Layout only reports its progress at the end of a
+     * block whose ancestors are all in the normal flow of the root layer,
+     * and isn't followed inside tables, floats or positioned blocks.
+     *
+     * @param listener the listener, or <code>null</code> to stop following
+     * the layout
+     */
+    public void setLayoutProgressListener(final LayoutProgressListener listener) {
+        if (_layoutProgressTracker != null) {
+            _layoutProgressTracker.finish();
+        }
+        _layoutProgressTracker = listener == null ? null : new LayoutProgressTracker(listener);
+    }
+
+    LayoutProgressTracker getLayoutProgressTracker() {
+        return _layoutProgressTracker;
+    }
+
+    /**
+     * Stops a layout running with this context on another thread. It ends
+     * with a {@link CancellationException} as soon as the current block or
+     * line has been laid out, leaving the box tree partly laid out.
+     */
+    public void cancel() {
+        _cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return _cancelled;
+    }
+
+    void checkCancelled() {
+        if (_cancelled) {
+            throw new CancellationException("Layout cancelled");
+        }
+    }
+
+    /**
+     * Lets a context which lays out part of an existing document (margin
+     * boxes, or boxes laid out again by {@link IncrementalLayout}) look up
+     * the document's root layer.
+     */
+    void setRootLayer(final Layer rootLayer) {
+        _rootLayer = rootLayer;
+    }
+
     public int getExtraSpaceBottom() {
         return _extraSpaceBottom;
     }
@@ -522,6 +604,19 @@ public class LayoutContext implements CssContext {
         _mayCheckKeepTogether = mayKeepTogether;
     }
 
+    /**
+     * Whether <code>box</code> will be laid out again at the top of the next
+     * page if it asks for that with {@link org.xhtmlrenderer.render.BlockBox#setNeedPageClear(boolean)}.
+     * If so, it need not finish its current layout once it has done so.
+     */
+    public boolean isPageClearRelayout(final Box box) {
+        return _pageClearRelayoutBox == box;
+    }
+
+    public void setPageClearRelayoutBox(final Box box) {
+        _pageClearRelayoutBox = box;
+    }
+
     public BreakAtLineContext getBreakAtLineContext() {
         return _breakAtLineContext;
     }
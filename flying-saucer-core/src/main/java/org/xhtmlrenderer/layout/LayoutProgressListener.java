@@ -0,0 +1,44 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.layout;
+
+/**
+ * Follows the layout of a document on screen, see
+ * {@link LayoutContext#setLayoutProgressListener(LayoutProgressListener)}.
+ * Both methods are called by the thread laying out the document.
+ */
+public interface LayoutProgressListener {
+    /**
+     * Called each time layout reaches a point where the content laid out so
+     * far could be painted. Should return quickly, preparing the box tree
+     * for painting only happens if this returns <code>true</code>.
+     */
+    public boolean isUpdateWanted();
+
+    /**
+     * Called after {@link #isUpdateWanted()} returned <code>true</code>. The
+     * content above <code>bottom</code> won't change anymore, except for
+     * positioned content which is laid out at the end. While the call lasts,
+     * the blocks still being laid out extend down to <code>bottom</code> and
+     * the root layer only paints the content which has been laid out, so it
+     * may be painted by another thread as long as the call waits for it.
+     *
+     * @param bottom the bottom of the content laid out so far
+     */
+    public void contentLaidOut(LayoutContext c, int bottom);
+}
@@ -0,0 +1,190 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.layout;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.newtable.TableBox;
+import org.xhtmlrenderer.newtable.TableCellBox;
+import org.xhtmlrenderer.newtable.TableRowBox;
+import org.xhtmlrenderer.newtable.TableSectionBox;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.Box;
+
+/**
+ * Follows {@link BlockBoxing} through a document laid out on screen and tells
+ * a {@link LayoutProgressListener} how far layout has got.
+ * <p/>
+ * Like the {@link CompletedPageTracker}, every block laying out block content
+ * pushes a {@link Frame} and the frames of the blocks around the current
+ * position form a chain starting at the root box. On screen nothing is laid
+ * out again, so the children laid out so far are final as soon as all blocks
+ * in the chain are in the normal flow: their position doesn't depend on what
+ * follows them. Inside tables, floats and positioned blocks nothing is
+ * reported until layout has left them.
+ */
+class LayoutProgressTracker {
+    private final LayoutProgressListener _listener;
+    private final List<Frame> _frames = new ArrayList<Frame>();
+
+    // The children whose painting info has been calculated for the listener
+    private final List<Box> _measured = new ArrayList<Box>();
+
+    LayoutProgressTracker(final LayoutProgressListener listener) {
+        _listener = listener;
+    }
+
+    Frame push(final BlockBox block, final List<Box> children) {
+        final Frame result = new Frame(block, children);
+        _frames.add(result);
+        return result;
+    }
+
+    void pop(final Frame frame) {
+        if (_frames.isEmpty() || _frames.remove(_frames.size() - 1) != frame) {
+            throw new IllegalStateException("Frames must be popped in the reverse order of being pushed");
+        }
+    }
+
+    /**
+     * Called by {@link BlockBoxing} once the current child of
+     * <code>frame</code> has been laid out.
+     */
+    void childCompleted(final LayoutContext c, final Frame frame) {
+        if (! _listener.isUpdateWanted() || ! isChainInFlow()) {
+            return;
+        }
+
+        final int depth = _frames.size();
+        final int bottom = getFlowBottom(frame.getChild(frame._current));
+        final PagedBoxIndex index = new PagedBoxIndex();
+        final int[] heights = new int[depth];
+        final PaintingInfo[] infos = new PaintingInfo[depth];
+
+        for (int i = 0; i < depth; i++) {
+            final Frame f = _frames.get(i);
+            final BlockBox block = f._block;
+
+            index.setChildRange(block, 0, f._current);
+            final int last = i == depth - 1 ? f._current : f._current - 1;
+            for (; f._measured <= last; f._measured++) {
+                final Box child = f.getChild(f._measured);
+                child.calcPaintingInfo(c, true);
+                _measured.add(child);
+            }
+
+            // The blocks still being laid out end below the content laid out
+            // so far for now
+            heights[i] = block.getHeight();
+            infos[i] = block.getPaintingInfo();
+            final int height = bottom - block.getAbsY() +
+                    block.getMarginBorderPadding(c, CalculatedStyle.BOTTOM);
+            if (height > block.getHeight()) {
+                block.setHeight(height);
+            }
+
+            final PaintingInfo info = new PaintingInfo();
+            info.setOuterMarginCorner(new Dimension(
+                    block.getAbsX() + block.getWidth(), block.getAbsY() + block.getHeight()));
+            info.setAggregateBounds(new Rectangle(
+                    Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, Integer.MAX_VALUE, Integer.MAX_VALUE));
+            block.setPaintingInfo(info);
+        }
+
+        final Layer rootLayer = _frames.get(0)._block.getLayer();
+        rootLayer.setPagedBoxIndex(index);
+        rootLayer.setLayoutInProgress(true);
+        try {
+            _listener.contentLaidOut(c, bottom);
+        } finally {
+            rootLayer.setLayoutInProgress(false);
+            rootLayer.setPagedBoxIndex(null);
+            for (int i = 0; i < depth; i++) {
+                final BlockBox block = _frames.get(i)._block;
+                block.setHeight(heights[i]);
+                block.setPaintingInfo(infos[i]);
+            }
+        }
+    }
+
+    /**
+     * Drops the painting info calculated for the listener. Positioned
+     * content is only moved into place at the end of the layout.
+     */
+    void finish() {
+        for (final Box box : _measured) {
+            IncrementalLayout.clearPaintingInfo(box);
+        }
+        _measured.clear();
+    }
+
+    private boolean isChainInFlow() {
+        final int depth = _frames.size();
+        if (depth == 0 || ! _frames.get(0)._block.isRoot()) {
+            return false;
+        }
+        for (int i = 1; i < depth; i++) {
+            final Frame parent = _frames.get(i - 1);
+            final BlockBox block = _frames.get(i)._block;
+            if (block != parent.getChild(parent._current) || ! isInFlow(block)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isInFlow(final BlockBox block) {
+        if (block instanceof TableBox || block instanceof TableSectionBox ||
+                block instanceof TableRowBox || block instanceof TableCellBox) {
+            return false;
+        }
+        final CalculatedStyle style = block.getStyle();
+        return ! style.isFloated() && ! style.isPositioned() && block.getLayer() == null;
+    }
+
+    private static int getFlowBottom(final Box box) {
+        final Dimension offset = box.getRelativeOffset();
+        final int top = offset == null ? box.getAbsY() : box.getAbsY() - offset.height;
+        return top + box.getHeight();
+    }
+
+    static class Frame {
+        private final BlockBox _block;
+        private final List<Box> _children;
+
+        private int _current;
+        private int _measured;
+
+        Frame(final BlockBox block, final List<Box> children) {
+            _block = block;
+            _children = children;
+        }
+
+        void setCurrent(final int current) {
+            _current = current;
+        }
+
+        BlockBox getChild(final int i) {
+            return (BlockBox) _children.get(i);
+        }
+    }
+}
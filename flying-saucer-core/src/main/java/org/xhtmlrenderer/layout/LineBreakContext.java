@@ -20,6 +20,8 @@
 package org.xhtmlrenderer.layout;
 
 import org.jsoup.nodes.Node;
+import org.xhtmlrenderer.render.FSFont;
+import org.xhtmlrenderer.render.FSTextWidths;
 
 /**
  * A bean which serves as a way for the layout code to pass information to the
@@ -36,6 +38,9 @@ public class LineBreakContext {
     private int _width;
     private boolean _endsOnNL;
     private Node _textNode;
+
+    private FSFont _textWidthsFont;
+    private FSTextWidths _textWidths;
     
     public int getLast() {
         return _master.length();
@@ -61,6 +66,8 @@ public class LineBreakContext {
     
     public void setMaster(final String master) {
         _master = master;
+        _textWidthsFont = null;
+        _textWidths = null;
     }
     
     public int getStart() {
@@ -123,6 +130,19 @@ public class LineBreakContext {
         _endsOnNL = b;
     }
 
+    /**
+     * The widths of the master text measured in <code>font</code>, if they
+     * have been measured since the master text was last set. Otherwise null.
+     */
+    public FSTextWidths getTextWidths(final FSFont font) {
+        return font == _textWidthsFont ? _textWidths : null;
+    }
+
+    public void setTextWidths(final FSFont font, final FSTextWidths textWidths) {
+        _textWidthsFont = font;
+        _textWidths = textWidths;
+    }
+
     public Node getTextNode() {
         return this._textNode;
     }
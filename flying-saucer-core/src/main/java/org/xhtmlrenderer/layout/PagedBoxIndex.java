@@ -0,0 +1,240 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.layout;
+
+import java.awt.Rectangle;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.xhtmlrenderer.css.style.CssContext;
+import org.xhtmlrenderer.newtable.TableBox;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.LineBox;
+
+/**
+ * Indexes the children of the boxes in a layer by the vertical extent of
+ * everything below them that {@link BoxCollector} could collect. When a layer
+ * is painted one page at a time, this lets the collector skip straight to the
+ * children overlapping the current page instead of testing every child
+ * against the clip.
+ * <p/>
+ * Only containers with at least {@link #MIN_CHILDREN} children are indexed.
+ * Content which moves between pages (repeated table headers and footers,
+ * lines containing page counters) is treated as if it appeared on every page.
+ * The index must be rebuilt if the layer is laid out again, see
+ * {@link #isBuiltFrom(PaintingInfo)}.
+ * <p/>
+ * While the document is still being laid out, an index can instead hold
+ * fixed ranges of children set by {@link CompletedPageTracker}, which limit
+ * the collector to the content laid out so far.
+ */
+class PagedBoxIndex {
+    private static final int MIN_CHILDREN = 8;
+
+    private final Map<Box, Children> _children = new IdentityHashMap<Box, Children>();
+    private final Map<Box, int[]> _fixedRanges = new IdentityHashMap<Box, int[]>();
+
+    private final PaintingInfo _masterInfo;
+
+    /**
+     * Indexes the content of <code>layer</code>. <code>masterInfo</code> is
+     * the painting info of the master box of the layer, which has to be
+     * calculated before.
+     */
+    PagedBoxIndex(final CssContext c, final Layer layer, final PaintingInfo masterInfo) {
+        _masterInfo = masterInfo;
+        measure(c, layer, layer.getMaster(), new Extent());
+    }
+
+    /**
+     * Creates an index holding only the ranges set with
+     * {@link #setChildRange(Box, int, int)}.
+     */
+    PagedBoxIndex() {
+        _masterInfo = null;
+    }
+
+    /**
+     * Whether the index was built from the painting info
+     * <code>masterInfo</code>. Laying out boxes again drops their painting
+     * info, so a layer whose master has different painting info now has been
+     * laid out again since and the index is out of date.
+     */
+    boolean isBuiltFrom(final PaintingInfo masterInfo) {
+        return _masterInfo == masterInfo;
+    }
+
+    void setChildRange(final Box container, final int first, final int last) {
+        _fixedRanges.put(container, new int[] { first, last });
+    }
+
+    /**
+     * Returns the range of children of <code>container</code> which may
+     * have content between <code>top</code> (inclusive) and
+     * <code>bottom</code> (exclusive). Children outside the range have
+     * nothing in it. If <code>container</code> isn't indexed, all children
+     * are returned.
+     *
+     * @return the first and last child index, the range is empty if the first
+     * index is greater than the last
+     */
+    int[] getChildRange(final Box container, final int top, final int bottom) {
+        final int[] fixed = _fixedRanges.get(container);
+        if (fixed != null) {
+            return fixed;
+        }
+        final Children children = _children.get(container);
+        if (children == null) {
+            return new int[] { 0, container.getChildCount() - 1 };
+        }
+        return children.getRange(top, bottom);
+    }
+
+    private void measure(final CssContext c, final Layer layer, final Box container, final Extent result) {
+        if (layer != container.getContainingLayer()) {
+            return;
+        }
+
+        if (container instanceof LineBox) {
+            if (((LineBox)container).isContainsDynamicFunction()) {
+                result.setUnbounded();
+            } else {
+                addBounds(c, container, result);
+            }
+            return;
+        }
+
+        if (container.getStyle().isTable() && ((TableBox)container).hasContentLimitContainer()) {
+            result.setUnbounded();
+            return;
+        }
+
+        addBounds(c, container, result);
+
+        if (container.getLayer() == null || container == layer.getMaster()) {
+            final int count = container.getChildCount();
+            if (count < MIN_CHILDREN) {
+                for (int i = 0; i < count; i++) {
+                    measure(c, layer, container.getChild(i), result);
+                }
+            } else {
+                final int[] tops = new int[count];
+                final int[] bottoms = new int[count];
+                for (int i = 0; i < count; i++) {
+                    final Extent child = new Extent();
+                    measure(c, layer, container.getChild(i), child);
+                    tops[i] = child.top;
+                    bottoms[i] = child.bottom;
+                    result.add(child);
+                }
+                _children.put(container, new Children(tops, bottoms));
+            }
+        }
+    }
+
+    private void addBounds(final CssContext c, final Box box, final Extent result) {
+        result.add(box.getPaintingClipEdge(c));
+        final PaintingInfo info = box.getPaintingInfo();
+        if (info != null) {
+            result.add(info.getAggregateBounds());
+        }
+    }
+
+    private static class Extent {
+        private int top = Integer.MAX_VALUE;
+        private int bottom = Integer.MIN_VALUE;
+
+        void add(final Rectangle bounds) {
+            if (bounds.height >= 0) {
+                top = Math.min(top, bounds.y);
+                bottom = Math.max(bottom, bounds.y + bounds.height);
+            }
+        }
+
+        void add(final Extent extent) {
+            top = Math.min(top, extent.top);
+            bottom = Math.max(bottom, extent.bottom);
+        }
+
+        void setUnbounded() {
+            top = Integer.MIN_VALUE;
+            bottom = Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Child extents don't have to be sorted or disjoint (floats, relative
+     * positioning and negative margins all get in the way), so instead of
+     * the extents themselves we keep the largest bottom seen up to each
+     * child and the smallest top seen from each child on. Both never
+     * decrease, so each end of the range is a binary search. For content in
+     * normal flow the range is exactly the children on the page.
+     */
+    private static class Children {
+        private final int[] _maxBottoms;
+        private final int[] _minTops;
+
+        Children(final int[] tops, final int[] bottoms) {
+            final int count = tops.length;
+
+            _maxBottoms = new int[count];
+            int max = Integer.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                max = Math.max(max, bottoms[i]);
+                _maxBottoms[i] = max;
+            }
+
+            _minTops = new int[count];
+            int min = Integer.MAX_VALUE;
+            for (int i = count - 1; i >= 0; i--) {
+                min = Math.min(min, tops[i]);
+                _minTops[i] = min;
+            }
+        }
+
+        int[] getRange(final int top, final int bottom) {
+            // First child whose content may end below top
+            int low = 0;
+            int high = _maxBottoms.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (_maxBottoms[mid] > top) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            final int first = low;
+
+            // Last child whose content may start above bottom
+            low = -1;
+            high = _minTops.length - 1;
+            while (low < high) {
+                final int mid = (low + high + 1) >> 1;
+                if (_minTops[mid] < bottom) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            final int last = low;
+
+            return new int[] { first, last };
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.layout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.xhtmlrenderer.util.Configuration;
+
+/**
+ * Works out the style of every element in a document before any boxes are
+ * built, splitting the tree into subtrees which are styled on the threads of
+ * a shared fork/join pool. The styles end up in the {@link SharedContext}'s
+ * style map, where {@link BoxBuilder} finds them.
+ * <p/>
+ * An element's style is always worked out after its parent's, by the same
+ * task or the one which forked it. Pseudo-element styles and restyles for
+ * dynamic pseudo-classes are still worked out as they are needed.
+ */
+class ParallelStyleResolver {
+    /**
+     * A subtree is only handed to another task while the current thread has
+     * fewer tasks than this waiting to be stolen.
+     */
+    private static final int MAX_SURPLUS_TASKS = 3;
+
+    private static ForkJoinPool _pool;
+
+    private ParallelStyleResolver() {
+    }
+
+    static void resolveStyles(final SharedContext c, final Document document) {
+        // creates the style map, before any worker uses it
+        c.getStyle(document);
+        getPool().invoke(new SubtreeTask(c, document));
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (_pool == null) {
+            int threads = Configuration.valueAsInt("xr.css.parallel-styles.threads", 0);
+            if (threads <= 0) {
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+            _pool = new ForkJoinPool(threads);
+        }
+        return _pool;
+    }
+
+    /**
+     * Styles the descendants of an element whose own style is already known.
+     */
+    private static class SubtreeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final SharedContext _sharedContext;
+        private final Element _element;
+
+        SubtreeTask(final SharedContext sharedContext, final Element element) {
+            _sharedContext = sharedContext;
+            _element = element;
+        }
+
+        protected void compute() {
+            final List<SubtreeTask> forked = new ArrayList<SubtreeTask>();
+            resolveChildren(_element, forked);
+            for (int i = forked.size() - 1; i >= 0; i--) {
+                forked.get(i).join();
+            }
+        }
+
+        private void resolveChildren(final Element parent, final List<SubtreeTask> forked) {
+            for (final Node node : parent.childNodes()) {
+                if (! (node instanceof Element)) {
+                    continue;
+                }
+                final Element child = (Element) node;
+                _sharedContext.getStyle(child);
+                if (child.childNodeSize() == 0) {
+                    continue;
+                }
+                if (getSurplusQueuedTaskCount() < MAX_SURPLUS_TASKS) {
+                    final SubtreeTask task = new SubtreeTask(_sharedContext, child);
+                    task.fork();
+                    forked.add(task);
+                } else {
+                    resolveChildren(child, forked);
+                }
+            }
+        }
+    }
+}
@@ -56,6 +56,8 @@ import org.xhtmlrenderer.render.FSFontMetrics;
 import org.xhtmlrenderer.render.RenderingContext;
 import org.xhtmlrenderer.simple.extend.FormSubmissionListener;
 import org.xhtmlrenderer.swing.Java2DTextRenderer;
+import org.xhtmlrenderer.util.ConcurrentIdentityMap;
+import org.xhtmlrenderer.util.Configuration;
 
 /**
  * The SharedContext is that which is kept between successive
@@ -80,8 +82,18 @@ public class SharedContext {
     private Locale localeTextBreaker = Locale.US;
     private final Locale localeErrorMessages = Locale.US;
 
-    public static final ThreadLocal<ResourceBundle> ERRS = new ThreadLocal<>();    
-    public static final ThreadLocal<Set<String>> USER_ERRORS = new ThreadLocal<>();
+    // Initialized on first use for threads other than the one creating the
+    // context, e.g. when a pooled renderer is handed to another thread
+    public static final ThreadLocal<ResourceBundle> ERRS = new ThreadLocal<ResourceBundle>() {
+        protected ResourceBundle initialValue() {
+            return ResourceBundle.getBundle("languages.ErrorMessages", Locale.US);
+        }
+    };
+    public static final ThreadLocal<Set<String>> USER_ERRORS = new ThreadLocal<Set<String>>() {
+        protected Set<String> initialValue() {
+            return new LinkedHashSet<String>();
+        }
+    };
     
     /*
      * used to adjust fonts, ems, points, into screen resolution
@@ -108,7 +120,9 @@ public class SharedContext {
 
     private int dotsPerPixel = 1;
 
-    private Map<Element, CalculatedStyle> styleMap;
+    private ConcurrentIdentityMap<Element, CalculatedStyle> styleMap;
+
+    private boolean parallelStyles = Configuration.isTrue("xr.css.parallel-styles", false);
 
     private ReplacedElementFactory replacedElementFactory;
     private Rectangle temp_canvas;
@@ -539,6 +553,29 @@ public class SharedContext {
         return print;
     }
 
+    /**
+     * Whether the styles of all elements are worked out on several threads
+     * before the boxes of a document are built, rather than one at a time as
+     * the boxes need them.
+     */
+    public boolean isParallelStyles() {
+        return parallelStyles;
+    }
+
+    public void setParallelStyles(final boolean parallelStyles) {
+        this.parallelStyles = parallelStyles;
+    }
+
+    /**
+     * Works out the style of every element in the document up front, using
+     * several threads. Does nothing unless {@link #isParallelStyles()}.
+     */
+    public void resolveStyles(final Document document) {
+        if (parallelStyles) {
+            ParallelStyleResolver.resolveStyles(this, document);
+        }
+    }
+
     public void setPrint(final boolean print) {
         this.print = print;
         if (print) {
@@ -604,7 +641,7 @@ public class SharedContext {
 
     public CalculatedStyle getStyle(final Element e, final boolean restyle) {
         if (styleMap == null) {
-            styleMap = new HashMap<Element, CalculatedStyle>(1024, 0.75f);
+            styleMap = new ConcurrentIdentityMap<Element, CalculatedStyle>(1024);
         }
 
         CalculatedStyle result = null;
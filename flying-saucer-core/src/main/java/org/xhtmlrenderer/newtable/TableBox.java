@@ -68,6 +68,8 @@ public class TableBox extends BlockBox {
     private int _extraSpaceTop;
     private int _extraSpaceBottom;
 
+    private boolean _contentSkipped;
+
     public boolean isMarginAreaRoot() {
         return _marginAreaRoot;
     }
@@ -281,7 +283,7 @@ public class TableBox extends BlockBox {
         super.layout(c);
 
         if (running) {
-            if (isNeedAnalyzePageBreaks()) {
+            if (isNeedAnalyzePageBreaks() && ! _contentSkipped) {
                 analyzePageBreaks(c);
 
                 setExtraSpaceTop(0);
@@ -297,19 +299,25 @@ public class TableBox extends BlockBox {
 
     protected void layoutChildren(final LayoutContext c, final int contentStart) {
         ensureChildren(c);
+        _contentSkipped = false;
         // If we have a running footer, we need its dimensions right away
         final boolean running = c.isPrint() && getStyle().isPaginateTable();
         if (running) {
+            final boolean pageClearRelayout = c.isPageClearRelayout(this);
             final int headerHeight = layoutRunningHeader(c);
             final int footerHeight = layoutRunningFooter(c);
             final int spacingHeight = footerHeight == 0 ? 0 : getStyle().getBorderVSpacing(c);
 
             final PageBox first = c.getRootLayer().getFirstPage(c, this);
             if (getAbsY() + getTy() + headerHeight + footerHeight + spacingHeight > first.getBottom()) {
-                // XXX Performance problem here.  This forces the table
-                // to move to the next page (which we want), but the initial
-                // table layout run still completes (which we don't)
+                // This forces the table to move to the next page.  Don't
+                // bother laying out the rest of it here if it is going to be
+                // laid out again there anyway.
                 setNeedPageClear(true);
+                if (pageClearRelayout) {
+                    _contentSkipped = true;
+                    return;
+                }
             }
         }
         super.layoutChildren(c, contentStart);
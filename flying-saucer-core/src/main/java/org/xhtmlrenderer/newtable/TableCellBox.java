@@ -394,6 +394,11 @@ public class TableCellBox extends BlockBox {
         return true;
     } 
 
+    protected boolean isSiblingsSkipWhenCollapsingMargins() {
+        // The siblings of cells are cells as well
+        return true;
+    }
+
     // The following rules apply for resolving conflicts and figuring out which
     // border
     // to use.
@@ -468,6 +468,11 @@ public class TableRowBox extends BlockBox {
     protected boolean isSkipWhenCollapsingMargins() {
         return true;
     }
+
+    protected boolean isSiblingsSkipWhenCollapsingMargins() {
+        // The siblings of rows are rows as well
+        return true;
+    }
     
     public void paintBorder(final RenderingContext c) {
         // rows never have borders
@@ -233,6 +233,11 @@ public class TableSectionBox extends BlockBox {
     protected boolean isSkipWhenCollapsingMargins() {
         return true;
     }
+
+    protected boolean isSiblingsSkipWhenCollapsingMargins() {
+        // The siblings of row groups are row groups as well
+        return true;
+    }
     
     public void paintBorder(final RenderingContext c) {
         // row groups never have borders
@@ -569,6 +569,51 @@ public class BlockBox extends Box implements InlinePaintable {
         }
     }
 
+    /**
+     * Returns whether the replaced element shown by this box no longer has
+     * the size this box was laid out with (e.g. an image which was still
+     * loading when the document was laid out).
+     */
+    public boolean isReplacedElementResized(final CssContext c) {
+        if (! isReplaced()) {
+            return false;
+        }
+        final ReplacedElement re = getReplacedElement();
+        final Rectangle contentBounds = getContentAreaEdge(getAbsX(), getAbsY(), c);
+        return re.getIntrinsicWidth() != contentBounds.width ||
+                re.getIntrinsicHeight() != contentBounds.height;
+    }
+
+    /**
+     * Lays out the children of this box again without touching the box
+     * itself.  Only valid for a box which has already been laid out, whose
+     * size does not depend on its content and which establishes a block
+     * formatting context.
+     */
+    public void layoutChildrenAgain(final LayoutContext c) {
+        final int height = getHeight();
+        final int contentHeight = getContentAreaEdge(0, 0, c).height;
+
+        resetChildren(c);
+        if (getChildrenContentType() == BlockBox.CONTENT_INLINE) {
+            removeAllChildren();
+        }
+
+        c.pushLayer(getLayer() != null ? getLayer() : getContainingLayer());
+        c.pushBFC(new BlockFormattingContext(this, c));
+
+        setHeight(0);
+        c.translate(getTx(), getTy());
+        layoutChildren(c, 0);
+        c.translate(-getTx(), -getTy());
+
+        setChildrenHeight(getHeight() + height - contentHeight);
+        setHeight(height);
+
+        c.popBFC();
+        c.popLayer();
+    }
+
     private int calcPinnedContentWidth(final CssContext c) {
         if (! getStyle().isIdent(CSSName.LEFT, IdentValue.AUTO) &&
                 ! getStyle().isIdent(CSSName.RIGHT, IdentValue.AUTO)) {
@@ -1089,6 +1134,15 @@ public class BlockBox extends Box implements InlinePaintable {
         return false;
     }
 
+    /**
+     * Whether the siblings of this box are all skipped when collapsing
+     * margins too, so there is no need to look for one to pass the bottom
+     * margin on to.
+     */
+    protected boolean isSiblingsSkipWhenCollapsingMargins() {
+        return false;
+    }
+
     protected boolean isMayCollapseMarginsWithChildren() {
         return (! isRoot()) && getStyle().isMayCollapseMarginsWithChildren();
     }
@@ -1144,6 +1198,9 @@ public class BlockBox extends Box implements InlinePaintable {
     }
 
     private BlockBox getNextCollapsableSibling(final MarginCollapseResult collapsedMargin) {
+        if (isSiblingsSkipWhenCollapsingMargins()) {
+            return null;
+        }
         BlockBox next = (BlockBox) getNextSibling();
         while (next != null) {
             if (next instanceof AnonymousBlockBox) {
@@ -102,6 +102,8 @@ public abstract class Box implements Styleable {
 
     private boolean _anonymous;
 
+    private boolean _needsRelayout;
+
     protected Box() {
     }
 
@@ -525,6 +527,7 @@ public abstract class Box implements Styleable {
         setContentWidth(0);
 
         _workingMargin = null;
+        clearNeedsRelayout();
 
         final String anchorName = c.getNamespaceHandler().getAnchorName(getElement());
         if (anchorName != null) {
@@ -540,6 +543,23 @@ public abstract class Box implements Styleable {
         }
     }
 
+    /**
+     * Marks this box as having to be laid out again, e.g. because content
+     * it shows has changed size.  See
+     * {@link org.xhtmlrenderer.layout.IncrementalLayout}.
+     */
+    public void markNeedsRelayout() {
+        _needsRelayout = true;
+    }
+
+    public boolean isNeedsRelayout() {
+        return _needsRelayout;
+    }
+
+    public void clearNeedsRelayout() {
+        _needsRelayout = false;
+    }
+
     public void detach(final LayoutContext c) {
         reset(c);
 
@@ -979,7 +999,7 @@ public abstract class Box implements Styleable {
         return _paintingInfo;
     }
 
-    private void setPaintingInfo(final PaintingInfo paintingInfo) {
+    public void setPaintingInfo(final PaintingInfo paintingInfo) {
         _paintingInfo = paintingInfo;
     }
 
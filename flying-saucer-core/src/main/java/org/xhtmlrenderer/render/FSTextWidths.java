@@ -0,0 +1,33 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.render;
+
+/**
+ * The cumulative advance widths of a run of text, as measured in one pass by
+ * {@link org.xhtmlrenderer.extend.TextRenderer#getTextWidths}. The width of
+ * any part of the run can be looked up without measuring it again.
+ */
+public interface FSTextWidths {
+    /**
+     * The width of the characters from <code>start</code> (inclusive) to
+     * <code>end</code> (exclusive), rounded the way
+     * {@link org.xhtmlrenderer.extend.TextRenderer#getWidth} rounds. The
+     * result never decreases as <code>end</code> increases.
+     */
+    public int getWidth(int start, int end);
+}
@@ -33,6 +33,7 @@ import org.xhtmlrenderer.css.constants.CSSName;
 import org.xhtmlrenderer.css.constants.CSSPrimitiveUnit;
 import org.xhtmlrenderer.css.constants.IdentValue;
 import org.xhtmlrenderer.css.constants.MarginBoxName;
+import org.xhtmlrenderer.css.extend.ContentFunction;
 import org.xhtmlrenderer.css.newmatch.PageInfo;
 import org.xhtmlrenderer.css.parser.FSFunction;
 import org.xhtmlrenderer.css.parser.PropertyValue;
@@ -325,7 +326,11 @@ public class PageBox {
                         c, this, additionalClearance, mode);
                 
                 c.getOutputDevice().translate(p.x, p.y);
-                table.getLayer().paint(c);
+                // The table may be shared with other pages, its page counters
+                // are updated while it is painted
+                synchronized (table) {
+                    table.getLayer().paint(c);
+                }
                 c.getOutputDevice().translate(-p.x, -p.y);
             }
         }
@@ -399,12 +404,32 @@ public class PageBox {
         }
     }
 
+    /**
+     * Lays out the margin boxes of this page. A margin area whose content
+     * doesn't depend on the page (text and page counters, which are only
+     * evaluated when painting, but not running elements) is laid out once and
+     * its table shared by all pages with the same page style.
+     */
     private void layoutMarginAreas(final LayoutContext c) {
+        final Layer documentLayer = c.getRootDocumentLayer();
         final RectPropertySet margin = getMargin(c);
         for (int i = 0; i < MARGIN_AREA_DEFS.length; i++) {
             final MarginArea area = MARGIN_AREA_DEFS[i];
             
             final Dimension dim = area.getLayoutDimension(c, this, margin);
+            
+            MarginAreaKey key = null;
+            if (documentLayer != null && isPageInvariant(c, area.getMarginBoxNames())) {
+                key = new MarginAreaKey(_pageInfo, i, dim);
+                if (documentLayer.hasMarginAreaTable(key)) {
+                    final TableBox cached = documentLayer.getMarginAreaTable(key);
+                    if (cached != null) {
+                        _marginAreas[i] = new MarginAreaContainer(area, cached);
+                    }
+                    continue;
+                }
+            }
+            
             final TableBox table = BoxBuilder.createMarginTable(
                     c, _pageInfo, 
                     area.getMarginBoxNames(),
@@ -427,7 +452,48 @@ public class PageBox {
                 }
                 _marginAreas[i] = new MarginAreaContainer(area, table);
             }
+            if (key != null) {
+                documentLayer.putMarginAreaTable(key, table);
+            }
+        }
+    }
+    
+    private boolean isPageInvariant(final LayoutContext c, final MarginBoxName[] names) {
+        for (final MarginBoxName name : names) {
+            final List<PropertyDeclaration> props = _pageInfo.getMarginBoxes().get(name);
+            if (props == null) {
+                continue;
+            }
+            for (final PropertyDeclaration decl : props) {
+                if (decl.getCSSName() == CSSName.CONTENT && 
+                        ! isPageInvariant(c, decl.getValue())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    private boolean isPageInvariant(final LayoutContext c, final PropertyValue content) {
+        final List<?> values = content.getValues();
+        if (values == null) {
+            return true;
+        }
+        for (final Object value : values) {
+            final PropertyValue pv = (PropertyValue)value;
+            if (pv.getPropertyValueType() == PropertyValueImp.VALUE_TYPE_FUNCTION) {
+                final FSFunction func = pv.getFunction();
+                if (BoxBuilder.isElementFunction(func)) {
+                    return false;
+                }
+                final ContentFunction contentFunction = 
+                    c.getContentFunctionFactory().lookupFunction(c, func);
+                if (contentFunction != null && contentFunction.isStatic()) {
+                    return false;
+                }
+            }
         }
+        return true;
     }
     
     public boolean isLeftPage() {
@@ -477,6 +543,33 @@ public class PageBox {
         }
     }
     
+    private static final class MarginAreaKey {
+        private final PageInfo _pageInfo;
+        private final int _area;
+        private final int _width;
+        private final int _height;
+        
+        public MarginAreaKey(final PageInfo pageInfo, final int area, final Dimension dim) {
+            _pageInfo = pageInfo;
+            _area = area;
+            _width = (int)dim.getWidth();
+            _height = (int)dim.getHeight();
+        }
+        
+        public int hashCode() {
+            return ((System.identityHashCode(_pageInfo) * 31 + _area) * 31 + _width) * 31 + _height;
+        }
+        
+        public boolean equals(final Object obj) {
+            if (! (obj instanceof MarginAreaKey)) {
+                return false;
+            }
+            final MarginAreaKey other = (MarginAreaKey)obj;
+            return _pageInfo == other._pageInfo && _area == other._area &&
+                    _width == other._width && _height == other._height;
+        }
+    }
+    
     private static class MarginAreaContainer {
         private final MarginArea _area;
         private final TableBox _table;
@@ -25,10 +25,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import org.jsoup.nodes.Attribute;
 import org.jsoup.nodes.DataNode;
@@ -40,6 +42,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xhtmlrenderer.css.extend.StylesheetFactory;
 import org.xhtmlrenderer.css.extend.TreeResolver;
+import org.xhtmlrenderer.css.sheet.PropertyDeclaration;
 import org.xhtmlrenderer.css.sheet.Stylesheet;
 import org.xhtmlrenderer.css.sheet.StylesheetInfo;
 import org.xhtmlrenderer.extend.NamespaceHandler;
@@ -55,7 +58,46 @@ public class HtmlNamespaceHandler implements NamespaceHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HtmlNamespaceHandler.class);
 
+    /**
+     * The default stylesheets parsed so far, by resource name. A parsed
+     * stylesheet is not changed afterwards, so every handler in the JVM
+     * shares one copy.
+     */
+    private static final ConcurrentHashMap<String, Stylesheet> DEFAULT_STYLESHEETS = new ConcurrentHashMap<>();
+
+    /**
+     * The most parsed presentational attribute declarations kept by a handler
+     */
+    private static final int MAX_NON_CSS_DECLARATIONS = 1024;
+
+    private static final String[] TABLE_ATTRIBUTES = { "width", "border", "cellspacing", "bgcolor", "background", "align" };
+    private static final String[] ROW_ATTRIBUTES = { "align", "valign" };
+    private static final String[] CELL_ATTRIBUTES = { "width", "height", "align", "valign", "bgcolor", "background" };
+    private static final String[] CELL_TABLE_ATTRIBUTES = { "cellpadding", "border" };
+    private static final String[] ALIGN_ATTRIBUTES = { "align" };
+
     private Map<String, String> _metadata = null;
+
+    /**
+     * The parsed declarations for presentational attributes, by element name
+     * and the attribute values {@link #getNonCssStyling(Element)} reads. Not
+     * used by subclasses overriding that method.
+     */
+    private final ConcurrentHashMap<String, List<PropertyDeclaration>> _nonCssDeclarations;
+
+    public HtmlNamespaceHandler()
+    {
+        _nonCssDeclarations = overridesNonCssStyling() ? null : new ConcurrentHashMap<String, List<PropertyDeclaration>>();
+    }
+
+    private boolean overridesNonCssStyling()
+    {
+        try {
+            return getClass().getMethod("getNonCssStyling", Element.class).getDeclaringClass() != HtmlNamespaceHandler.class;
+        } catch (final NoSuchMethodException e) {
+            return true;
+        }
+    }
 	
 	@Override
 	public String getAttributeValue(final Element e, final String attrName) 
@@ -273,6 +315,91 @@ public class HtmlNamespaceHandler implements NamespaceHandler {
     	}
     }
     
+    @Override
+    public List<PropertyDeclaration> getNonCssStyleDeclarations(final Element e, final StylesheetFactory factory)
+    {
+        List<PropertyDeclaration> result;
+        if (_nonCssDeclarations == null) {
+            result = parseNonCssStyling(e, factory);
+        } else {
+            final String key = getNonCssStylingKey(e);
+            if (key == null) {
+                return null;
+            }
+            result = _nonCssDeclarations.get(key);
+            if (result == null) {
+                result = parseNonCssStyling(e, factory);
+                if (_nonCssDeclarations.size() >= MAX_NON_CSS_DECLARATIONS) {
+                    _nonCssDeclarations.clear();
+                }
+                _nonCssDeclarations.put(key, result);
+            }
+        }
+        return result.isEmpty() ? null : result;
+    }
+
+    private List<PropertyDeclaration> parseNonCssStyling(final Element e, final StylesheetFactory factory)
+    {
+        final String style = getNonCssStyling(e);
+        if (style == null || style.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(
+                factory.parseStyleDeclaration(StylesheetInfo.CSSOrigin.AUTHOR, style).getPropertyDeclarations());
+    }
+
+    /**
+     * Returns a key made of the element name and each attribute
+     * {@link #getNonCssStyling(Element)} reads for it, including those of the
+     * enclosing table for a cell. Null if none of them are set, in which case
+     * there is no styling.
+     */
+    private String getNonCssStylingKey(final Element e)
+    {
+        final String name = e.nodeName().toLowerCase(Locale.US);
+        final StringBuilder key = new StringBuilder(name);
+        final int length = key.length();
+        switch (name)
+        {
+        case "table":
+            appendAttributes(key, e, TABLE_ATTRIBUTES);
+            break;
+        case "tr":
+            appendAttributes(key, e, ROW_ATTRIBUTES);
+            break;
+        case "td": /* Fall through */
+        case "th":
+            appendAttributes(key, e, CELL_ATTRIBUTES);
+            final Element table = findTable(e);
+            if (table != null) {
+                key.append('|');
+                appendAttributes(key, table, CELL_TABLE_ATTRIBUTES);
+                if (key.charAt(key.length() - 1) == '|') {
+                    key.setLength(key.length() - 1);
+                }
+            }
+            break;
+        case "img": /* Fall through */
+        case "p": /* Fall through */
+        case "div":
+            appendAttributes(key, e, ALIGN_ATTRIBUTES);
+            break;
+        default:
+            return null;
+        }
+        return key.length() == length ? null : key.toString();
+    }
+
+    private void appendAttributes(final StringBuilder key, final Element e, final String[] attrNames)
+    {
+        for (int i = 0; i < attrNames.length; i++) {
+            final String s = getAttribute(e, attrNames[i]);
+            if (s != null) {
+                key.append('\u0000').append((char) ('a' + i)).append(s);
+            }
+        }
+    }
+
     private String applyTextAlign(final Element e) 
     {
     	final StringBuilder style = new StringBuilder();
@@ -711,15 +838,23 @@ public class HtmlNamespaceHandler implements NamespaceHandler {
 		info.setMedia("all");
 		info.setType("text/css");
 
+		final String defaultStyleSheet = Configuration.valueFor("xr.css.user-agent-default-css") + "XhtmlNamespaceHandler.css";
+		final Stylesheet cached = DEFAULT_STYLESHEETS.get(defaultStyleSheet);
+		if (cached != null) {
+			info.setStylesheet(cached);
+			return info;
+		}
+
 		InputStream is = null;
 		try {
-			is = getDefaultStylesheetStream();
+			is = getDefaultStylesheetStream(defaultStyleSheet);
 
 			if (is == null)
 				return null;
 			
 			final Stylesheet sheet = factory.parse(new InputStreamReader(is), info);
-			info.setStylesheet(sheet);
+			final Stylesheet existing = DEFAULT_STYLESHEETS.putIfAbsent(defaultStyleSheet, sheet);
+			info.setStylesheet(existing == null ? sheet : existing);
 
 		} catch (final Exception e) {
 			LOGGER.error("Could not parse default stylesheet", e);
@@ -736,10 +871,9 @@ public class HtmlNamespaceHandler implements NamespaceHandler {
 		return info;
     }
 
-    private InputStream getDefaultStylesheetStream() 
+    private InputStream getDefaultStylesheetStream(final String defaultStyleSheet) 
     {
         InputStream stream = null;
-        final String defaultStyleSheet = Configuration.valueFor("xr.css.user-agent-default-css") + "XhtmlNamespaceHandler.css";
         stream = this.getClass().getResourceAsStream(defaultStyleSheet);
 
         if (stream == null)
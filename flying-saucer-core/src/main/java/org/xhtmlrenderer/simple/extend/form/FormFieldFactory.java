@@ -28,6 +28,15 @@ public class FormFieldFactory {
     private FormFieldFactory() {
     }
 
+    /**
+     * Whether {@link #create(XhtmlForm, LayoutContext, BlockBox)} makes a
+     * form field, and so a Swing component, of <code>e</code>.
+     */
+    public static boolean isFormField(final Element e) {
+        final String name = e.nodeName();
+        return name.equals("input") || name.equals("textarea") || name.equals("select");
+    }
+
     public static FormField create(final XhtmlForm form, final LayoutContext context, final BlockBox box) {
         String typeKey = null;
 
@@ -9,6 +9,7 @@ public class ContentStore
 {
 	private final Document doc;
 	private final Map<String, String> store = new HashMap<>();
+	private final Map<String, byte[]> binaryStore = new HashMap<>();
 	
 	public ContentStore(final Document doc)
 	{
@@ -30,6 +31,21 @@ public class ContentStore
 		return store.get(uri);
 	}
 
+	public void addBinaryContent(final String uri, final byte[] content)
+	{
+		binaryStore.put(uri, content);
+	}
+
+	public boolean isBinaryAvailable(final String uri)
+	{
+		return binaryStore.containsKey(uri);
+	}
+
+	public byte[] getBinaryContent(final String uri)
+	{
+		return binaryStore.get(uri);
+	}
+
 	public Document getDocument()
 	{
 		return doc;
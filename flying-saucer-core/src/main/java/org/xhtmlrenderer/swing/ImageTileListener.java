@@ -0,0 +1,35 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.swing;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Receives the tiles rendered by
+ * {@link Java2DRenderer#renderTiles(int, int, double, ImageTileListener)}.
+ */
+public interface ImageTileListener {
+    /**
+     * Called for each tile once it has been painted. The tile's top left
+     * corner is at (<code>column * tileWidth</code>,
+     * <code>row * tileHeight</code>) of the complete image. The renderer
+     * doesn't keep a reference to the tile.
+     */
+    public void tileRendered(BufferedImage tile, int row, int column) throws IOException;
+}
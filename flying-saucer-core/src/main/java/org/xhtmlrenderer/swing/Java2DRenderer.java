@@ -28,7 +28,6 @@ import java.util.Map;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.xhtmlrenderer.extend.NamespaceHandler;
-import org.xhtmlrenderer.extend.ReplacedElementFactory;
 import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.extend.UserInterface;
 import org.xhtmlrenderer.layout.BoxBuilder;
@@ -39,7 +38,9 @@ import org.xhtmlrenderer.render.Box;
 import org.xhtmlrenderer.render.RenderingContext;
 import org.xhtmlrenderer.render.ViewportBox;
 import org.xhtmlrenderer.simple.HtmlNamespaceHandler;
+import org.xhtmlrenderer.simple.extend.NoReplacedElementFactory;
 import org.xhtmlrenderer.util.Configuration;
+import org.xhtmlrenderer.util.FSImageWriter;
 import org.xhtmlrenderer.util.ImageUtil;
 
 /**
@@ -66,6 +67,10 @@ import org.xhtmlrenderer.util.ImageUtil;
  * {@link #getImage()}, or else override the {@link #createBufferedImage(int, int)} to have full control over
  * the image we render to.</p>
  *
+ * <p>Tall documents can be rendered in pieces instead of a single image: {@link #getImage(Rectangle, double)}
+ * renders one region and {@link #renderTiles(int, int, double, ImageTileListener)} renders a grid of tiles, one at a
+ * time. Both can scale the output, e.g. for thumbnails.</p>
+ *
  * <p>Not thread-safe.</p>
  *
  * @see ITextRenderer
@@ -277,24 +282,12 @@ public class Java2DRenderer {
 	 */
 	public BufferedImage getImage() {
 		if (!rendered) {
-            setDocument((doc == null ? loadDocument(sourceDocument) : doc), sourceDocumentBase, new HtmlNamespaceHandler());
-
-			layout(this.width);
+			ensureLayout();
 
-			height = this.height == -1 ? root.getHeight() : this.height;
+			height = getDocumentHeight();
 			outputImage = createBufferedImage(this.width, height);
-			outputDevice = new Java2DOutputDevice(outputImage);
-			final Graphics2D newG = (Graphics2D) outputImage.getGraphics();
-			if ( renderingHints != null ) {
-				newG.addRenderingHints(renderingHints);
-			}
-
-			final RenderingContext rc = sharedContext.newRenderingContextInstance();
-			rc.setFontContext(new Java2DFontContext(newG));
-			rc.setOutputDevice(outputDevice);
-			sharedContext.getTextRenderer().setup(rc.getFontContext());
-
-			root.getLayer().paint(rc);
+			final Graphics2D newG = outputImage.createGraphics();
+			paint(newG);
 
 			newG.dispose();
 			rendered = true;
@@ -303,6 +296,110 @@ public class Java2DRenderer {
 		return outputImage;
 	}
 
+	/**
+	 * Renders part of the document into a new image, only the content within the region is painted. The image is
+	 * <code>region.width * scale</code> by <code>region.height * scale</code> pixels.
+	 *
+	 * @param region The part of the document to render, in document pixels.
+	 * @param scale Output pixels per document pixel; 1 renders at full size, 0.1 renders a thumbnail.
+	 * @return The region rendered as a BufferedImage.
+	 */
+	public BufferedImage getImage(final Rectangle region, final double scale) {
+		ensureLayout();
+
+		final BufferedImage result = createBufferedImage(
+				(int) Math.ceil(region.width * scale), (int) Math.ceil(region.height * scale));
+		paintTile(result, region.x * scale, region.y * scale, scale);
+		return result;
+	}
+
+	/**
+	 * Renders the document as a grid of tiles, handing each tile to the listener as soon as it is painted, left to
+	 * right and top to bottom. Only one tile is held at a time, so this works for documents which are too tall to fit
+	 * into a single image. Tiles in the last column and row are smaller if the image size isn't a multiple of the tile
+	 * size.
+	 *
+	 * @param tileWidth Width of the tiles, in output pixels.
+	 * @param tileHeight Height of the tiles, in output pixels.
+	 * @param scale Output pixels per document pixel.
+	 * @param listener Receives the tiles.
+	 * @throws IOException If the listener throws it; remaining tiles aren't rendered.
+	 */
+	public void renderTiles(final int tileWidth, final int tileHeight, final double scale,
+			final ImageTileListener listener) throws IOException {
+		if (tileWidth <= 0 || tileHeight <= 0) {
+			throw new IllegalArgumentException("Tile size must be positive");
+		}
+		ensureLayout();
+
+		final int imageWidth = (int) Math.ceil(this.width * scale);
+		final int imageHeight = (int) Math.ceil(getDocumentHeight() * scale);
+		for (int row = 0; row * tileHeight < imageHeight; row++) {
+			final int y = row * tileHeight;
+			for (int column = 0; column * tileWidth < imageWidth; column++) {
+				final int x = column * tileWidth;
+				final BufferedImage tile = createBufferedImage(
+						Math.min(tileWidth, imageWidth - x), Math.min(tileHeight, imageHeight - y));
+				paintTile(tile, x, y, scale);
+				listener.tileRendered(tile, row, column);
+			}
+		}
+	}
+
+	/**
+	 * Renders the document as a grid of tiles (see {@link #renderTiles(int, int, double, ImageTileListener)}) and
+	 * writes each one to a file named <code>row_column.format</code> in the given directory.
+	 */
+	public void writeTiles(final int tileWidth, final int tileHeight, final double scale,
+			final FSImageWriter writer, final File directory) throws IOException {
+		renderTiles(tileWidth, tileHeight, scale, new ImageTileListener() {
+			public void tileRendered(final BufferedImage tile, final int row, final int column) throws IOException {
+				writer.write(tile, new File(directory, row + "_" + column + "." + writer.getImageFormat()).getPath());
+			}
+		});
+	}
+
+	private void ensureLayout() {
+		if (root == null) {
+			setDocument((doc == null ? loadDocument(sourceDocument) : doc), sourceDocumentBase, new HtmlNamespaceHandler());
+
+			layout(this.width);
+		}
+	}
+
+	private int getDocumentHeight() {
+		return this.height == NO_HEIGHT ? root.getHeight() : this.height;
+	}
+
+	/**
+	 * Paints the part of the document which ends up at (x, y) of the scaled output into the image. The clip limits
+	 * painting to the boxes intersecting the image.
+	 */
+	private void paintTile(final BufferedImage image, final double x, final double y, final double scale) {
+		final Graphics2D g = image.createGraphics();
+		try {
+			g.clipRect(0, 0, image.getWidth(), image.getHeight());
+			g.translate(-x, -y);
+			g.scale(scale, scale);
+			paint(g);
+		} finally {
+			g.dispose();
+		}
+	}
+
+	private void paint(final Graphics2D g) {
+		if ( renderingHints != null ) {
+			g.addRenderingHints(renderingHints);
+		}
+
+		final RenderingContext rc = sharedContext.newRenderingContextInstance();
+		rc.setFontContext(new Java2DFontContext(g));
+		rc.setOutputDevice(new Java2DOutputDevice(g));
+		sharedContext.getTextRenderer().setup(rc.getFontContext());
+
+		root.getLayer().paint(rc);
+	}
+
 	/**
 	 * Returns a BufferedImage using the specified width and height. By default this returns an image compatible
 	 * with the screen (if not in "headless" mode) using the BufferedImage type specified in
@@ -372,9 +469,9 @@ public class Java2DRenderer {
 		final AWTFontResolver fontResolver = new AWTFontResolver();
 		sharedContext.setFontResolver(fontResolver);
 
-		// TODO
-		//ReplacedElementFactory replacedElementFactory = new SwingReplacedElementFactory();
-		sharedContext.setReplacedElementFactory(null);
+		// The Swing replaced element factory is part of flying-saucer-swing.
+		// Set a factory on getSharedContext() to render images or form controls.
+		sharedContext.setReplacedElementFactory(new NoReplacedElementFactory());
 
 		sharedContext.setTextRenderer(new Java2DTextRenderer());
 		sharedContext.setDPI(72 * this.dotsPerPoint);
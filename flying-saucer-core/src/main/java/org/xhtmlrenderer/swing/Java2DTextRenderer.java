@@ -34,6 +34,7 @@ import org.xhtmlrenderer.extend.OutputDevice;
 import org.xhtmlrenderer.extend.TextRenderer;
 import org.xhtmlrenderer.render.FSFont;
 import org.xhtmlrenderer.render.FSFontMetrics;
+import org.xhtmlrenderer.render.FSTextWidths;
 import org.xhtmlrenderer.render.JustificationInfo;
 import org.xhtmlrenderer.render.LineMetricsAdapter;
 import org.xhtmlrenderer.util.Configuration;
@@ -209,6 +210,47 @@ public class Java2DTextRenderer implements TextRenderer {
         return width;
     }
 
+    public FSTextWidths getTextWidths(final FontContext fc, final FSFont font, final String string) {
+        Object fracHint = null;
+        final Graphics2D graphics = ((Java2DFontContext)fc).getGraphics();
+        fracHint = graphics.getRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS);
+        graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, fractionalFontMetricsHint);
+        final Font awtFont = ((AWTFSFont)font).getAWTFont();
+        final GlyphVector vector = awtFont.createGlyphVector(graphics.getFontRenderContext(), string);
+        final float[] positions;
+        if (vector.getNumGlyphs() == string.length()) {
+            final float[] glyphPositions = vector.getGlyphPositions(0, string.length() + 1, null);
+            positions = new float[string.length() + 1];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = glyphPositions[i * 2];
+            }
+        } else {
+            // Glyphs don't map one to one onto characters, measure each prefix
+            positions = null;
+        }
+        graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, fracHint);
+
+        if (positions == null) {
+            return new FSTextWidths() {
+                public int getWidth(final int start, final int end) {
+                    return Java2DTextRenderer.this.getWidth(fc, font, string.substring(start, end));
+                }
+            };
+        }
+
+        final boolean fractional = fractionalFontMetricsHint == RenderingHints.VALUE_FRACTIONALMETRICS_ON;
+        return new FSTextWidths() {
+            public int getWidth(final int start, final int end) {
+                final float width = positions[end] - positions[start];
+                if (fractional) {
+                    return Math.round(width);
+                } else {
+                    return (int)Math.ceil(width);
+                }
+            }
+        };
+    }
+
     public float getFontScale() {
         return this.scale;
     }
@@ -21,6 +21,7 @@ package org.xhtmlrenderer.swing;
 
 import java.awt.Image;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -32,6 +33,7 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import javax.imageio.ImageIO;
 
+import org.jsoup.nodes.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xhtmlrenderer.event.DocumentListener;
@@ -39,6 +41,7 @@ import org.xhtmlrenderer.extend.UserAgentCallback;
 import org.xhtmlrenderer.resource.CSSResource;
 import org.xhtmlrenderer.resource.ImageResource;
 import org.xhtmlrenderer.resource.HTMLResource;
+import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.ImageUtil;
 
 /**
@@ -73,6 +76,9 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
     private final int _imageCacheCapacity;
     private String _baseURL;
 
+    private boolean _prefetch = Configuration.isTrue("xr.load.prefetch", false);
+    private ContentStore _prefetched;
+
     /**
      * Creates a new instance of NaiveUserAgent with a max image cache of 16 images.
      */
@@ -113,6 +119,48 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
         _imageCache.clear();
     }
 
+    /**
+     * Whether {@link #prefetchResources(Document)} fetches the resources of a
+     * document before they are asked for.
+     */
+    public boolean isPrefetch() {
+        return _prefetch;
+    }
+
+    public void setPrefetch(final boolean prefetch) {
+        _prefetch = prefetch;
+    }
+
+    /**
+     * Fetches the stylesheets, images and fonts the document refers to,
+     * several at a time, if prefetching is on. Until the next document, those
+     * resources are then read from memory instead of their URIs. Resources
+     * already in the image or stylesheet cache are not fetched.
+     */
+    public void prefetchResources(final Document doc) {
+        _prefetched = null;
+        if (_prefetch) {
+            final ContentStore store = new ContentStore(doc);
+            new ResourcePrefetcher(this, store).prefetch();
+            _prefetched = store;
+        }
+    }
+
+    /**
+     * Drops the resources fetched by {@link #prefetchResources(Document)}.
+     */
+    public void clearPrefetchedResources() {
+        _prefetched = null;
+    }
+
+    /**
+     * Whether a resolved URI need not be prefetched, because what was read
+     * from it is cached.
+     */
+    protected boolean isResourceCached(final String uri) {
+        return _imageCache.containsKey(uri) || _styleCache.containsStylesheet(uri);
+    }
+
     /**
      * Gets a Reader for the resource identified
      *
@@ -123,8 +171,14 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
     protected InputStream resolveAndOpenStream(String uri) {
         java.io.InputStream is = null;
         uri = resolveURI(uri);
+        if (_prefetched != null && uri != null) {
+            final byte[] data = _prefetched.getBinaryContent(uri);
+            if (data != null) {
+                return new ByteArrayInputStream(data);
+            }
+        }
         try {
-            is = new URL(uri).openStream();
+            is = openStream(uri);
         } catch (final java.net.MalformedURLException e) {
             LOGGER.error("bad URL given: " + uri, e);
         } catch (final java.io.FileNotFoundException e) {
@@ -135,6 +189,20 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
         return is;
     }
 
+    /**
+     * Opens a stream on a resolved URI. This is where all resources are read,
+     * including those fetched by {@link #prefetchResources(Document)}, so
+     * override it to read resources some other way. When prefetching it is
+     * called from several threads at once.
+     *
+     * @param uri an absolute URI
+     * @return a stream to read the resource from
+     * @throws IOException if the resource can't be read
+     */
+    protected InputStream openStream(final String uri) throws IOException {
+        return new URL(uri).openStream();
+    }
+
     /**
      * Retrieves the CSS located at the given URI.  It's assumed the URI does point to a CSS file--the URI will
      * be accessed (using java.io or java.net), opened, read and then passed into the CSS parser.
@@ -344,4 +412,12 @@ public class NaiveUserAgent implements UserAgentCallback, DocumentListener {
 	public StylesheetCache getStylesheetCache() {
 		return _styleCache;
 	}
+
+	/**
+	 * Replaces this user agent's stylesheet cache, e.g. with one shared by
+	 * several user agents.
+	 */
+	public void setStylesheetCache(final StylesheetCache styleCache) {
+		_styleCache = styleCache;
+	}
 }
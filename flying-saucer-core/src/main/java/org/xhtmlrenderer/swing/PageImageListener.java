@@ -0,0 +1,34 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.swing;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Receives the page images rendered by
+ * {@link PagedImageRenderer#renderPages(double, java.util.concurrent.ForkJoinPool, PageImageListener)}.
+ * Pages are rendered on the pool's threads, so the listener is called from
+ * several threads at once and in no particular order.
+ */
+public interface PageImageListener {
+    /**
+     * @param pageNo the number of the page, starting at 0
+     */
+    public void pageRendered(BufferedImage image, int pageNo) throws IOException;
+}
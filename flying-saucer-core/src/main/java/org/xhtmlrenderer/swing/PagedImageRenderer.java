@@ -0,0 +1,388 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.swing;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.extend.UserAgentCallback;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.layout.BoxBuilder;
+import org.xhtmlrenderer.layout.Layer;
+import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.PageBox;
+import org.xhtmlrenderer.render.RenderingContext;
+import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.simple.HtmlNamespaceHandler;
+import org.xhtmlrenderer.util.Configuration;
+import org.xhtmlrenderer.util.FSImageWriter;
+import org.xhtmlrenderer.util.ImageUtil;
+
+/**
+ * Renders the pages of a paged (print media) document as images, one image
+ * per page. The document is laid out once, the pages can then be painted in
+ * parallel:
+ *
+ * <pre>
+ * PagedImageRenderer renderer = new PagedImageRenderer(doc, baseUrl);
+ * renderer.layout();
+ * renderer.writePages(2.0, new ForkJoinPool(), new FSImageWriter(), dir);
+ * </pre>
+ *
+ * <p>Each page gets its own image, {@link RenderingContext} and
+ * {@link Java2DOutputDevice}, the box tree is shared. A few kinds of content
+ * are changed while they are painted: fixed boxes, paginated tables
+ * repeating their header or footer and lines containing page counters in the
+ * normal flow. Pages showing such content are painted one at a time, so a
+ * document with fixed content isn't painted in parallel at all.</p>
+ *
+ * <p>As with {@link Java2DRenderer}, the {@link SharedContext} can be tuned
+ * with {@link #getSharedContext()} before {@link #layout()} is called.</p>
+ *
+ * <p>Not thread-safe, except for the painting done by
+ * {@link #renderPages(double, ForkJoinPool, PageImageListener)}.</p>
+ */
+public class PagedImageRenderer {
+    private static final int DEFAULT_DOTS_PER_POINT = 1;
+    private static final int DEFAULT_DOTS_PER_PIXEL = 1;
+    private static final int DEFAULT_IMAGE_TYPE = BufferedImage.TYPE_INT_RGB;
+
+    private final SharedContext _sharedContext;
+    private final Java2DOutputDevice _layoutDevice;
+
+    private Document _doc;
+    private final String _sourceDocument;
+    private final String _baseUrl;
+
+    private BlockBox _root;
+    private List<Box> _changedWhilePainted;
+    private final Lock _changedWhilePaintedLock = new ReentrantLock();
+
+    private int _bufferedImageType = DEFAULT_IMAGE_TYPE;
+    private Map<RenderingHints.Key, Object> _renderingHints;
+
+    /**
+     * @param doc The document to be rendered.
+     * @param baseUrl The base url for the document, against which relative paths are resolved.
+     */
+    public PagedImageRenderer(final Document doc, final String baseUrl) {
+        this(doc, null, baseUrl);
+    }
+
+    /**
+     * @param url The location of the document to be rendered, also used as the base url.
+     */
+    public PagedImageRenderer(final String url) {
+        this(null, url, url);
+    }
+
+    public PagedImageRenderer(final File file) throws IOException {
+        this(file.toURI().toURL().toExternalForm());
+    }
+
+    private PagedImageRenderer(final Document doc, final String url, final String baseUrl) {
+        _doc = doc;
+        _sourceDocument = url;
+        _baseUrl = baseUrl;
+
+        _layoutDevice = new Java2DOutputDevice(
+                ImageUtil.createCompatibleBufferedImage(DEFAULT_DOTS_PER_POINT, DEFAULT_DOTS_PER_POINT));
+
+        final UserAgentCallback userAgent = new NaiveUserAgent();
+        _sharedContext = new SharedContext(userAgent);
+        _sharedContext.setFontResolver(new AWTFontResolver());
+        _sharedContext.setTextRenderer(new Java2DTextRenderer());
+        _sharedContext.setDPI(72 * DEFAULT_DOTS_PER_POINT);
+        _sharedContext.setDotsPerPixel(DEFAULT_DOTS_PER_PIXEL);
+        _sharedContext.setPrint(true);
+        _sharedContext.setInteractive(false);
+    }
+
+    public SharedContext getSharedContext() {
+        return _sharedContext;
+    }
+
+    /**
+     * See {@link Java2DRenderer#setRenderingHints(Map)}.
+     */
+    public void setRenderingHints(final Map<RenderingHints.Key, Object> hints) {
+        _renderingHints = hints;
+    }
+
+    /**
+     * See {@link Java2DRenderer#setBufferedImageType(int)}.
+     */
+    public void setBufferedImageType(final int bufferedImageType) {
+        _bufferedImageType = bufferedImageType;
+    }
+
+    /**
+     * Loads the document if necessary and lays it out into pages.
+     */
+    public void layout() {
+        if (_doc == null) {
+            _doc = _sharedContext.getUac().getXMLResource(_sourceDocument).getDocument();
+        }
+        setDocument();
+
+        final LayoutContext c = _sharedContext.newLayoutContextInstance();
+        c.setFontContext(new Java2DFontContext(_layoutDevice.getGraphics()));
+        _sharedContext.getTextRenderer().setup(c.getFontContext());
+
+        final BlockBox root = BoxBuilder.createRootBox(c, _doc);
+        final PageBox first = Layer.createPageBox(c, "first");
+        root.setContainingBlock(new ViewportBox(
+                new Rectangle(0, 0, first.getContentWidth(c), first.getContentHeight(c))));
+        root.layout(c);
+        final Dimension dim = root.getLayer().getPaintingDimension(c);
+        root.getLayer().trimEmptyPages(c, dim.height);
+        root.getLayer().layoutPages(c);
+        _root = root;
+
+        final RenderingContext rc = newRenderingContext(_layoutDevice.getGraphics());
+        root.getLayer().assignPagePaintingPositions(rc, Layer.PAGED_MODE_PRINT);
+        _changedWhilePainted = root.getLayer().prepareConcurrentPainting(rc);
+    }
+
+    private void setDocument() {
+        _sharedContext.reset();
+        if (Configuration.isTrue("xr.cache.stylesheets", true)) {
+            _sharedContext.getCss().flushStyleSheets();
+        } else {
+            _sharedContext.getCss().flushAllStyleSheets();
+        }
+        _sharedContext.setBaseURL(_baseUrl);
+        _sharedContext.setNamespaceHandler(new HtmlNamespaceHandler());
+        _sharedContext.getCss().setDocumentContext(
+                _sharedContext, _sharedContext.getNamespaceHandler(), _doc, new NullUserInterface());
+    }
+
+    public int getPageCount() {
+        return getPages().size();
+    }
+
+    /**
+     * Renders one page.
+     *
+     * @param pageNo the number of the page, starting at 0
+     * @param scale image pixels per dot, e.g. 2 for an image twice the size of the page
+     */
+    public BufferedImage getPageImage(final int pageNo, final double scale) {
+        final PageBox page = getPages().get(pageNo);
+        final RenderingContext c = newRenderingContext(_layoutDevice.getGraphics());
+
+        final BufferedImage result = createBufferedImage(
+                (int) Math.ceil(page.getWidth(c) * scale), (int) Math.ceil(page.getHeight(c) * scale));
+        final Graphics2D g = result.createGraphics();
+        try {
+            if (isChangedWhilePainted(c, page)) {
+                _changedWhilePaintedLock.lock();
+                try {
+                    paintPage(g, pageNo, page, scale);
+                } finally {
+                    _changedWhilePaintedLock.unlock();
+                }
+            } else {
+                paintPage(g, pageNo, page, scale);
+            }
+        } finally {
+            g.dispose();
+        }
+        return result;
+    }
+
+    /**
+     * Renders all pages using the threads of <code>pool</code>, each image is
+     * handed to the listener once it has been painted. Returns when all
+     * pages have been rendered.
+     *
+     * @param scale image pixels per dot
+     * @throws IOException If the listener throws it; pages not yet started
+     * aren't rendered.
+     */
+    public void renderPages(final double scale, final ForkJoinPool pool, final PageImageListener listener)
+            throws IOException {
+        try {
+            pool.invoke(new RenderPagesAction(0, getPageCount(), scale, listener));
+        } catch (final ListenerException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Renders all pages (see {@link #renderPages(double, ForkJoinPool, PageImageListener)})
+     * and writes each one to a file named <code>page-N.format</code> in the
+     * given directory, counting from 1.
+     */
+    public void writePages(final double scale, final ForkJoinPool pool,
+                           final FSImageWriter writer, final File directory) throws IOException {
+        renderPages(scale, pool, new PageImageListener() {
+            public void pageRendered(final BufferedImage image, final int pageNo) throws IOException {
+                writer.write(image, new File(directory,
+                        "page-" + (pageNo + 1) + "." + writer.getImageFormat()).getPath());
+            }
+        });
+    }
+
+    /**
+     * See {@link Java2DRenderer#createBufferedImage(int, int)}.
+     */
+    protected BufferedImage createBufferedImage(final int width, final int height) {
+        final BufferedImage image = ImageUtil.createCompatibleBufferedImage(width, height, _bufferedImageType);
+        ImageUtil.clearImage(image);
+        return image;
+    }
+
+    private List<PageBox> getPages() {
+        if (_root == null) {
+            throw new IllegalStateException("layout() must be called first");
+        }
+        return _root.getLayer().getPages();
+    }
+
+    private boolean isChangedWhilePainted(final RenderingContext c, final PageBox page) {
+        for (final Box box : _changedWhilePainted) {
+            if (box.getStyle().isFixed()) {
+                return true;
+            }
+            final Rectangle bounds = box.getPaintingInfo() == null ?
+                    box.getMarginEdge(box.getAbsX(), box.getAbsY(), c, 0, 0) :
+                    box.getPaintingInfo().getAggregateBounds();
+            if (bounds.y < page.getBottom() && bounds.y + bounds.height >= page.getTop()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void paintPage(final Graphics2D g, final int pageNo, final PageBox page, final double scale) {
+        if (_renderingHints != null) {
+            g.addRenderingHints(_renderingHints);
+        }
+        g.scale(scale, scale);
+
+        final RenderingContext c = newRenderingContext(g);
+        c.setPageCount(getPageCount());
+        c.setPage(pageNo, page);
+
+        page.paintBackground(c, 0, Layer.PAGED_MODE_PRINT);
+        page.paintMarginAreas(c, 0, Layer.PAGED_MODE_PRINT);
+        page.paintBorder(c, 0, Layer.PAGED_MODE_PRINT);
+
+        final Shape working = g.getClip();
+        g.clip(page.getPrintClippingBounds(c));
+
+        final int top = -page.getPaintingTop() + page.getMarginBorderPadding(c, CalculatedStyle.TOP);
+        final int left = page.getMarginBorderPadding(c, CalculatedStyle.LEFT);
+
+        g.translate(left, top);
+        _root.getLayer().paint(c);
+        g.translate(-left, -top);
+
+        g.setClip(working);
+    }
+
+    private RenderingContext newRenderingContext(final Graphics2D g) {
+        final RenderingContext result = _sharedContext.newRenderingContextInstance();
+        result.setFontContext(new Java2DFontContext(g));
+        result.setOutputDevice(new Java2DOutputDevice(g));
+        _sharedContext.getTextRenderer().setup(result.getFontContext());
+        if (_root != null) {
+            result.setRootLayer(_root.getLayer());
+        }
+        return result;
+    }
+
+    /**
+     * Splits the range of pages in halves until a single page is left.
+     */
+    private class RenderPagesAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int _start;
+        private final int _end;
+        private final double _scale;
+        private final PageImageListener _listener;
+
+        RenderPagesAction(final int start, final int end, final double scale, final PageImageListener listener) {
+            _start = start;
+            _end = end;
+            _scale = scale;
+            _listener = listener;
+        }
+
+        protected void compute() {
+            if (_end - _start == 1) {
+                final BufferedImage image = getPageImage(_start, _scale);
+                try {
+                    _listener.pageRendered(image, _start);
+                } catch (final IOException e) {
+                    throw new ListenerException(e);
+                }
+            } else if (_end - _start > 1) {
+                final int middle = (_start + _end) >>> 1;
+                invokeAll(new RenderPagesAction(_start, middle, _scale, _listener),
+                        new RenderPagesAction(middle, _end, _scale, _listener));
+            }
+        }
+    }
+
+    private static class ListenerException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ListenerException(final IOException cause) {
+            super(cause);
+        }
+
+        public IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    private static final class NullUserInterface implements UserInterface {
+        public boolean isHover(final Element e) {
+            return false;
+        }
+
+        public boolean isActive(final Element e) {
+            return false;
+        }
+
+        public boolean isFocus(final Element e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.swing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhtmlrenderer.util.Configuration;
+
+/**
+ * Fetches the stylesheets, images and fonts a document refers to, several at
+ * a time, into a {@link ContentStore}. The URIs are found in the document's
+ * <code>link</code>, <code>style</code> and <code>img</code> elements and
+ * <code>style</code> attributes, and in the <code>@import</code> rules and
+ * <code>url()</code> values of the stylesheets as they arrive. They are
+ * resolved the way the CSS parser and the user agent resolve them, so the
+ * user agent finds them in the store under the URIs it asks for.
+ * <p/>
+ * The fetches run on a pool shared by all documents, with at most
+ * <code>xr.load.prefetch.threads-per-host</code> running against any one
+ * host. They are read with {@link NaiveUserAgent#openStream(String)}, as
+ * the user agent reads resources itself. Resources which cannot be fetched
+ * are left out of the store, and are then loaded (and their problems
+ * reported) as usual.
+ */
+class ResourcePrefetcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourcePrefetcher.class);
+
+    private static final Pattern IMPORT_PATTERN = Pattern.compile(
+            "@import\\s+(?:url\\(\\s*(['\"]?)([^'\"()\\s]+)\\1\\s*\\)|(['\"])([^'\"]+)\\3)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern URL_PATTERN = Pattern.compile(
+            "url\\(\\s*(['\"]?)([^'\"()\\s]+)\\1\\s*\\)", Pattern.CASE_INSENSITIVE);
+
+    private static final Charset CSS_CHARSET = Charset.forName("ISO-8859-1");
+
+    private static ExecutorService _executor;
+
+    private final NaiveUserAgent _uac;
+    private final ContentStore _store;
+    private final int _threadsPerHost;
+    private final CompletionService<Fetch> _completionService;
+
+    private final Set<String> _seen = new HashSet<String>();
+    private final Map<String, LinkedList<Fetch>> _waiting = new HashMap<String, LinkedList<Fetch>>();
+    private final Map<String, Integer> _running = new HashMap<String, Integer>();
+    private int _pending;
+
+    ResourcePrefetcher(final NaiveUserAgent uac, final ContentStore store) {
+        _uac = uac;
+        _store = store;
+        _threadsPerHost = Math.max(1, Configuration.valueAsInt("xr.load.prefetch.threads-per-host", 4));
+        _completionService = new ExecutorCompletionService<Fetch>(getExecutor());
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (_executor == null) {
+            final int threads = Math.max(1, Configuration.valueAsInt("xr.load.prefetch.threads", 8));
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    threads, threads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(final Runnable r) {
+                    final Thread result = new Thread(r, "Resource prefetch");
+                    result.setDaemon(true);
+                    return result;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            _executor = executor;
+        }
+        return _executor;
+    }
+
+    /**
+     * Fetches everything the document refers to, returning once all the
+     * fetches have finished or the thread is interrupted.
+     */
+    void prefetch() {
+        scanDocument(_store.getDocument());
+        try {
+            while (_pending > 0) {
+                final Fetch fetch = _completionService.take().get();
+                _pending--;
+                finished(fetch);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            LOGGER.error("Unexpected problem prefetching resources", e.getCause());
+        }
+    }
+
+    private void scanDocument(final Document doc) {
+        for (final Element link : doc.select("link[href]")) {
+            if (link.attr("rel").toLowerCase(Locale.US).contains("stylesheet")) {
+                add(_uac.resolveURI(link.attr("href")), true);
+            }
+        }
+        final String base = _uac.getBaseURL();
+        for (final Element style : doc.select("style")) {
+            scanStylesheet(style.data(), base);
+        }
+        for (final Element img : doc.select("img[src]")) {
+            final String src = img.attr("src");
+            if (! isData(src)) {
+                add(_uac.resolveURI(src), false);
+            }
+        }
+        for (final Element e : doc.select("[style]")) {
+            scanUrls(e.attr("style"), null);
+        }
+    }
+
+    private void scanStylesheet(final String css, final String base) {
+        final Matcher m = IMPORT_PATTERN.matcher(css);
+        while (m.find()) {
+            final String uri = m.group(2) != null ? m.group(2) : m.group(4);
+            try {
+                // as CSSParser resolves imports
+                add(_uac.resolveURI(base == null ? uri : new URL(new URL(base), uri).toString()), true);
+            } catch (final MalformedURLException e) {
+                // left for the parser to report
+            }
+        }
+        scanUrls(m.replaceAll(""), base);
+    }
+
+    private void scanUrls(final String css, final String base) {
+        final Matcher m = URL_PATTERN.matcher(css);
+        while (m.find()) {
+            String uri = m.group(2);
+            if (isData(uri)) {
+                continue;
+            }
+            // as CSSParser resolves URIs in property values
+            if (base != null && isRelativeURI(uri)) {
+                final int lastSlash = base.lastIndexOf('/');
+                if (lastSlash != -1) {
+                    uri = base.substring(0, lastSlash + 1) + uri;
+                }
+            }
+            add(_uac.resolveURI(uri), false);
+        }
+    }
+
+    private static boolean isData(final String uri) {
+        return uri.regionMatches(true, 0, "data:", 0, 5);
+    }
+
+    private static boolean isRelativeURI(final String uri) {
+        try {
+            return uri.length() > 0 && (uri.charAt(0) != '/' && ! new URI(uri).isAbsolute());
+        } catch (final URISyntaxException e) {
+            return false;
+        }
+    }
+
+    private void add(final String uri, final boolean stylesheet) {
+        if (uri == null || ! _seen.add(uri) || _uac.isResourceCached(uri)) {
+            return;
+        }
+        final String host;
+        try {
+            host = new URL(uri).getHost();
+        } catch (final MalformedURLException e) {
+            return;
+        }
+        final Fetch fetch = new Fetch(_uac, uri, host, stylesheet);
+        _pending++;
+        final Integer running = _running.get(host);
+        if (running == null || running.intValue() < _threadsPerHost) {
+            start(fetch);
+        } else {
+            LinkedList<Fetch> waiting = _waiting.get(host);
+            if (waiting == null) {
+                waiting = new LinkedList<Fetch>();
+                _waiting.put(host, waiting);
+            }
+            waiting.add(fetch);
+        }
+    }
+
+    private void start(final Fetch fetch) {
+        final Integer running = _running.get(fetch._host);
+        _running.put(fetch._host, running == null ? 1 : running.intValue() + 1);
+        _completionService.submit(fetch);
+    }
+
+    private void finished(final Fetch fetch) {
+        _running.put(fetch._host, _running.get(fetch._host).intValue() - 1);
+        final LinkedList<Fetch> waiting = _waiting.get(fetch._host);
+        if (waiting != null && ! waiting.isEmpty()) {
+            start(waiting.removeFirst());
+        }
+        if (fetch._data != null) {
+            _store.addBinaryContent(fetch._uri, fetch._data);
+            if (fetch._stylesheet) {
+                scanStylesheet(new String(fetch._data, CSS_CHARSET), fetch._uri);
+            }
+        }
+    }
+
+    private static class Fetch implements Callable<Fetch> {
+        private final NaiveUserAgent _uac;
+        private final String _uri;
+        private final String _host;
+        private final boolean _stylesheet;
+        private byte[] _data;
+
+        Fetch(final NaiveUserAgent uac, final String uri, final String host, final boolean stylesheet) {
+            _uac = uac;
+            _uri = uri;
+            _host = host;
+            _stylesheet = stylesheet;
+        }
+
+        public Fetch call() {
+            InputStream is = null;
+            try {
+                is = _uac.openStream(_uri);
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(10240);
+                final byte[] buf = new byte[10240];
+                int i;
+                while ((i = is.read(buf)) != -1) {
+                    out.write(buf, 0, i);
+                }
+                _data = out.toByteArray();
+            } catch (final IOException e) {
+                LOGGER.debug("Could not prefetch " + _uri + ": " + e.getMessage());
+            } finally {
+                if (is != null) {
+                    try {
+                        is.close();
+                    } catch (final IOException e) {
+                        // ignore
+                    }
+                }
+            }
+            return this;
+        }
+    }
+}
@@ -7,6 +7,10 @@ import org.slf4j.LoggerFactory;
 import org.xhtmlrenderer.css.sheet.Stylesheet;
 import org.xhtmlrenderer.css.sheet.StylesheetInfo;
 
+/**
+ * An LRU cache of parsed stylesheets by URI. All methods are synchronized, so
+ * one cache may be shared by user agents on different threads.
+ */
 public class StylesheetCache {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(StylesheetCache.class);
@@ -34,7 +38,7 @@ public class StylesheetCache {
 	 * @param sheet
 	 *            The sheet to cache.
 	 */
-	public void putStylesheet(final String key, final Stylesheet sheet) {
+	public synchronized void putStylesheet(final String key, final Stylesheet sheet) {
 		LOGGER.info("Receiving stylesheet for " + key);
 		
 		_cache.put(key, sheet);
@@ -45,7 +49,7 @@ public class StylesheetCache {
 	 * @return true if a Stylesheet with this key has been put in the cache.
 	 *         Note that the Stylesheet may be null.
 	 */
-	public boolean containsStylesheet(final String key) {
+	public synchronized boolean containsStylesheet(final String key) {
 		return _cache.containsKey(key);
 	}
 
@@ -56,7 +60,7 @@ public class StylesheetCache {
 	 *            The key for this sheet; same as key passed to putStylesheet();
 	 * @return The stylesheet
 	 */
-	public Stylesheet getStylesheet(final StylesheetInfo key) {
+	public synchronized Stylesheet getStylesheet(final StylesheetInfo key) {
 		if (_cache.containsKey(key.getUri()))
 			LOGGER.info("Stylesheet hit for " + key.getUri());
 		else
@@ -71,11 +75,11 @@ public class StylesheetCache {
 	 * @param key
 	 *            The key for this sheet; same as key passed to putStylesheet();
 	 */
-	public Stylesheet removeCachedStylesheet(final String key) {
+	public synchronized Stylesheet removeCachedStylesheet(final String key) {
 		return _cache.remove(key);
 	}
 
-	public void flushCachedStylesheets() {
+	public synchronized void flushCachedStylesheets() {
 		_cache.clear();
 	}
 }
@@ -0,0 +1,70 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread safe map which compares its keys by identity. Use it for maps
+ * keyed by DOM nodes: a jsoup node hashes its attributes and those of its
+ * ancestors, so e.g. all the cells of a table share a hash code and a plain
+ * hash map degrades to a linear search.
+ */
+public class ConcurrentIdentityMap<K, V> {
+    private final ConcurrentHashMap<Key<K>, V> _map;
+
+    public ConcurrentIdentityMap() {
+        _map = new ConcurrentHashMap<Key<K>, V>();
+    }
+
+    public ConcurrentIdentityMap(final int initialCapacity) {
+        _map = new ConcurrentHashMap<Key<K>, V>(initialCapacity);
+    }
+
+    public V get(final K key) {
+        return _map.get(new Key<K>(key));
+    }
+
+    public V put(final K key, final V value) {
+        return _map.put(new Key<K>(key), value);
+    }
+
+    public V remove(final K key) {
+        return _map.remove(new Key<K>(key));
+    }
+
+    public int size() {
+        return _map.size();
+    }
+
+    private static final class Key<K> {
+        private final K _key;
+
+        Key(final K key) {
+            _key = key;
+        }
+
+        public int hashCode() {
+            return System.identityHashCode(_key);
+        }
+
+        public boolean equals(final Object o) {
+            return o instanceof Key && ((Key<?>) o)._key == _key;
+        }
+    }
+}
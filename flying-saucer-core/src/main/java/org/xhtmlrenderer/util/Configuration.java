@@ -757,6 +757,14 @@ public class Configuration {
         props.setProperty("xr.renderer.debug.box-outlines", "false");
         props.setProperty("xr.renderer.replace-missing-characters", "false");
         props.setProperty("xr.renderer.missing-character-replacement", "false");
+        props.setProperty("xr.pdf.font-cache-size", "64");
+        props.setProperty("xr.pdf.image.downsample", "false");
+        props.setProperty("xr.pdf.image.downsample.dpi", "150");
+        props.setProperty("xr.pdf.image.downsample.threshold", "1.5");
+        props.setProperty("xr.pdf.image.downsample.compression", "AUTO");
+        props.setProperty("xr.pdf.image.downsample.jpeg-quality", "0.85");
+        props.setProperty("xr.pdf.image.downsample.quality", "HIGH_QUALITY");
+        props.setProperty("xr.pdf.image.downsample.cache-size", "64");
         props.setProperty("xr.text.scale", "1.0");
         props.setProperty("xr.text.aa-smoothing-level", "1");
         props.setProperty("xr.text.aa-fontsize-threshhold", "25");
@@ -765,6 +773,7 @@ public class Configuration {
         props.setProperty("xr.incremental.enabled", "false");
         props.setProperty("xr.incremental.lazyimage", "false");
         props.setProperty("xr.incremental.debug.layoutdelay", "0");
+        props.setProperty("xr.incremental.repaint-interval", "100");
         props.setProperty("xr.incremental.repaint.print-timing", "false");
         props.setProperty("xr.use.threads", "false");
         props.setProperty("xr.use.listeners", "true");
@@ -95,6 +95,13 @@ public class FSImageWriter {
         return writer;
     }
 
+    /**
+     * @return the informal name of the format images are written in, e.g. "png"
+     */
+    public String getImageFormat() {
+        return imageFormat;
+    }
+
     /**
      * Writes the image out to the target file, creating the file if necessary, or overwriting if it already
      * exists.
@@ -13,6 +13,14 @@ import java.net.URLConnection;
 public class IOUtil {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(IOUtil.class);
+
+    /**
+     * Timeouts, in milliseconds, for connecting to and reading from the URIs
+     * of resources
+     */
+    public static final int CONNECT_TIMEOUT = 10 * 1000;
+    public static final int READ_TIMEOUT = 30 * 1000;
+
     public static File copyFile(final File page, final File outputDir) throws IOException {
         InputStream in = null;
         OutputStream out = null;
@@ -80,8 +88,8 @@ public class IOUtil {
             // Since we target 1.4, we use a couple of system properties--note these are only supported
             // in the Sun JDK implementation--see the Net properties guide in the JDK
             // e.g. file:///usr/java/j2sdk1.4.2_17/docs/guide/net/properties.html
-            System.setProperty("sun.net.client.defaultConnectTimeout", String.valueOf(10 * 1000));
-            System.setProperty("sun.net.client.defaultReadTimeout", String.valueOf(30 * 1000));
+            System.setProperty("sun.net.client.defaultConnectTimeout", String.valueOf(CONNECT_TIMEOUT));
+            System.setProperty("sun.net.client.defaultReadTimeout", String.valueOf(READ_TIMEOUT));
 
             uc.connect();
 
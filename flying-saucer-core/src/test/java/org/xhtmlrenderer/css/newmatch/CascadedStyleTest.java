@@ -0,0 +1,96 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.css.newmatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.xhtmlrenderer.css.parser.CSSErrorHandler;
+import org.xhtmlrenderer.css.parser.CSSParser;
+import org.xhtmlrenderer.css.sheet.StylesheetInfo.CSSOrigin;
+
+public class CascadedStyleTest {
+    private static final CSSParser PARSER = new CSSParser(new CSSErrorHandler() {
+        public void error(final String uri, final String message) {
+            throw new IllegalArgumentException(message);
+        }
+    });
+
+    private static CascadedStyle style(final String declarations) {
+        return CascadedStyle.createLayoutStyle(
+                PARSER.parseDeclaration(CSSOrigin.AUTHOR, declarations).getPropertyDeclarations());
+    }
+
+    private static void assertSame(final CascadedStyle a, final CascadedStyle b) {
+        assertTrue(a.equals(b));
+        assertTrue(b.equals(a));
+        assertEquals(a.hashCode(), b.hashCode());
+        assertEquals(a.getFingerprint(), b.getFingerprint());
+    }
+
+    private static void assertDifferent(final CascadedStyle a, final CascadedStyle b) {
+        assertFalse(a.equals(b));
+        assertFalse(b.equals(a));
+        assertFalse(a.getFingerprint().equals(b.getFingerprint()));
+    }
+
+    @Test
+    public void stylesFromDifferentDeclarationsWithTheSameValuesAreEqual() {
+        assertSame(style("color: red; margin-top: 1px"), style("margin-top: 1px; color: red"));
+        assertSame(style("color: blue; color: red"), style("color: red"));
+        assertSame(style(""), CascadedStyle.emptyCascadedStyle);
+    }
+
+    @Test
+    public void stylesWithDifferentValuesOrPropertiesAreNotEqual() {
+        assertDifferent(style("color: red"), style("color: blue"));
+        assertDifferent(style("margin-top: 1px"), style("margin-bottom: 1px"));
+        assertDifferent(style("color: red"), style("color: red; margin-top: 1px"));
+        assertDifferent(style("margin-top: 1px"), style("margin-top: 1pt"));
+        assertDifferent(style("color: red"), CascadedStyle.emptyCascadedStyle);
+    }
+
+    @Test
+    public void onlyTheCascadedValuesTakePartInEquality() {
+        // Importance has done its work once the style is cascaded
+        assertSame(style("color: red"), style("color: red !important"));
+    }
+
+    @Test
+    public void equalityAgreesWithTheFingerprint() {
+        final String[] declarations = {
+            "color: red", "color: #f00", "color: red; display: block", "display: block",
+            "display: inline", "font-size: 12px", "font-size: 12px; color: red",
+            "margin: 1px", "margin: 1px 1px", "margin-left: 1px", "width: 10%",
+            "width: 10px", "content: \"a\"", "content: \"b\"",
+        };
+        for (final String a : declarations) {
+            for (final String b : declarations) {
+                final CascadedStyle x = style(a);
+                final CascadedStyle y = style(b);
+                final boolean equal = x.getFingerprint().equals(y.getFingerprint());
+                assertEquals(a + " / " + b, equal, x.equals(y));
+                if (equal) {
+                    assertEquals(a + " / " + b, x.hashCode(), y.hashCode());
+                }
+            }
+        }
+    }
+}
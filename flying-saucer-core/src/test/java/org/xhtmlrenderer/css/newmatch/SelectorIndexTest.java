@@ -0,0 +1,139 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.css.newmatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+import org.xhtmlrenderer.context.StandardAttributeResolver;
+import org.xhtmlrenderer.context.StylesheetFactoryImpl;
+import org.xhtmlrenderer.css.extend.lib.DOMTreeResolver;
+import org.xhtmlrenderer.css.parser.CSSErrorHandler;
+import org.xhtmlrenderer.css.parser.CSSParser;
+import org.xhtmlrenderer.css.sheet.Stylesheet;
+import org.xhtmlrenderer.css.sheet.StylesheetInfo.CSSOrigin;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.simple.HtmlNamespaceHandler;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+
+public class SelectorIndexTest {
+    private static final String CSS =
+            "* { margin: 1px }\n" +
+            "p { color: red }\n" +
+            "div p { color: green }\n" +
+            "div > p.note { color: blue }\n" +
+            ".note { font-weight: bold }\n" +
+            ".note.wide { width: 50% }\n" +
+            "p.note + p { text-indent: 1em }\n" +
+            "#main { border: 1px solid }\n" +
+            "#main .note { border-color: red }\n" +
+            "span#inner.note { font-style: italic }\n" +
+            "[title] { text-decoration: underline }\n" +
+            "a[href^=\"http\"] { color: navy }\n" +
+            "li:first-child { list-style-type: square }\n" +
+            "li:last-child { list-style-type: circle }\n" +
+            "a:hover { color: purple }\n" +
+            "*.wide { height: 10px }\n" +
+            "P, LI { line-height: 2 }\n" +
+            "p:first-line { font-variant: small-caps }\n" +
+            ".note:before { content: \"Note: \" }\n" +
+            "#main:after { content: \"end\" }\n";
+
+    private static final String HTML =
+            "<html><body>" +
+            "<div id='main'><h1>Title</h1>" +
+            "<p class='note'>One <span id='inner' class='note'>inner</span></p>" +
+            "<p>Two <a href='http://example.com/' title='ex'>link</a></p>" +
+            "<p class='note wide'>Three</p>" +
+            "<ul><li>a</li><li class='NOTE'>b</li><li>c</li></ul>" +
+            "</div>" +
+            "<p class='note'>Four <a href='local'>local</a></p>" +
+            "<section><p id='MAIN'>Five</p></section>" +
+            "</body></html>";
+
+    private static final String[] PSEUDO_ELEMENTS = { "before", "after", "first-line", "first-letter" };
+
+    @Test
+    public void indexedMatchingFindsTheSameRulesAsALinearScan() throws IOException {
+        final Document doc = Jsoup.parse(HTML);
+        final Matcher indexed = newMatcher(true);
+        final Matcher linear = newMatcher(false);
+
+        int matched = 0;
+        for (final Element e : doc.getAllElements()) {
+            if (e instanceof Document) {
+                continue;
+            }
+            final CascadedStyle expected = linear.getCascadedStyle(e, true);
+            final CascadedStyle actual = indexed.getCascadedStyle(e, true);
+            assertEquals(e.outerHtml(), expected.getFingerprint(), actual.getFingerprint());
+            if (expected.countAssigned() > 0) {
+                matched++;
+            }
+
+            for (final String pseudoElement : PSEUDO_ELEMENTS) {
+                final CascadedStyle expectedPE = linear.getPECascadedStyle(e, pseudoElement);
+                final CascadedStyle actualPE = indexed.getPECascadedStyle(e, pseudoElement);
+                assertEquals(e.outerHtml() + "::" + pseudoElement,
+                        expectedPE == null ? null : expectedPE.getFingerprint(),
+                        actualPE == null ? null : actualPE.getFingerprint());
+            }
+        }
+        assertTrue(matched > 10);
+    }
+
+    private static Matcher newMatcher(final boolean useSelectorIndex) throws IOException {
+        final NaiveUserAgent uac = new NaiveUserAgent();
+        final CSSParser parser = new CSSParser(new CSSErrorHandler() {
+            public void error(final String uri, final String message) {
+                throw new IllegalArgumentException(message);
+            }
+        });
+        final Stylesheet sheet = parser.parseStylesheet(null, CSSOrigin.AUTHOR, new StringReader(CSS));
+        final Matcher matcher = new Matcher(
+                new DOMTreeResolver(),
+                new StandardAttributeResolver(new HtmlNamespaceHandler(), uac, new HoverLinks()),
+                new StylesheetFactoryImpl(uac),
+                Collections.singletonList(sheet),
+                "screen");
+        matcher.setUseSelectorIndex(useSelectorIndex);
+        return matcher;
+    }
+
+    private static class HoverLinks implements UserInterface {
+        public boolean isHover(final Element e) {
+            return e.hasAttr("title");
+        }
+
+        public boolean isActive(final Element e) {
+            return false;
+        }
+
+        public boolean isFocus(final Element e) {
+            return false;
+        }
+    }
+}
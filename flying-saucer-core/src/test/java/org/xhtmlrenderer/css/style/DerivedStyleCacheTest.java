@@ -0,0 +1,79 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.css.style;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.xhtmlrenderer.css.constants.CSSName;
+import org.xhtmlrenderer.css.newmatch.CascadedStyle;
+import org.xhtmlrenderer.css.parser.CSSParser;
+import org.xhtmlrenderer.css.parser.CSSErrorHandler;
+import org.xhtmlrenderer.css.sheet.StylesheetInfo.CSSOrigin;
+import org.xhtmlrenderer.util.Configuration;
+
+public class DerivedStyleCacheTest {
+    private static final int CACHE_SIZE = Configuration.valueAsInt("xr.css.derived-style-cache-size", 256);
+
+    private static final CSSParser PARSER = new CSSParser(new CSSErrorHandler() {
+        public void error(final String uri, final String message) {
+            throw new IllegalArgumentException(message);
+        }
+    });
+
+    private static CascadedStyle style(final String declarations) {
+        return CascadedStyle.createLayoutStyle(
+                PARSER.parseDeclaration(CSSOrigin.AUTHOR, declarations).getPropertyDeclarations());
+    }
+
+    @Test
+    public void equalCascadedStylesShareADerivedStyle() {
+        final CalculatedStyle parent = new EmptyStyle();
+        final CalculatedStyle child = parent.deriveStyle(style("display: block; margin-top: 3px"));
+
+        assertSame(child, parent.deriveStyle(style("margin-top: 3px; display: block")));
+        assertNotSame(child, parent.deriveStyle(style("display: block; margin-top: 4px")));
+    }
+
+    @Test
+    public void theCacheIsBoundedPerParent() {
+        final CalculatedStyle parent = new EmptyStyle();
+        final CalculatedStyle[] cached = new CalculatedStyle[CACHE_SIZE];
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            cached[i] = parent.deriveStyle(style("z-index: " + i));
+        }
+
+        // Once the cache is full, further children are derived each time
+        final CascadedStyle extra = style("z-index: " + CACHE_SIZE);
+        final CalculatedStyle first = parent.deriveStyle(extra);
+        final CalculatedStyle second = parent.deriveStyle(extra);
+        assertNotSame(first, second);
+        assertEquals(CACHE_SIZE, (int) second.asFloat(CSSName.Z_INDEX));
+
+        // and the children cached before stay cached
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            assertSame(cached[i], parent.deriveStyle(style("z-index: " + i)));
+        }
+
+        // Another parent has a cache of its own
+        final CalculatedStyle other = new EmptyStyle();
+        assertSame(other.deriveStyle(extra), other.deriveStyle(extra));
+    }
+}
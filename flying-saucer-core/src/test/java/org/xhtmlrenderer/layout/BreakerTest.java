@@ -0,0 +1,133 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.layout;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.text.BreakIterator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xhtmlrenderer.css.newmatch.CascadedStyle;
+import org.xhtmlrenderer.css.parser.CSSErrorHandler;
+import org.xhtmlrenderer.css.parser.CSSParser;
+import org.xhtmlrenderer.css.sheet.StylesheetInfo.CSSOrigin;
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.css.style.EmptyStyle;
+import org.xhtmlrenderer.render.FSFont;
+import org.xhtmlrenderer.render.FSTextWidths;
+import org.xhtmlrenderer.swing.Java2DFontContext;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+
+public class BreakerTest {
+    private static final String[] TEXTS = {
+        "The quick brown fox jumps over the lazy dog.",
+        "Officially, the fluffy waffle-iron's affine office filled 12,345.67 offers (really!) – didn't it?",
+        "Supercalifragilisticexpialidocious antidisestablishmentarianism",
+        "a b c d e f g h i j k l m n o p q r s t u v w x y z",
+        "Zwölf Bóxkämpfer jagen Viktor quer über den großen Sylter Deich",
+        "x",
+    };
+
+    private static final CSSParser PARSER = new CSSParser(new CSSErrorHandler() {
+        public void error(final String uri, final String message) {
+            throw new IllegalArgumentException(message);
+        }
+    });
+
+    private Graphics2D _g;
+    private LayoutContext _c;
+    private CalculatedStyle _style;
+
+    @Before
+    public void setUp() {
+        _g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        _c = new SharedContext(new NaiveUserAgent()).newLayoutContextInstance();
+        _c.setFontContext(new Java2DFontContext(_g));
+        _style = new EmptyStyle().deriveStyle(CascadedStyle.createLayoutStyle(
+                PARSER.parseDeclaration(CSSOrigin.AUTHOR, "font-family: serif; font-size: 13px").getPropertyDeclarations()));
+    }
+
+    @After
+    public void tearDown() {
+        _g.dispose();
+    }
+
+    @Test
+    public void textWidthsMatchMeasuringEachPart() {
+        final FSFont font = _style.getFSFont(_c);
+        for (final String text : TEXTS) {
+            final FSTextWidths widths = _c.getTextRenderer().getTextWidths(_c.getFontContext(), font, text);
+            for (int start = 0; start <= text.length(); start++) {
+                for (int end = start; end <= text.length(); end++) {
+                    assertEquals(text.substring(start, end), measure(text, start, end), widths.getWidth(start, end));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void breaksWhereALinearScanBreaks() {
+        for (final String text : TEXTS) {
+            final LineBreakContext context = new LineBreakContext();
+            context.setMaster(text);
+            for (int start = 0; start < text.length(); start++) {
+                for (int avail = 1; avail < measure(text, 0, text.length()) + 20; avail += 3) {
+                    context.reset();
+                    context.setStart(start);
+                    Breaker.breakText(_c, context, avail, _style);
+
+                    final String message = "'" + text.substring(start) + "' in " + avail;
+                    final int end = linearScan(text, start, avail);
+                    assertEquals(message, end, context.getEnd());
+                    assertEquals(message, measure(text, start, end), context.getWidth());
+                    assertEquals(message, measure(text, start, text.length()) >= avail, context.isNeedsNewLine());
+                    assertEquals(message, context.getWidth() >= avail, context.isUnbreakable());
+                }
+            }
+        }
+    }
+
+    /**
+     * Measures each line break opportunity in turn and returns the last one
+     * which fits, or else the first one.
+     */
+    private int linearScan(final String text, final int start, final int avail) {
+        final BreakIterator breaks = BreakIterator.getLineInstance();
+        breaks.setText(text.substring(start));
+        int first = -1;
+        int fits = -1;
+        for (int next = breaks.next(); next != BreakIterator.DONE; next = breaks.next()) {
+            if (first == -1) {
+                first = next;
+            }
+            if (measure(text, start, start + next) >= avail) {
+                break;
+            }
+            fits = next;
+        }
+        return start + (fits != -1 ? fits : first);
+    }
+
+    private int measure(final String text, final int start, final int end) {
+        return _c.getTextRenderer().getWidth(_c.getFontContext(), _style.getFSFont(_c), text.substring(start, end));
+    }
+}
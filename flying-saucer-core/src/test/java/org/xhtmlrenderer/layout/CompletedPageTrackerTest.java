@@ -0,0 +1,69 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.layout;
+
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.Box;
+
+public class CompletedPageTrackerTest {
+    private final CompletedPageTracker _tracker = new CompletedPageTracker(new CompletedPageListener() {
+        public void pagesCompleted(final LayoutContext c, final int pageCount) {
+        }
+    });
+
+    @Test
+    public void popsTheInnermostFrame() {
+        final CompletedPageTracker.Frame outer = push();
+        final CompletedPageTracker.Frame inner = push();
+        _tracker.pop(inner);
+        _tracker.pop(outer);
+    }
+
+    @Test
+    public void popOfAnotherFrameFails() {
+        final CompletedPageTracker.Frame outer = push();
+        push();
+        try {
+            _tracker.pop(outer);
+            fail("popped a frame which isn't the innermost one");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void popWithoutFramesFails() {
+        final CompletedPageTracker.Frame frame = push();
+        _tracker.pop(frame);
+        try {
+            _tracker.pop(frame);
+            fail("popped a frame twice");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private CompletedPageTracker.Frame push() {
+        return _tracker.push(new BlockBox(), Collections.<Box>emptyList());
+    }
+}
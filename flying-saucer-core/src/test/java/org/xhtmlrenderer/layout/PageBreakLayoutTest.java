@@ -0,0 +1,222 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.layout;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.PageBox;
+import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.simple.HtmlNamespaceHandler;
+import org.xhtmlrenderer.swing.Java2DFontContext;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+
+/**
+ * Checks where print layout puts boxes which are moved to the next page to
+ * avoid a page break. The pages are 300px high and all the content has a
+ * fixed height, so the positions don't depend on the fonts.
+ */
+public class PageBreakLayoutTest {
+    private static final String CSS =
+            "@page { size: 400px 300px; margin: 0 }\n" +
+            "body { margin: 0; font-size: 10px; line-height: 20px }\n" +
+            "p { margin: 0; white-space: nowrap }\n" +
+            ".filler { height: 250px }\n" +
+            ".keep { page-break-inside: avoid }\n" +
+            "h2 { margin: 0; height: 20px; page-break-after: avoid }\n" +
+            "table { -fs-table-paginate: paginate; border-spacing: 0 }\n" +
+            "td { padding: 0; height: 20px }\n" +
+            "thead td, tfoot td { height: 30px }\n" +
+            ".auto td { height: auto }\n";
+
+    private Graphics2D _g;
+    private BlockBox _root;
+
+    @Before
+    public void setUp() {
+        _g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+    }
+
+    @After
+    public void tearDown() {
+        _g.dispose();
+    }
+
+    @Test
+    public void keepTogetherRuns() {
+        layout("<div class='filler'></div>" +
+                "<div id='a' class='keep'><p>a1</p><p>a2</p><p>a3</p><p>a4</p><p>a5</p></div>" +
+                "<div style='height: 140px'></div>" +
+                "<h2 id='h'>Heading</h2>" +
+                "<div id='b' class='keep'><p>b1</p><p id='b2'>b2</p><p>b3</p></div>" +
+                "<p id='c'>c</p>" +
+                "<div id='d' class='keep' style='height: 350px'></div>" +
+                "<p id='e'>e</p>");
+
+        // a would cross the first page break, so it starts the second page
+        assertEquals(300, getY("a"));
+        assertEquals(100, getBox("a").getHeight());
+
+        // h and b are kept together and b doesn't fit below h on the second
+        // page, so both start the third
+        assertEquals(600, getY("h"));
+        assertEquals(620, getY("b"));
+        assertEquals(640, getY("b2"));
+        assertEquals(680, getY("c"));
+
+        // d doesn't fit on any page, so it stays where it is
+        assertEquals(700, getY("d"));
+        assertEquals(1050, getY("e"));
+    }
+
+    @Test
+    public void tableMovedForItsHeaderAndFooter() {
+        layout("<div style='height: 260px'></div>" + table(5) + "<p id='after'>after</p>");
+
+        // The header and footer don't fit below the filler
+        assertEquals(300, getY("table"));
+        assertEquals(300, getY("head"));
+        assertEquals(330, getY("row0"));
+        assertEquals(410, getY("row4"));
+        assertEquals(430, getY("foot"));
+        assertEquals(460, getY("after"));
+    }
+
+    @Test
+    public void movedTableContinuesOnTheNextPage() {
+        layout("<div class='filler'></div>" + table(15) + "<p id='after'>after</p>");
+
+        assertEquals(300, getY("table"));
+        assertEquals(330, getY("row0"));
+        // Eleven rows fit between the header and the footer, a row may not
+        // end where the footer starts
+        assertEquals(530, getY("row10"));
+        // the next row follows the repeated header on the third page
+        assertEquals(630, getY("row11"));
+        assertEquals(690, getY("row14"));
+        assertEquals(710, getY("foot"));
+        assertEquals(740, getY("after"));
+    }
+
+    @Test
+    public void firstRowOfMovedTableKeepsItsHeight() {
+        layout("<div style='height: 290px'></div>" +
+                "<table id='table' class='auto'><thead><tr id='head'><td>Head</td></tr></thead><tbody>" +
+                "<tr id='row0'><td>0</td></tr><tr id='row1'><td>1</td></tr></tbody></table>");
+
+        // The first layout of the rows, before the table was moved, must not
+        // stretch the first one
+        assertEquals(300, getY("table"));
+        assertEquals(getY("head") + getBox("head").getHeight(), getY("row0"));
+        assertEquals(getBox("row1").getHeight(), getBox("row0").getHeight());
+        assertEquals(getY("row0") + getBox("row0").getHeight(), getY("row1"));
+    }
+
+    @Test
+    public void tableWhichFits() {
+        layout("<div style='height: 150px'></div>" + table(2) + "<p id='after'>after</p>");
+
+        assertEquals(150, getY("table"));
+        assertEquals(180, getY("row0"));
+        assertEquals(200, getY("row1"));
+        assertEquals(220, getY("foot"));
+        assertEquals(250, getY("after"));
+    }
+
+    private static String table(final int rows) {
+        final StringBuilder result = new StringBuilder(
+                "<table id='table'><thead><tr id='head'><td>Head</td></tr></thead>" +
+                "<tfoot><tr id='foot'><td>Foot</td></tr></tfoot><tbody>");
+        for (int i = 0; i < rows; i++) {
+            result.append("<tr id='row").append(i).append("'><td>").append(i).append("</td></tr>");
+        }
+        return result.append("</tbody></table>").toString();
+    }
+
+    private void layout(final String body) {
+        final Document doc = Jsoup.parse("<html><head><style>" + CSS + "</style></head><body>" + body + "</body></html>");
+
+        final SharedContext shared = new SharedContext(new NaiveUserAgent());
+        shared.setPrint(true);
+        shared.setInteractive(false);
+        shared.setNamespaceHandler(new HtmlNamespaceHandler());
+        shared.getCss().setDocumentContext(shared, shared.getNamespaceHandler(), doc, new NoUserInterface());
+
+        final LayoutContext c = shared.newLayoutContextInstance();
+        c.setFontContext(new Java2DFontContext(_g));
+        shared.getTextRenderer().setup(c.getFontContext());
+
+        final PageBox first = Layer.createPageBox(c, "first");
+        _root = BoxBuilder.createRootBox(c, doc);
+        _root.setContainingBlock(new ViewportBox(
+                new Rectangle(0, 0, first.getContentWidth(c), first.getContentHeight(c))));
+        _root.layout(c);
+    }
+
+    private int getY(final String id) {
+        return getBox(id).getAbsY();
+    }
+
+    private Box getBox(final String id) {
+        final Box result = find(_root, id);
+        if (result == null) {
+            throw new IllegalArgumentException("No box for #" + id);
+        }
+        return result;
+    }
+
+    private static Box find(final Box box, final String id) {
+        final Element e = box.getElement();
+        if (e != null && id.equals(e.id()) && ! box.isAnonymous()) {
+            return box;
+        }
+        for (int i = 0; i < box.getChildCount(); i++) {
+            final Box result = find(box.getChild(i), id);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private static class NoUserInterface implements UserInterface {
+        public boolean isHover(final Element e) {
+            return false;
+        }
+
+        public boolean isActive(final Element e) {
+            return false;
+        }
+
+        public boolean isFocus(final Element e) {
+            return false;
+        }
+    }
+}
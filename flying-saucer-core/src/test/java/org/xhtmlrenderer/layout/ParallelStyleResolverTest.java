@@ -0,0 +1,130 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.layout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Iterator;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+import org.xhtmlrenderer.css.constants.CSSName;
+import org.xhtmlrenderer.css.constants.IdentValue;
+import org.xhtmlrenderer.css.style.CalculatedStyle;
+import org.xhtmlrenderer.css.style.DerivedValue;
+import org.xhtmlrenderer.css.style.FSDerivedValue;
+import org.xhtmlrenderer.extend.UserInterface;
+import org.xhtmlrenderer.simple.HtmlNamespaceHandler;
+import org.xhtmlrenderer.swing.NaiveUserAgent;
+
+public class ParallelStyleResolverTest {
+    private static final String CSS =
+            "body { font-size: 10px; color: #333 }\n" +
+            "section { margin: 1em; font-size: 1.2em }\n" +
+            "section section { font-size: 80%; border: 1px solid red }\n" +
+            "h2 { font-size: 2em; page-break-after: avoid }\n" +
+            "p:first-child { font-weight: bold }\n" +
+            "p + p { text-indent: 2em }\n" +
+            ".odd { color: inherit; background-color: #eee }\n" +
+            ".odd em { color: blue }\n" +
+            "li { margin-left: 3ex }\n" +
+            "td.n { text-align: right }\n";
+
+    private static String html() {
+        final StringBuilder html = new StringBuilder("<html><head><style>" + CSS + "</style></head><body>");
+        for (int i = 0; i < 60; i++) {
+            html.append("<section class='").append(i % 2 == 0 ? "even" : "odd").append("'>");
+            html.append("<h2>Section ").append(i).append("</h2>");
+            for (int j = 0; j < 5; j++) {
+                html.append("<p style='margin-top: ").append(j).append("px'>Some <em>text</em> ").append(j).append("</p>");
+            }
+            html.append("<section><ul><li>a</li><li>b <span>c</span></li></ul>");
+            html.append("<table><tr><td>x</td><td class='n'>").append(i).append("</td></tr></table></section>");
+            html.append("</section>");
+        }
+        return html.append("</body></html>").toString();
+    }
+
+    @Test
+    public void parallelAndSerialStylingGiveTheSameStyles() {
+        final Document doc = Jsoup.parse(html());
+
+        final SharedContext serial = newContext(doc);
+
+        final SharedContext parallel = newContext(doc);
+        parallel.setParallelStyles(true);
+        parallel.resolveStyles(doc);
+        // Every style must have been worked out up front, styling an element
+        // now would fail without a matcher
+        parallel.getCss().resetDocumentContext();
+
+        int elements = 0;
+        for (final Element e : doc.getAllElements()) {
+            if (e instanceof Document) {
+                continue;
+            }
+            final CalculatedStyle expected = serial.getStyle(e);
+            final CalculatedStyle actual = parallel.getStyle(e);
+            for (final Iterator<String> i = CSSName.allCSS2PrimitivePropertyNames(); i.hasNext(); ) {
+                final CSSName name = CSSName.getByPropertyName(i.next());
+                assertEquals(e.outerHtml() + " " + name,
+                        describe(expected.valueByName(name)), describe(actual.valueByName(name)));
+            }
+            if (! (e.parent() instanceof Document)) {
+                assertSame(parallel.getStyle(e.parent()), actual.getParent());
+            }
+            elements++;
+        }
+        assertEquals(doc.getAllElements().size() - 1, elements);
+    }
+
+    private static String describe(final FSDerivedValue value) {
+        if (value == null || value instanceof IdentValue) {
+            return String.valueOf(value);
+        }
+        final StringBuilder result = new StringBuilder(value.getClass().getSimpleName());
+        if (value instanceof DerivedValue) {
+            result.append(' ').append(((DerivedValue) value).getStringValue());
+        }
+        return result.toString();
+    }
+
+    private static SharedContext newContext(final Document doc) {
+        final SharedContext c = new SharedContext(new NaiveUserAgent());
+        c.setNamespaceHandler(new HtmlNamespaceHandler());
+        c.getCss().setDocumentContext(c, c.getNamespaceHandler(), doc, new NoUserInterface());
+        return c;
+    }
+
+    private static class NoUserInterface implements UserInterface {
+        public boolean isHover(final Element e) {
+            return false;
+        }
+
+        public boolean isActive(final Element e) {
+            return false;
+        }
+
+        public boolean isFocus(final Element e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.swing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import javax.imageio.ImageIO;
+
+import org.jsoup.nodes.Document;
+import org.junit.After;
+import org.junit.Test;
+import org.xhtmlrenderer.resource.HTMLResource;
+import org.xhtmlrenderer.util.Configuration;
+
+public class ResourcePrefetcherTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final List<File> _files = new ArrayList<File>();
+
+    @After
+    public void tearDown() {
+        for (final File file : _files) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void fetchesThroughTheUserAgent() throws IOException {
+        final MemoryUserAgent uac = new MemoryUserAgent(0);
+        uac.put("http://a.test/page.css", "@import 'more.css'; p { background: url(p.png) }");
+        uac.put("http://a.test/more.css", "h1 { background: url('http://b.test/h1.png') }");
+        uac.put("http://a.test/p.png", "p");
+        uac.put("http://b.test/h1.png", "h1");
+        uac.put("http://a.test/img.png", "img");
+        uac.put("http://c.test/div.png", "div");
+        uac.setBaseURL("http://a.test/index.html");
+
+        uac.prefetchResources(HTMLResource.load(
+                "<html><head><link rel='stylesheet' href='page.css'/></head><body>" +
+                "<img src='img.png'/><div style='background: url(http://c.test/div.png)'></div>" +
+                "</body></html>").getDocument());
+
+        final List<String> opened = new ArrayList<String>(uac.getOpened());
+        Collections.sort(opened);
+        assertEquals(new ArrayList<String>(new TreeSet<String>(uac._content.keySet())), opened);
+
+        // Afterwards the user agent reads them from memory
+        for (final String uri : opened) {
+            assertArrayEquals(uri, uac._content.get(uri), uac.getBinaryResource(uri));
+        }
+        assertEquals(opened.size(), uac.getOpened().size());
+    }
+
+    @Test
+    public void limitsTheFetchesPerHost() throws IOException {
+        final int threadsPerHost = Configuration.valueAsInt("xr.load.prefetch.threads-per-host", 4);
+        final MemoryUserAgent uac = new MemoryUserAgent(100);
+        final StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < 3 * threadsPerHost; i++) {
+            for (final String host : new String[] { "a", "b" }) {
+                final String uri = "http://" + host + ".test/" + i + ".png";
+                uac.put(uri, uri);
+                html.append("<img src='").append(uri).append("'/>");
+            }
+        }
+        uac.setBaseURL("http://a.test/index.html");
+
+        uac.prefetchResources(HTMLResource.load(html.append("</body></html>").toString()).getDocument());
+
+        assertEquals(uac._content.size(), uac.getOpened().size());
+        assertEquals(threadsPerHost, uac.getMaxRunning("a.test"));
+        assertEquals(threadsPerHost, uac.getMaxRunning("b.test"));
+    }
+
+    @Test
+    public void fetchesFileAndJarURIs() throws IOException {
+        final File css = createFile(".css", "p { color: red }".getBytes(UTF_8));
+
+        final BufferedImage image = new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB);
+        final ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        final ByteArrayOutputStream jarContent = new ByteArrayOutputStream();
+        final JarOutputStream jar = new JarOutputStream(jarContent);
+        jar.putNextEntry(new ZipEntry("images/a.png"));
+        jar.write(png.toByteArray());
+        jar.close();
+        final File jarFile = createFile(".jar", jarContent.toByteArray());
+
+        final String cssURI = css.toURI().toString();
+        final String imageURI = "jar:" + jarFile.toURI() + "!/images/a.png";
+        final NaiveUserAgent uac = new NaiveUserAgent();
+        uac.setPrefetch(true);
+        uac.setBaseURL(cssURI);
+        final Document doc = HTMLResource.load("<html><head><link rel='stylesheet' href='" + cssURI + "'/></head>" +
+                "<body><img src='" + imageURI + "'/></body></html>").getDocument();
+        uac.prefetchResources(doc);
+
+        // Served from memory once the files are gone
+        tearDown();
+        assertFalse(css.exists());
+        assertArrayEquals("p { color: red }".getBytes(UTF_8), uac.getBinaryResource(cssURI));
+        assertNotNull(uac.getImageResource(imageURI).getImage());
+        assertEquals(3, uac.getImageResource(imageURI).getImage().getWidth());
+    }
+
+    private File createFile(final String suffix, final byte[] content) throws IOException {
+        final File result = File.createTempFile("prefetch", suffix);
+        _files.add(result);
+        final FileOutputStream out = new FileOutputStream(result);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return result;
+    }
+
+    /**
+     * Serves resources from memory, taking <code>delay</code> ms for each,
+     * and keeps track of how many are read from each host at a time.
+     */
+    private static class MemoryUserAgent extends NaiveUserAgent {
+        private final Map<String, byte[]> _content = new HashMap<String, byte[]>();
+        private final List<String> _opened = new ArrayList<String>();
+        private final Map<String, Integer> _running = new HashMap<String, Integer>();
+        private final Map<String, Integer> _maxRunning = new HashMap<String, Integer>();
+        private final long _delay;
+
+        MemoryUserAgent(final long delay) {
+            _delay = delay;
+            setPrefetch(true);
+        }
+
+        void put(final String uri, final String content) {
+            _content.put(uri, content.getBytes(UTF_8));
+        }
+
+        synchronized List<String> getOpened() {
+            return new ArrayList<String>(_opened);
+        }
+
+        synchronized int getMaxRunning(final String host) {
+            final Integer result = _maxRunning.get(host);
+            return result == null ? 0 : result.intValue();
+        }
+
+        protected InputStream openStream(final String uri) throws IOException {
+            final String host = new URL(uri).getHost();
+            synchronized (this) {
+                _opened.add(uri);
+                final Integer running = _running.get(host);
+                final int now = running == null ? 1 : running.intValue() + 1;
+                _running.put(host, now);
+                if (now > getMaxRunning(host)) {
+                    _maxRunning.put(host, now);
+                }
+            }
+            try {
+                Thread.sleep(_delay);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                synchronized (this) {
+                    _running.put(host, _running.get(host).intValue() - 1);
+                }
+            }
+            final byte[] content = _content.get(uri);
+            if (content == null) {
+                throw new FileNotFoundException(uri);
+            }
+            return new ByteArrayInputStream(content);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.junit.Test;
+
+public class ConcurrentIdentityMapTest {
+    @Test
+    public void tableCellsAreDistinctKeys() {
+        final Document doc = Jsoup.parse("<table><tr><td>a</td><td>b</td></tr><tr><td>c</td><td>d</td></tr></table>");
+        final Elements cells = doc.select("td");
+
+        // The reason for the map: jsoup gives all these cells the same hash code
+        assertEquals(cells.get(0).hashCode(), cells.get(3).hashCode());
+
+        final ConcurrentIdentityMap<Element, String> map = new ConcurrentIdentityMap<Element, String>();
+        for (final Element cell : cells) {
+            map.put(cell, cell.text());
+        }
+        assertEquals(4, map.size());
+        for (final Element cell : cells) {
+            assertEquals(cell.text(), map.get(cell));
+        }
+        assertNull(map.get(cells.get(0).clone()));
+    }
+
+    @Test
+    public void keysSurviveChangesToTheirAttributes() {
+        final Element e = Jsoup.parse("<p class='a'>x</p>").select("p").first();
+        final ConcurrentIdentityMap<Element, String> map = new ConcurrentIdentityMap<Element, String>();
+        final String value = "value";
+        map.put(e, value);
+
+        e.attr("class", "b");
+        assertSame(value, map.get(e));
+        assertSame(value, map.remove(e));
+        assertEquals(0, map.size());
+    }
+}
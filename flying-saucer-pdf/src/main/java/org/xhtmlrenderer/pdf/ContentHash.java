@@ -0,0 +1,62 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.pdf;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.xhtmlrenderer.util.XRRuntimeException;
+
+/**
+ * SHA-1 hashes identifying fonts and images by their contents.
+ */
+final class ContentHash {
+    private ContentHash() {
+    }
+
+    /**
+     * Returns the hash of <code>parts</code> in hex. Parts may be
+     * <code>null</code>, they are kept apart, so (a, bc) and (ab, c) have
+     * different hashes.
+     */
+    static String sha1(final byte[]... parts) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new XRRuntimeException(e.getMessage(), e);
+        }
+
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                final int length = parts[i] == null ? -1 : parts[i].length;
+                digest.update(new byte[] {
+                        0, (byte) (length >> 24), (byte) (length >> 16), (byte) (length >> 8), (byte) length });
+            }
+            if (parts[i] != null) {
+                digest.update(parts[i]);
+            }
+        }
+
+        final StringBuilder result = new StringBuilder(40);
+        for (final byte b : digest.digest()) {
+            result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return result.toString();
+    }
+}
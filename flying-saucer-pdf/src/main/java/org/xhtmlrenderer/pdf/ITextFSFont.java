@@ -22,12 +22,22 @@ package org.xhtmlrenderer.pdf;
 import org.xhtmlrenderer.pdf.ITextFontResolver.FontDescription;
 import org.xhtmlrenderer.render.FSFont;
 
+/**
+ * A list of fonts (the <code>font-family</code> list of an element) at a
+ * given size. Each character is drawn with the first font having a glyph
+ * for it, or with the first font if none has. Text is measured and drawn
+ * in runs of characters using the same font, see {@link #getRunEnd(String, int)}.
+ */
 public class ITextFSFont implements FSFont {
-    private final FontDescription _font;
+    private final FontDescription[] _fonts;
     private final float _size;
     
     public ITextFSFont(final FontDescription font, final float size) {
-        _font = font;
+        this(new FontDescription[] { font }, size);
+    }
+
+    public ITextFSFont(final FontDescription[] fonts, final float size) {
+        _fonts = fonts;
         _size = size;
     }
 
@@ -35,7 +45,90 @@ public class ITextFSFont implements FSFont {
         return _size;
     }
     
+    /**
+     * Returns the first font, which gives the metrics of the text.
+     */
     public FontDescription getFontDescription() {
-        return _font;
+        return _fonts[0];
+    }
+
+    /**
+     * Returns the font drawing the character (or surrogate pair) at
+     * <code>index</code>.
+     */
+    public FontDescription getFontDescription(final String string, final int index) {
+        if (_fonts.length == 1) {
+            return _fonts[0];
+        }
+        final int codePoint = string.codePointAt(index);
+        for (final FontDescription font : _fonts) {
+            if (font.canDisplay(codePoint)) {
+                return font;
+            }
+        }
+        return _fonts[0];
+    }
+
+    /**
+     * Returns the end of the run of characters starting at <code>start</code>
+     * which are drawn with the same font.
+     */
+    public int getRunEnd(final String string, final int start) {
+        final int length = string.length();
+        if (_fonts.length == 1) {
+            return length;
+        }
+        final FontDescription font = getFontDescription(string, start);
+        int result = start + Character.charCount(string.codePointAt(start));
+        while (result < length && getFontDescription(string, result) == font) {
+            result += Character.charCount(string.codePointAt(result));
+        }
+        return result;
+    }
+
+    /**
+     * Whether one of the fonts has a glyph for <code>codePoint</code>.
+     */
+    public boolean canDisplay(final int codePoint) {
+        for (final FontDescription font : _fonts) {
+            if (font.canDisplay(codePoint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the width of <code>string</code> in glyph space, see
+     * {@link FontDescription#getWidth(String)}.
+     */
+    public int getWidth(final String string) {
+        if (_fonts.length == 1) {
+            return _fonts[0].getWidth(string);
+        }
+        int result = 0;
+        for (int start = 0; start < string.length(); ) {
+            final int end = getRunEnd(string, start);
+            result += getFontDescription(string, start).getWidth(string, start, end);
+            start = end;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the widths in glyph space of every prefix of
+     * <code>string</code>, see {@link FontDescription#getPrefixWidths(String)}.
+     */
+    public int[] getPrefixWidths(final String string) {
+        if (_fonts.length == 1) {
+            return _fonts[0].getPrefixWidths(string);
+        }
+        final int[] result = new int[string.length() + 1];
+        for (int start = 0; start < string.length(); ) {
+            final int end = getRunEnd(string, start);
+            getFontDescription(string, start).addPrefixWidths(string, start, end, result);
+            start = end;
+        }
+        return result;
     }
 }
@@ -25,9 +25,15 @@ import com.lowagie.text.Image;
 
 public class ITextFSImage implements FSImage, Cloneable {
     private final Image _image;
+    private final ITextImageResampler.Source _source;
 
     public ITextFSImage(final Image image) {
+        this(image, null);
+    }
+
+    ITextFSImage(final Image image, final ITextImageResampler.Source source) {
         _image = image;
+        _source = source;
     }
 
     public int getWidth() {
@@ -63,7 +69,11 @@ public class ITextFSImage implements FSImage, Cloneable {
         return _image;
     }
 
+    ITextImageResampler.Source getSource() {
+        return _source;
+    }
+
     public Object clone() {
-        return new ITextFSImage(Image.getInstance(_image));
+        return new ITextFSImage(Image.getInstance(_image), _source);
     }
 }
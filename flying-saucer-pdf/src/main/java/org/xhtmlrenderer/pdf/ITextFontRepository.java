@@ -0,0 +1,329 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xhtmlrenderer.pdf.ITextFontResolver.FontDescription;
+import org.xhtmlrenderer.util.Configuration;
+import org.xhtmlrenderer.util.XRRuntimeException;
+
+import com.lowagie.text.DocumentException;
+import com.lowagie.text.pdf.BaseFont;
+
+/**
+ * Parsed fonts shared by all {@link ITextFontResolver}s of the process, so
+ * a font file or <code>@font-face</code> font is only read and parsed once
+ * and not again for every renderer. Fonts added from a file are identified
+ * by the file (and are parsed again if it changes), <code>@font-face</code>
+ * fonts by a hash of their contents. Both also by encoding and whether they
+ * are embedded.
+ * <p/>
+ * A <code>BaseFont</code> doesn't depend on the document it's used in, the
+ * subset of an embedded font is written for each document from the glyphs
+ * it uses. Fonts are parsed from their contents in memory, so subsets are
+ * written without reading the file again.
+ * <p/>
+ * The repository holds fonts up to a total size of font data, the least
+ * recently used fonts are dropped first. Resolvers keep the fonts they were
+ * given. The repository is thread-safe.
+ */
+public class ITextFontRepository {
+    private static final ITextFontRepository INSTANCE = new ITextFontRepository(
+            Configuration.valueAsInt("xr.pdf.font-cache-size", 64) * 1024L * 1024L);
+
+    private final long _maxSize;
+
+    // Guarded by this
+    private final Map<String, ParsedFont> _fonts = new LinkedHashMap<String, ParsedFont>(16, 0.75f, true);
+    private long _size;
+    private long _hits;
+    private long _misses;
+    private long _evictions;
+
+    /**
+     * @param maxSize the bytes of font data kept, 0 disables the repository
+     */
+    public ITextFontRepository(final long maxSize) {
+        _maxSize = maxSize;
+    }
+
+    /**
+     * Returns the repository used by all resolvers, which keeps the number
+     * of megabytes of font data given by <code>xr.pdf.font-cache-size</code>.
+     */
+    public static ITextFontRepository getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the TrueType or OpenType font in the file <code>path</code>,
+     * which is followed by <code>,index</code> for a font in a collection.
+     */
+    ParsedFont getTrueTypeFont(final String path, final String encoding, final boolean embedded)
+            throws DocumentException, IOException {
+        final File file = new File(getFileName(path));
+        final String key = getKey(new File(path).getAbsolutePath(), encoding, embedded);
+        ParsedFont result = get(key, file);
+        if (result == null) {
+            final byte[] contents = readFile(file);
+            result = add(key, createTrueTypeFont(path, encoding, embedded, contents, false), file);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the Type 1 font with the metrics in the AFM or PFM file
+     * <code>path</code> and, if it's embedded, the glyphs in the PFB or PFA
+     * file <code>pathToPFB</code>.
+     */
+    ParsedFont getType1Font(final String path, final String encoding, final boolean embedded, final String pathToPFB)
+            throws DocumentException, IOException {
+        final File file = new File(path);
+        final String key = getKey(file.getAbsolutePath() + (pathToPFB == null ? "" : "," + new File(pathToPFB).getAbsolutePath()),
+                encoding, embedded);
+        ParsedFont result = get(key, file);
+        if (result == null) {
+            final byte[] pfb = pathToPFB == null ? null : readFile(new File(pathToPFB));
+            final BaseFont font = BaseFont.createFont(path, encoding, embedded, false, null, pfb);
+            result = add(key, createType1Font(font, false, pfb == null ? 0 : pfb.length), file);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the font of a <code>@font-face</code> rule, <code>afmttf</code>
+     * is the TrueType font or the Type 1 metrics and <code>pfb</code> the
+     * Type 1 glyphs. The type of font is given by the extension of
+     * <code>uri</code>.
+     */
+    ParsedFont getFontFaceFont(final String uri, final String encoding, final boolean embedded, final byte[] afmttf, final byte[] pfb)
+            throws DocumentException, IOException {
+        final String lower = uri.toLowerCase();
+        final boolean trueType = lower.endsWith(".otf") || lower.endsWith(".ttf") || lower.indexOf(".ttc,") != -1;
+        final String key = getKey((trueType ? "ttf:" : "type1:") + ContentHash.sha1(afmttf, pfb), encoding, embedded);
+        ParsedFont result = get(key, null);
+        if (result == null) {
+            if (trueType) {
+                result = createTrueTypeFont(uri, encoding, embedded, afmttf, true);
+            } else {
+                final String name = uri.substring(0, uri.length()-4) + ".afm";
+                final BaseFont font = BaseFont.createFont(
+                        name, encoding, embedded, false, afmttf, pfb);
+                result = createType1Font(font, true, (afmttf == null ? 0 : afmttf.length) + (pfb == null ? 0 : pfb.length));
+            }
+            result = add(key, result, null);
+        }
+        return result;
+    }
+
+    private ParsedFont createTrueTypeFont(
+            final String path, final String encoding, final boolean embedded, final byte[] contents, final boolean fromFontFace)
+            throws DocumentException, IOException {
+        final BaseFont font = BaseFont.createFont(path, encoding, embedded, false, contents, null);
+
+        final FontDescription descr = new FontDescription(font);
+        try {
+            TrueTypeUtil.populateDescription(path, contents, font, descr);
+        } catch (final Exception e) {
+            throw new XRRuntimeException(e.getMessage(), e);
+        }
+        descr.setFromFontFace(fromFontFace);
+
+        return new ParsedFont(descr, TrueTypeUtil.getFamilyNames(font), contents.length);
+    }
+
+    private ParsedFont createType1Font(final BaseFont font, final boolean fromFontFace, final long size) {
+        final FontDescription descr = new FontDescription(font);
+        descr.setFromFontFace(fromFontFace);
+        // XXX Need to set weight, underline position, etc.  This information
+        // is contained in the AFM file (and even parsed by Type1Font), but
+        // unfortunately it isn't exposed to the caller.
+        return new ParsedFont(descr, new String[] { font.getFamilyFontName()[0][3] }, size);
+    }
+
+    private synchronized ParsedFont get(final String key, final File file) {
+        final ParsedFont result = _fonts.get(key);
+        if (result != null && (file == null ||
+                (result._lastModified == file.lastModified() && result._fileLength == file.length()))) {
+            _hits++;
+            return result;
+        }
+        _misses++;
+        return null;
+    }
+
+    /**
+     * Keeps <code>font</code> unless another thread has added the same font
+     * meanwhile, and returns the font kept.
+     */
+    private synchronized ParsedFont add(final String key, final ParsedFont font, final File file) {
+        if (file != null) {
+            font._lastModified = file.lastModified();
+            font._fileLength = file.length();
+        }
+        if (_maxSize <= 0 || font._size > _maxSize) {
+            return font;
+        }
+
+        final ParsedFont current = _fonts.get(key);
+        if (current != null) {
+            if (file == null || current._lastModified == font._lastModified && current._fileLength == font._fileLength) {
+                return current;
+            }
+            _fonts.remove(key);
+            _size -= current._size;
+        }
+
+        _fonts.put(key, font);
+        _size += font._size;
+        for (final Iterator<ParsedFont> i = _fonts.values().iterator(); _size > _maxSize; ) {
+            final ParsedFont eldest = i.next();
+            i.remove();
+            _size -= eldest._size;
+            _evictions++;
+        }
+        return font;
+    }
+
+    public synchronized void clear() {
+        _fonts.clear();
+        _size = 0;
+    }
+
+    /**
+     * @return the bytes of font data held
+     */
+    public synchronized long getSize() {
+        return _size;
+    }
+
+    public long getMaxSize() {
+        return _maxSize;
+    }
+
+    /**
+     * @return the number of fonts held
+     */
+    public synchronized int getFontCount() {
+        return _fonts.size();
+    }
+
+    /**
+     * @return the number of requests for a font which had already been parsed
+     */
+    public synchronized long getHitCount() {
+        return _hits;
+    }
+
+    /**
+     * @return the number of requests for a font which had to be parsed
+     */
+    public synchronized long getMissCount() {
+        return _misses;
+    }
+
+    /**
+     * @return the number of fonts dropped to stay within the maximum size
+     */
+    public synchronized long getEvictionCount() {
+        return _evictions;
+    }
+
+    public synchronized void resetStatistics() {
+        _hits = 0;
+        _misses = 0;
+        _evictions = 0;
+    }
+
+    private static String getKey(final String source, final String encoding, final boolean embedded) {
+        return source + "\n" + encoding + "\n" + embedded;
+    }
+
+    private static String getFileName(final String path) {
+        final int idx = path.toLowerCase().indexOf(".ttc,");
+        if (idx < 0) {
+            return path;
+        } else {
+            return path.substring(0, idx + 4);
+        }
+    }
+
+    private static byte[] readFile(final File f) throws IOException {
+        if (f.exists()) {
+            final ByteArrayOutputStream result = new ByteArrayOutputStream((int)f.length());
+            InputStream is = null;
+            try {
+                is = new FileInputStream(f);
+                final byte[] buf = new byte[10240];
+                int i;
+                while ( (i = is.read(buf)) != -1) {
+                    result.write(buf, 0, i);
+                }
+                is.close();
+                is = null;
+
+                return result.toByteArray();
+            } finally {
+                if (is != null) {
+                    try {
+                        is.close();
+                    } catch (final IOException e) {
+                        // ignore
+                    }
+                }
+            }
+        } else {
+            throw new IOException("File " + f.getPath() + " does not exist or is not accessible");
+        }
+    }
+
+    /**
+     * A parsed font with its metrics. The description is shared by all
+     * resolvers using the font and must not be modified.
+     */
+    static final class ParsedFont {
+        private final FontDescription _description;
+        private final String[] _familyNames;
+        private final long _size;
+
+        private long _lastModified;
+        private long _fileLength;
+
+        ParsedFont(final FontDescription description, final String[] familyNames, final long size) {
+            _description = description;
+            _familyNames = familyNames;
+            _size = size;
+        }
+
+        FontDescription getDescription() {
+            return _description;
+        }
+
+        String[] getFamilyNames() {
+            return _familyNames;
+        }
+    }
+}
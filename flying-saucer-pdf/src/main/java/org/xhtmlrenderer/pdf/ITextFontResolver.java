@@ -33,21 +33,41 @@ import org.xhtmlrenderer.css.value.FontSpecification;
 import org.xhtmlrenderer.extend.FontResolver;
 import org.xhtmlrenderer.layout.SharedContext;
 import org.xhtmlrenderer.render.FSFont;
-import org.xhtmlrenderer.util.XRRuntimeException;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class ITextFontResolver implements FontResolver {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ITextFontResolver.class);
-    private Map<String, FontFamily> _fontFamilies = createInitialFontMap();
+
+    /**
+     * The built-in fonts are the same for every resolver, so they are only
+     * created once. This map is never modified, resolvers work on a copy.
+     */
+    private static Map<String, FontFamily> _initialFontFamilies;
+
+    private Map<String, FontFamily> _fontFamilies;
     private Map<String, FontDescription> _fontCache = new HashMap<String, FontDescription>();
+    private Map<String, FontDescription[]> _fallbackCache = new HashMap<String, FontDescription[]>();
 
     private final SharedContext _sharedContext;
 
     public ITextFontResolver(final SharedContext sharedContext) {
         _sharedContext = sharedContext;
+        _fontFamilies = copyFontFamilies(getInitialFontMap());
+    }
+
+    /**
+     * Creates a resolver which starts out with all the fonts currently known
+     * to <code>fonts</code>. Font descriptions (and the underlying
+     * <code>BaseFont</code>s) are shared with <code>fonts</code>, fonts added
+     * to either resolver later on are not.
+     */
+    public ITextFontResolver(final SharedContext sharedContext, final ITextFontResolver fonts) {
+        _sharedContext = sharedContext;
+        _fontFamilies = copyFontFamilies(fonts._fontFamilies);
     }
 
     /**
@@ -63,10 +83,9 @@ public class ITextFontResolver implements FontResolver {
      * @return set of all family names for the font file, as reported by iText libraries
      */
     public static Set<String> getDistinctFontFamilyNames(final String path, final String encoding, final boolean embedded) {
-        BaseFont font = null;
         try {
-            font = BaseFont.createFont(path, encoding, embedded);
-            final String[] fontFamilyNames = TrueTypeUtil.getFamilyNames(font);
+            final String[] fontFamilyNames =
+                    ITextFontRepository.getInstance().getTrueTypeFont(path, encoding, embedded).getFamilyNames();
             final Set<String> distinct = new HashSet<String>();
             for (final String fontFamilyName : fontFamilyNames) {
                 distinct.add(fontFamilyName);
@@ -84,12 +103,14 @@ public class ITextFontResolver implements FontResolver {
     }
 
     public void flushCache() {
-        _fontFamilies = createInitialFontMap();
+        _fontFamilies = copyFontFamilies(getInitialFontMap());
         _fontCache = new HashMap<String, FontDescription>();
+        _fallbackCache = new HashMap<String, FontDescription[]>();
     }
 
     public void flushFontFaceFonts() {
         _fontCache = new HashMap<String, FontDescription>();
+        _fallbackCache = new HashMap<String, FontDescription[]>();
 
         for (final Iterator<FontFamily> i = _fontFamilies.values().iterator(); i.hasNext(); ) {
             final FontFamily family = i.next();
@@ -191,27 +212,8 @@ public class ITextFontResolver implements FontResolver {
             throws DocumentException, IOException {
         final String lower = path.toLowerCase();
         if (lower.endsWith(".otf") || lower.endsWith(".ttf") || lower.indexOf(".ttc,") != -1) {
-            final BaseFont font = BaseFont.createFont(path, encoding, embedded);
-
-            String[] fontFamilyNames;
-            if (fontFamilyNameOverride != null) {
-                fontFamilyNames = new String[] { fontFamilyNameOverride };
-            } else {
-                fontFamilyNames = TrueTypeUtil.getFamilyNames(font);
-            }
-
-            for (final String fontFamilyName : fontFamilyNames) {
-                final FontFamily fontFamily = getFontFamily(fontFamilyName);
-
-                final FontDescription descr = new FontDescription(font);
-                try {
-                    TrueTypeUtil.populateDescription(path, font, descr);
-                } catch (final Exception e) {
-                    throw new XRRuntimeException(e.getMessage(), e);
-                }
-
-                fontFamily.addFontDescription(descr);
-            }
+            addParsedFont(ITextFontRepository.getInstance().getTrueTypeFont(path, encoding, embedded),
+                    fontFamilyNameOverride);
         } else if (lower.endsWith(".ttc")) {
             final String[] names = BaseFont.enumerateTTCNames(path);
             for (int i = 0; i < names.length; i++) {
@@ -222,23 +224,8 @@ public class ITextFontResolver implements FontResolver {
                 throw new IOException("When embedding a font, path to PFB/PFA file must be specified");
             }
 
-            final BaseFont font = BaseFont.createFont(
-                    path, encoding, embedded, false, null, readFile(pathToPFB));
-
-            String fontFamilyName;
-            if (fontFamilyNameOverride != null) {
-                fontFamilyName = fontFamilyNameOverride;
-            } else {
-                fontFamilyName = font.getFamilyFontName()[0][3];
-            }
-
-            final FontFamily fontFamily = getFontFamily(fontFamilyName);
-
-            final FontDescription descr = new FontDescription(font);
-            // XXX Need to set weight, underline position, etc.  This information
-            // is contained in the AFM file (and even parsed by Type1Font), but
-            // unfortunately it isn't exposed to the caller.
-            fontFamily.addFontDescription(descr);
+            addParsedFont(ITextFontRepository.getInstance().getType1Font(path, encoding, embedded, pathToPFB),
+                    fontFamilyNameOverride);
         } else {
             throw new IOException("Unsupported font type");
         }
@@ -249,79 +236,30 @@ public class ITextFontResolver implements FontResolver {
             throws DocumentException, IOException {
         final String lower = uri.toLowerCase();
         if (lower.endsWith(".otf") || lower.endsWith(".ttf") || lower.indexOf(".ttc,") != -1) {
-            final BaseFont font = BaseFont.createFont(uri, encoding, embedded, false, afmttf, pfb);
-
-            String[] fontFamilyNames;
-            if (fontFamilyNameOverride != null) {
-                fontFamilyNames = new String[] { fontFamilyNameOverride };
-            } else {
-                fontFamilyNames = TrueTypeUtil.getFamilyNames(font);
-            }
-
-            for (final String fontFamilyName : fontFamilyNames) {
-                final FontFamily fontFamily = getFontFamily(fontFamilyName);
-
-                final FontDescription descr = new FontDescription(font);
-                try {
-                    TrueTypeUtil.populateDescription(uri, afmttf, font, descr);
-                } catch (final Exception e) {
-                    throw new XRRuntimeException(e.getMessage(), e);
-                }
-
-                descr.setFromFontFace(true);
-
-                fontFamily.addFontDescription(descr);
-            }
+            addParsedFont(ITextFontRepository.getInstance().getFontFaceFont(uri, encoding, embedded, afmttf, pfb),
+                    fontFamilyNameOverride);
         } else if (lower.endsWith(".afm") || lower.endsWith(".pfm") || lower.endsWith(".pfb") || lower.endsWith(".pfa")) {
             if (embedded && pfb == null) {
                 throw new IOException("When embedding a font, path to PFB/PFA file must be specified");
             }
 
-            final String name = uri.substring(0, uri.length()-4) + ".afm";
-            final BaseFont font = BaseFont.createFont(
-                    name, encoding, embedded, false, afmttf, pfb);
-
-            final String fontFamilyName = font.getFamilyFontName()[0][3];
-            final FontFamily fontFamily = getFontFamily(fontFamilyName);
-
-            final FontDescription descr = new FontDescription(font);
-            descr.setFromFontFace(true);
-            // XXX Need to set weight, underline position, etc.  This information
-            // is contained in the AFM file (and even parsed by Type1Font), but
-            // unfortunately it isn't exposed to the caller.
-            fontFamily.addFontDescription(descr);
+            addParsedFont(ITextFontRepository.getInstance().getFontFaceFont(uri, encoding, embedded, afmttf, pfb),
+                    null);
         } else {
             throw new IOException("Unsupported font type");
         }
     }
 
-    private byte[] readFile(final String path) throws IOException {
-        final File f = new File(path);
-        if (f.exists()) {
-            final ByteArrayOutputStream result = new ByteArrayOutputStream((int)f.length());
-            InputStream is = null;
-            try {
-                is = new FileInputStream(path);
-                final byte[] buf = new byte[10240];
-                int i;
-                while ( (i = is.read(buf)) != -1) {
-                    result.write(buf, 0, i);
-                }
-                is.close();
-                is = null;
-
-                return result.toByteArray();
-            } finally {
-                if (is != null) {
-                    try {
-                        is.close();
-                    } catch (final IOException e) {
-                        // ignore
-                    }
-                }
-            }
+    private void addParsedFont(final ITextFontRepository.ParsedFont font, final String fontFamilyNameOverride) {
+        String[] fontFamilyNames;
+        if (fontFamilyNameOverride != null) {
+            fontFamilyNames = new String[] { fontFamilyNameOverride };
         } else {
-            throw new IOException("File " + path + " does not exist or is not accessible");
+            fontFamilyNames = font.getFamilyNames();
+        }
+
+        for (final String fontFamilyName : fontFamilyNames) {
+            getFontFamily(fontFamilyName).addFontDescription(font.getDescription());
         }
     }
 
@@ -335,21 +273,44 @@ public class ITextFontResolver implements FontResolver {
         return fontFamily;
     }
 
+    /**
+     * Returns the fonts of <code>families</code> which are available, followed
+     * by the default serif font. Characters missing from the first font are
+     * drawn with the next font having them, see {@link ITextFSFont}.
+     */
     private FSFont resolveFont(final SharedContext ctx, final String[] families, final float size, final IdentValue weight, IdentValue style, final IdentValue variant) {
         if (! (style == IdentValue.NORMAL || style == IdentValue.OBLIQUE
                 || style == IdentValue.ITALIC)) {
             style = IdentValue.NORMAL;
         }
+
+        final StringBuilder key = new StringBuilder(getHashName("", weight, style));
         if (families != null) {
             for (final String family : families) {
-                final FSFont font = resolveFont(ctx, family, size, weight, style, variant);
-                if (font != null) {
-                    return font;
+                key.append(',').append(family);
+            }
+        }
+        final String cacheKey = key.toString();
+        FontDescription[] result = _fallbackCache.get(cacheKey);
+        if (result == null) {
+            final List<FontDescription> fonts = new ArrayList<FontDescription>();
+            if (families != null) {
+                for (final String family : families) {
+                    addFontDescription(fonts, resolveFontDescription(family, weight, style));
                 }
             }
+            addFontDescription(fonts, resolveFontDescription("Serif", weight, style));
+            result = fonts.toArray(new FontDescription[fonts.size()]);
+            _fallbackCache.put(cacheKey, result);
         }
 
-        return resolveFont(ctx, "Serif", size, weight, style, variant);
+        return new ITextFSFont(result, size);
+    }
+
+    private void addFontDescription(final List<FontDescription> fonts, final FontDescription font) {
+        if (font != null && ! fonts.contains(font)) {
+            fonts.add(font);
+        }
     }
 
     private String normalizeFontFamily(final String fontFamily) {
@@ -376,13 +337,13 @@ public class ITextFontResolver implements FontResolver {
         return result;
     }
 
-    private FSFont resolveFont(final SharedContext ctx, final String fontFamily, final float size, final IdentValue weight, final IdentValue style, final IdentValue variant) {
+    private FontDescription resolveFontDescription(final String fontFamily, final IdentValue weight, final IdentValue style) {
         final String normalizedFontFamily = normalizeFontFamily(fontFamily);
 
         final String cacheKey = getHashName(normalizedFontFamily, weight, style);
         FontDescription result = _fontCache.get(cacheKey);
         if (result != null) {
-            return new ITextFSFont(result, size);
+            return result;
         }
 
         final FontFamily family = _fontFamilies.get(normalizedFontFamily);
@@ -390,7 +351,7 @@ public class ITextFontResolver implements FontResolver {
             result = family.match(convertWeightToInt(weight), style);
             if (result != null) {
                 _fontCache.put(cacheKey, result);
-                return new ITextFSFont(result, size);
+                return result;
             }
         }
 
@@ -435,6 +396,32 @@ public class ITextFontResolver implements FontResolver {
         return name + "-" + weight + "-" + style;
     }
 
+    private static synchronized Map<String, FontFamily> getInitialFontMap() {
+        if (_initialFontFamilies == null) {
+            _initialFontFamilies = createInitialFontMap();
+        }
+        return _initialFontFamilies;
+    }
+
+    /**
+     * Copies the families, but not the font descriptions in them. Names
+     * which refer to the same family (e.g. Serif and TimesRoman) still do
+     * so in the copy.
+     */
+    private static Map<String, FontFamily> copyFontFamilies(final Map<String, FontFamily> fontFamilies) {
+        final Map<String, FontFamily> result = new HashMap<String, FontFamily>(fontFamilies.size() * 2);
+        final Map<FontFamily, FontFamily> copies = new IdentityHashMap<FontFamily, FontFamily>();
+        for (final Map.Entry<String, FontFamily> entry : fontFamilies.entrySet()) {
+            FontFamily copy = copies.get(entry.getValue());
+            if (copy == null) {
+                copy = new FontFamily(entry.getValue());
+                copies.put(entry.getValue(), copy);
+            }
+            result.put(entry.getKey(), copy);
+        }
+        return result;
+    }
+
     private static Map<String, FontFamily> createInitialFontMap() {
         final HashMap<String, FontFamily> result = new HashMap<String, FontFamily>();
 
@@ -592,6 +579,13 @@ public class ITextFontResolver implements FontResolver {
         public FontFamily() {
         }
 
+        public FontFamily(final FontFamily fontFamily) {
+            _name = fontFamily._name;
+            if (fontFamily._fontDescriptions != null) {
+                _fontDescriptions = new ArrayList<FontDescription>(fontFamily._fontDescriptions);
+            }
+        }
+
         public List<FontDescription> getFontDescriptions() {
             return _fontDescriptions;
         }
@@ -722,6 +716,17 @@ public class ITextFontResolver implements FontResolver {
 
         private boolean _isFromFontFace;
 
+        // advance + 1 of each char in glyph space, in lazily created pages of 256 chars.
+        // Descriptions may be shared by resolvers on different threads, racing
+        // writers just store the same values.
+        private volatile int[][] _advances;
+
+        // Whether the font has a glyph for each char, in lazily created
+        // blocks of 256 chars (bit 0 of the first long is U+xx00). Unlike
+        // a missing advance an unset bit is an answer, so a block is only
+        // published through the atomic array once all its bits are set.
+        private volatile AtomicReferenceArray<long[]> _coverage;
+
         public FontDescription() {
         }
 
@@ -742,6 +747,108 @@ public class ITextFontResolver implements FontResolver {
 
         public void setFont(final BaseFont font) {
             _font = font;
+            _advances = null;
+            _coverage = null;
+        }
+
+        /**
+         * Whether the font has a glyph for <code>codePoint</code> in its
+         * encoding. The glyphs of the BMP are looked up once per block of
+         * 256 characters.
+         */
+        public boolean canDisplay(final int codePoint) {
+            if (codePoint > 0xffff) {
+                return _font.charExists(codePoint);
+            }
+            AtomicReferenceArray<long[]> coverage = _coverage;
+            if (coverage == null) {
+                coverage = new AtomicReferenceArray<long[]>(256);
+                _coverage = coverage;
+            }
+            long[] block = coverage.get(codePoint >> 8);
+            if (block == null) {
+                block = new long[4];
+                final int first = codePoint & 0xff00;
+                for (int i = 0; i < 256; i++) {
+                    if (_font.charExists(first + i)) {
+                        block[i >> 6] |= 1L << (i & 63);
+                    }
+                }
+                coverage.set(codePoint >> 8, block);
+            }
+            return (block[(codePoint & 0xff) >> 6] & (1L << (codePoint & 63))) != 0;
+        }
+
+        /**
+         * Returns the width of <code>string</code> in glyph space (thousandths
+         * of the font size), the same as <code>BaseFont.getWidth(String)</code>.
+         * The advance of each character is only asked of the font once.
+         */
+        public int getWidth(final String string) {
+            return getWidth(string, 0, string.length());
+        }
+
+        public int getWidth(final String string, final int start, final int end) {
+            int result = 0;
+            for (int i = start; i < end; i++) {
+                final char c = string.charAt(i);
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(string.charAt(i + 1))) {
+                    result += _font.getWidth(string.substring(i, i + 2));
+                    i++;
+                } else {
+                    result += getAdvance(c);
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Returns the widths in glyph space of every prefix of <code>string</code>.
+         * Element <code>n</code> is the width of the first <code>n</code>
+         * characters, the two halves of a surrogate pair are measured together.
+         */
+        public int[] getPrefixWidths(final String string) {
+            final int[] result = new int[string.length() + 1];
+            addPrefixWidths(string, 0, string.length(), result);
+            return result;
+        }
+
+        /**
+         * Fills elements <code>start + 1</code> to <code>end</code> of
+         * <code>result</code> with the prefix widths of the characters from
+         * <code>start</code> to <code>end</code>, starting at the width
+         * already in element <code>start</code>.
+         */
+        void addPrefixWidths(final String string, final int start, final int end, final int[] result) {
+            for (int i = start; i < end; i++) {
+                final char c = string.charAt(i);
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(string.charAt(i + 1))) {
+                    result[i + 1] = result[i];
+                    result[i + 2] = result[i] + _font.getWidth(string.substring(i, i + 2));
+                    i++;
+                } else {
+                    result[i + 1] = result[i] + getAdvance(c);
+                }
+            }
+        }
+
+        private int getAdvance(final char c) {
+            int[][] advances = _advances;
+            if (advances == null) {
+                advances = new int[256][];
+                _advances = advances;
+            }
+            int[] page = advances[c >> 8];
+            if (page == null) {
+                page = new int[256];
+                advances[c >> 8] = page;
+            }
+            int result = page[c & 0xff];
+            if (result == 0) {
+                result = _font.getWidth(String.valueOf(c)) + 1;
+                page[c & 0xff] = result;
+            }
+            return result - 1;
         }
 
         public int getWeight() {
@@ -0,0 +1,241 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.pdf;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xhtmlrenderer.util.Configuration;
+import org.xhtmlrenderer.util.DownscaleQuality;
+import org.xhtmlrenderer.util.ImageUtil;
+import org.xhtmlrenderer.util.ScalingOptions;
+
+import com.lowagie.text.Image;
+import com.lowagie.text.Jpeg;
+
+/**
+ * Reduces images to the resolution they are printed at before they are
+ * written to a PDF. An image with more pixels than needed for the size
+ * it's drawn at and <code>xr.pdf.image.downsample.dpi</code> is scaled
+ * down with {@link ImageUtil#getScaledInstance(ScalingOptions, BufferedImage)}
+ * and compressed again, as JPEG or losslessly (Flate). The reduced images
+ * are cached by the contents of the original image and their size, for all
+ * documents of the process.
+ * <p/>
+ * Reducing images is off by default, it's turned on with
+ * <code>xr.pdf.image.downsample</code>.
+ */
+public class ITextImageResampler {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ITextImageResampler.class);
+
+    /**
+     * How reduced images are compressed.
+     */
+    public enum Compression {
+        /** JPEG images as JPEG, others losslessly */
+        AUTO,
+        /** as JPEG, unless the image is transparent */
+        JPEG,
+        /** losslessly */
+        FLATE
+    }
+
+    private static final ITextImageResampler INSTANCE = new ITextImageResampler(
+            Configuration.isTrue("xr.pdf.image.downsample", false),
+            Configuration.valueAsFloat("xr.pdf.image.downsample.dpi", 150f),
+            Configuration.valueAsFloat("xr.pdf.image.downsample.threshold", 1.5f),
+            Compression.valueOf(Configuration.valueFor("xr.pdf.image.downsample.compression", Compression.AUTO.toString())),
+            Configuration.valueAsFloat("xr.pdf.image.downsample.jpeg-quality", 0.85f),
+            DownscaleQuality.valueOf(Configuration.valueFor("xr.pdf.image.downsample.quality", DownscaleQuality.HIGH_QUALITY.toString())),
+            Configuration.valueAsInt("xr.pdf.image.downsample.cache-size", 64));
+
+    private final boolean _enabled;
+    private final float _dpi;
+    private final float _threshold;
+    private final Compression _compression;
+    private final float _jpegQuality;
+    private final DownscaleQuality _quality;
+    private final int _cacheSize;
+
+    // Guarded by this
+    private final Map<String, Image> _cache = new LinkedHashMap<String, Image>(16, 0.75f, true);
+
+    /**
+     * @param dpi the resolution images are reduced to
+     * @param threshold how many times more pixels than needed (in each
+     * direction) an image must have to be reduced
+     * @param jpegQuality the quality of JPEG compression, from 0 to 1
+     * @param cacheSize the number of reduced images kept
+     */
+    public ITextImageResampler(final boolean enabled, final float dpi, final float threshold,
+            final Compression compression, final float jpegQuality, final DownscaleQuality quality, final int cacheSize) {
+        _enabled = enabled;
+        _dpi = dpi;
+        _threshold = threshold;
+        _compression = compression;
+        _jpegQuality = jpegQuality;
+        _quality = quality;
+        _cacheSize = cacheSize;
+    }
+
+    /**
+     * Returns the resampler used by all renderers, configured by the
+     * <code>xr.pdf.image.downsample</code> properties.
+     */
+    public static ITextImageResampler getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return _enabled;
+    }
+
+    /**
+     * Returns what is needed to reduce <code>image</code>, which was read from
+     * <code>data</code> with the {@link ContentHash} <code>hash</code>, or <code>null</code> if images aren't reduced.
+     */
+    Source createSource(final byte[] data, final String hash, final Image image) {
+        if (! _enabled || image.getWidth() <= 0 || image.getHeight() <= 0) {
+            return null;
+        }
+        return new Source(data, hash, image instanceof Jpeg, (int) image.getWidth(), (int) image.getHeight());
+    }
+
+    /**
+     * Returns the image to write for <code>image</code> drawn
+     * <code>width</code> by <code>height</code> points large, the image
+     * itself if it doesn't have (enough) more pixels than needed.
+     */
+    Image resample(final ITextFSImage image, final double width, final double height) {
+        final Source source = image.getSource();
+        if (source == null) {
+            return image.getImage();
+        }
+
+        final int targetWidth = Math.max(1, (int) Math.ceil(width * _dpi / 72));
+        final int targetHeight = Math.max(1, (int) Math.ceil(height * _dpi / 72));
+        if (source._width <= targetWidth * _threshold && source._height <= targetHeight * _threshold) {
+            return image.getImage();
+        }
+
+        final String key = source.getHash() + "@" + targetWidth + "x" + targetHeight;
+        Image result;
+        synchronized (this) {
+            result = _cache.get(key);
+        }
+        if (result != null) {
+            return result;
+        }
+
+        try {
+            final BufferedImage original = ImageIO.read(new ByteArrayInputStream(source._data));
+            if (original == null) {
+                // Not a format ImageIO can read, e.g. WMF. The renderer's
+                // own image isn't cached, it mustn't outlive the renderer.
+                return image.getImage();
+            }
+            final BufferedImage scaled = ImageUtil.getScaledInstance(
+                    new ScalingOptions(targetWidth, targetHeight, BufferedImage.TYPE_INT_ARGB, _quality), original);
+            final boolean transparent = original.getColorModel().hasAlpha();
+            if (! transparent && (_compression == Compression.JPEG ||
+                    (_compression == Compression.AUTO && source._jpeg))) {
+                result = Image.getInstance(encodeJpeg(scaled));
+            } else {
+                result = Image.getInstance(scaled, null);
+            }
+        } catch (final Exception e) {
+            LOGGER.warn("Can't reduce image, it's written as it is", e);
+            return image.getImage();
+        }
+
+        synchronized (this) {
+            _cache.put(key, result);
+            for (final Iterator<Image> i = _cache.values().iterator(); _cache.size() > _cacheSize; ) {
+                i.next();
+                i.remove();
+            }
+        }
+        return result;
+    }
+
+    private byte[] encodeJpeg(final BufferedImage image) throws IOException {
+        BufferedImage rgb = image;
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            final Graphics2D g = rgb.createGraphics();
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+        }
+
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final ImageOutputStream out = ImageIO.createImageOutputStream(result);
+        try {
+            final ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(_jpegQuality);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(rgb, null, null), param);
+        } finally {
+            writer.dispose();
+            out.close();
+        }
+        return result.toByteArray();
+    }
+
+    public synchronized void clear() {
+        _cache.clear();
+    }
+
+    /**
+     * The encoded original of an image, shared by its copies.
+     */
+    static final class Source {
+        private final byte[] _data;
+        private final String _hash;
+        private final boolean _jpeg;
+        private final int _width;
+        private final int _height;
+
+        Source(final byte[] data, final String hash, final boolean jpeg, final int width, final int height) {
+            _data = data;
+            _hash = hash;
+            _jpeg = jpeg;
+            _width = width;
+            _height = height;
+        }
+
+        String getHash() {
+            return _hash;
+        }
+    }
+}
@@ -34,6 +34,7 @@ import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -85,6 +86,8 @@ import org.xhtmlrenderer.util.XRRuntimeException;
 
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.Image;
+import com.lowagie.text.pdf.BaseFont;
+import com.lowagie.text.pdf.ByteBuffer;
 import com.lowagie.text.pdf.CMYKColor;
 import com.lowagie.text.pdf.PdfAction;
 import com.lowagie.text.pdf.PdfAnnotation;
@@ -105,6 +108,7 @@ import com.lowagie.text.pdf.PdfShadingPattern;
 import com.lowagie.text.pdf.PdfString;
 import com.lowagie.text.pdf.PdfTextArray;
 import com.lowagie.text.pdf.PdfWriter;
+import com.lowagie.text.pdf.RandomAccessFileOrArray;
 /**
  * This class is largely based on {@link com.lowagie.text.pdf.PdfGraphics2D}.
  * See <a href="http://sourceforge.net/projects/itext/">http://sourceforge.net/
@@ -123,6 +127,11 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 
     private static final boolean ROUND_RECT_DIMENSIONS_DOWN = Configuration.isTrue("xr.pdf.round.rect.dimensions.down", false);
 
+    private static final boolean REPLACE_MISSING_CHARACTERS =
+            Configuration.isTrue("xr.renderer.replace-missing-characters", false);
+    private static final char MISSING_CHARACTER_REPLACEMENT =
+            Configuration.valueAsChar("xr.renderer.missing-character-replacement", '#');
+
     private PdfContentByte _currentPage;
     private float _pageHeight;
 
@@ -147,6 +156,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     private PdfWriter _writer;
 
     private final Map<URI, PdfReader> _readerCache = new HashMap<URI, PdfReader>();
+    private final Map<String, PdfReader> _readersByContent = new HashMap<String, PdfReader>();
 
     private PdfDestination _defaultDestination;
 
@@ -164,6 +174,23 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     
     private boolean haveOpacity = false;
 
+    /**
+     * Consecutive strings are written into one text object (BT ... ET), which
+     * stays open until something else is drawn. Within it the font, the
+     * rendering mode, the spacing and the text matrix are only written when
+     * they change, moves keeping the matrix are written as <code>Td</code>.
+     */
+    private boolean _inText;
+    private BaseFont _textFont;
+    private float _textFontSize;
+    private boolean _textFillStroke;
+    private float _textCharSpacing;
+    private float _textWordSpacing;
+    /** The text line matrix as written to the page, i.e. rounded like iText does it. */
+    private final double[] _textLineMatrix = new double[6];
+    private boolean _haveTextLineMatrix;
+    private final double[] _textMatrix = new double[6];
+
     public ITextOutputDevice(final float dotsPerPoint) {
         _dotsPerPoint = dotsPerPoint;
     }
@@ -183,6 +210,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     public void initializePage(final PdfContentByte currentPage, final float height) {
         _currentPage = currentPage;
         _pageHeight = height;
+        _inText = false;
 
         _currentPage.saveState();
 
@@ -204,6 +232,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public void finishPage() {
+        endText();
         _currentPage.restoreState();
     }
 
@@ -484,65 +513,199 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public void drawString(String s, final float x, final float y, final JustificationInfo info) {
-        if (Configuration.isTrue("xr.renderer.replace-missing-characters", false)) {
+        if (REPLACE_MISSING_CHARACTERS) {
             s = replaceMissingCharacters(s);
         }
         if (s.length() == 0)
             return;
+        if (_font.getRunEnd(s, 0) == s.length()) {
+            drawRun(s, x, y, info, _font.getFontDescription(s, 0));
+            return;
+        }
+
+        // Each run of characters in the same font starts where the previous
+        // one ends, as measured by ITextFSFont.getWidth() for the layout
+        float runX = x;
+        for (int start = 0; start < s.length(); ) {
+            final int end = _font.getRunEnd(s, start);
+            final FontDescription desc = _font.getFontDescription(s, start);
+            final String run = s.substring(start, end);
+            drawRun(run, runX, y, info, desc);
+            runX += desc.getWidth(run) / 1000f * _font.getSize2D();
+            if (info != null) {
+                for (int i = 0; i < run.length(); i++) {
+                    final char c = run.charAt(i);
+                    if (c == ' ' || c == '\u00a0' || c == '\u3000') {
+                        runX += info.getSpaceAdjust();
+                    } else {
+                        runX += info.getNonSpaceAdjust();
+                    }
+                }
+            }
+            start = end;
+        }
+    }
+
+    private void drawRun(final String s, final float x, final float y, final JustificationInfo info, final FontDescription desc) {
         final PdfContentByte cb = _currentPage;
         ensureFillColor();
-        final AffineTransform at = (AffineTransform) getTransform().clone();
-        at.translate(x, y);
-        final AffineTransform inverse = normalizeMatrix(at);
-        final AffineTransform flipper = AffineTransform.getScaleInstance(1, -1);
-        inverse.concatenate(flipper);
-        inverse.scale(_dotsPerPoint, _dotsPerPoint);
-        final double[] mx = new double[6];
-        inverse.getMatrix(mx);
-        cb.beginText();
+        final double[] mx = _textMatrix;
+        calcTextMatrix(x, y, mx);
         // Check if bold or italic need to be emulated
-        boolean resetMode = false;
-        final FontDescription desc = _font.getFontDescription();
+        boolean fillStroke = false;
         final float fontSize = _font.getSize2D() / _dotsPerPoint;
-        cb.setFontAndSize(desc.getFont(), fontSize);
-        float b = (float) mx[1];
-        float c = (float) mx[2];
         final FontSpecification fontSpec = getFontSpecification();
         if (fontSpec != null) {
             final int need = ITextFontResolver.convertWeightToInt(fontSpec.fontWeight);
             final int have = desc.getWeight();
             if (need > have) {
+                fillStroke = true;
+            }
+            if ((fontSpec.fontStyle == IdentValue.ITALIC) && (desc.getStyle() != IdentValue.ITALIC)) {
+                mx[1] = 0f;
+                mx[2] = 0.21256f;
+            }
+        }
+
+        if (!_inText) {
+            cb.beginText();
+            _inText = true;
+            _textFont = null;
+            _haveTextLineMatrix = false;
+        }
+        final boolean fontChanged = desc.getFont() != _textFont || fontSize != _textFontSize;
+        if (fontChanged) {
+            cb.setFontAndSize(desc.getFont(), fontSize);
+            _textFont = desc.getFont();
+            _textFontSize = fontSize;
+        }
+        if (fillStroke != _textFillStroke || (fillStroke && fontChanged)) {
+            if (fillStroke) {
                 cb.setTextRenderingMode(PdfContentByte.TEXT_RENDER_MODE_FILL_STROKE);
                 final float lineWidth = fontSize * 0.04f; // 4% of font size
                 cb.setLineWidth(lineWidth);
-                resetMode = true;
-            }
-            if ((fontSpec.fontStyle == IdentValue.ITALIC) && (desc.getStyle() != IdentValue.ITALIC)) {
-                b = 0f;
-                c = 0.21256f;
+            } else {
+                resetTextRenderingMode();
             }
+            _textFillStroke = fillStroke;
         }
-        cb.setTextMatrix((float) mx[0], b, c, (float) mx[3], (float) mx[4], (float) mx[5]);
+        moveToText(mx);
         if (info == null) {
+            setTextSpacing(0, 0);
+            cb.showText(s);
+        } else if (isSpacedBySpacingOperators(desc.getFont(), s)) {
+            setTextSpacing(info.getNonSpaceAdjust() / _dotsPerPoint,
+                    (info.getSpaceAdjust() - info.getNonSpaceAdjust()) / _dotsPerPoint);
             cb.showText(s);
         } else {
+            setTextSpacing(0, 0);
             final PdfTextArray array = makeJustificationArray(s, info);
             cb.showText(array);
         }
-        if (resetMode) {
-            cb.setTextRenderingMode(PdfContentByte.TEXT_RENDER_MODE_FILL);
-            cb.setLineWidth(1);
+    }
+
+    /**
+     * Whether justified text can be written with character and word spacing
+     * (<code>Tc</code>, <code>Tw</code>) instead of adjusting every glyph.
+     * Word spacing only applies to the single byte code 32, so the font must
+     * use a single byte encoding and the text must not contain other spaces.
+     */
+    private static boolean isSpacedBySpacingOperators(final BaseFont font, final String s) {
+        if (font.getFontType() != BaseFont.FONT_TYPE_T1 && font.getFontType() != BaseFont.FONT_TYPE_TT) {
+            return false;
+        }
+        return s.indexOf('\u00a0') == -1 && s.indexOf('\u3000') == -1;
+    }
+
+    private void setTextSpacing(final float charSpacing, final float wordSpacing) {
+        if (charSpacing != _textCharSpacing) {
+            _currentPage.setCharacterSpacing(charSpacing);
+            _textCharSpacing = charSpacing;
+        }
+        if (wordSpacing != _textWordSpacing) {
+            _currentPage.setWordSpacing(wordSpacing);
+            _textWordSpacing = wordSpacing;
+        }
+    }
+
+    /**
+     * Calculates the text matrix for a string drawn at (x, y), which is the
+     * current transform translated to (x, y), flipped to PDF coordinates and
+     * scaled from dots to points.
+     */
+    private void calcTextMatrix(final float x, final float y, final double[] mx) {
+        final AffineTransform t = _transform;
+        mx[0] = t.getScaleX() * _dotsPerPoint;
+        mx[1] = -t.getShearY() * _dotsPerPoint;
+        mx[2] = -t.getShearX() * _dotsPerPoint;
+        mx[3] = t.getScaleY() * _dotsPerPoint;
+        mx[4] = t.getScaleX() * x + t.getShearX() * y + t.getTranslateX();
+        mx[5] = _pageHeight - (t.getShearY() * x + t.getScaleY() * y + t.getTranslateY());
+    }
+
+    /**
+     * Moves to the start of the next string: with <code>Td</code> if only the
+     * position changes, otherwise by setting the whole text matrix. The
+     * position is tracked as a viewer will compute it from the rounded
+     * numbers written, so rounding errors don't add up along a line.
+     */
+    private void moveToText(final double[] mx) {
+        final double[] line = _textLineMatrix;
+        if (_haveTextLineMatrix &&
+                round(mx[0]) == line[0] && round(mx[1]) == line[1] &&
+                round(mx[2]) == line[2] && round(mx[3]) == line[3]) {
+            final double det = line[0] * line[3] - line[1] * line[2];
+            if (det != 0) {
+                final double dx = round(mx[4]) - line[4];
+                final double dy = round(mx[5]) - line[5];
+                final double tx = round((dx * line[3] - dy * line[2]) / det);
+                final double ty = round((dy * line[0] - dx * line[1]) / det);
+                _currentPage.moveText((float) tx, (float) ty);
+                line[4] += tx * line[0] + ty * line[2];
+                line[5] += tx * line[1] + ty * line[3];
+                return;
+            }
+        }
+
+        for (int i = 0; i < 6; i++) {
+            line[i] = round(mx[i]);
+        }
+        _currentPage.setTextMatrix((float) mx[0], (float) mx[1], (float) mx[2], (float) mx[3], (float) mx[4], (float) mx[5]);
+        _haveTextLineMatrix = true;
+    }
+
+    private static double round(final double value) {
+        return Double.parseDouble(ByteBuffer.formatDouble((float) value));
+    }
+
+    private void resetTextRenderingMode() {
+        _currentPage.setTextRenderingMode(PdfContentByte.TEXT_RENDER_MODE_FILL);
+        _currentPage.setLineWidth(1);
+    }
+
+    /**
+     * Closes the open text object, if any. Called before anything but text
+     * is written to the page.
+     */
+    private void endText() {
+        if (_inText) {
+            if (_textFillStroke) {
+                resetTextRenderingMode();
+                _textFillStroke = false;
+            }
+            setTextSpacing(0, 0);
+            _currentPage.endText();
+            _inText = false;
         }
-        cb.endText();
     }
 
     private String replaceMissingCharacters(final String string) {
         final char[] charArr = string.toCharArray();
-        final char replacementCharacter = Configuration.valueAsChar("xr.renderer.missing-character-replacement", '#');
+        final char replacementCharacter = MISSING_CHARACTER_REPLACEMENT;
 
         // first check to see if the replacement character even exists in the
         // given font. If not, then do nothing.
-        if (!_font.getFontDescription().getFont().charExists(replacementCharacter)) {
+        if (!_font.canDisplay(replacementCharacter)) {
             LOGGER.info( "Missing replacement character [" + replacementCharacter + ":" + (int) replacementCharacter
                     + "]. No replacement will occur.");
             return string;
@@ -551,8 +714,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         // iterate through each character in the string and make an appropriate
         // replacement
         for (int i = 0; i < charArr.length; i++) {
-            if (!(charArr[i] == ' ' || charArr[i] == '\u00a0' || charArr[i] == '\u3000' || _font.getFontDescription().getFont()
-                    .charExists(charArr[i]))) {
+            if (!(charArr[i] == ' ' || charArr[i] == '\u00a0' || charArr[i] == '\u3000' || _font.canDisplay(charArr[i]))) {
                 LOGGER.info( "Missing character [" + charArr[i] + ":" + (int) charArr[i] + "] in string [" + string
                         + "]. Replacing with '" + replacementCharacter + "'");
                 charArr[i] = replacementCharacter;
@@ -599,7 +761,12 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         }
     }
 
+    /**
+     * Returns the page for writing to it directly, the text written so far
+     * is finished first.
+     */
     public PdfContentByte getCurrentPage() {
+        endText();
         return _currentPage;
     }
 
@@ -608,6 +775,8 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         if (s == null)
             return;
 
+        endText();
+
         if (drawType == STROKE) {
             if (!(_stroke instanceof BasicStroke)) {
                 s = _stroke.createStrokedShape(s);
@@ -808,6 +977,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public void setClip(Shape s) {
+        endText();
         final PdfContentByte cb = _currentPage;
         cb.restoreState();
         cb.saveState();
@@ -829,11 +999,10 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
     }
 
     public void drawImage(final FSImage fsImage, final int x, final int y) {
+        endText();
         if (fsImage instanceof PDFAsImage) {
             drawPDFAsImage((PDFAsImage) fsImage, x, y);
         } else {
-            final Image image = ((ITextFSImage) fsImage).getImage();
-
             if (fsImage.getHeight() <= 0 || fsImage.getWidth() <= 0) {
                 return;
             }
@@ -850,6 +1019,8 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
             final double[] mx = new double[6];
             inverse.getMatrix(mx);
 
+            final Image image = ITextImageResampler.getInstance().resample(
+                    (ITextFSImage) fsImage, Math.hypot(mx[0], mx[1]), Math.hypot(mx[2], mx[3]));
             try {
                 _currentPage.addImage(image, (float) mx[0], (float) mx[1], (float) mx[2], (float) mx[3], (float) mx[4], (float) mx[5]);
             } catch (final DocumentException e) {
@@ -892,11 +1063,27 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         _currentPage.saveState();
     }
 
+    /**
+     * Returns the reader of the PDF at <code>url</code>. PDFs with the same
+     * contents share a reader, so their pages are only imported once.
+     */
     public PdfReader getReader(final URL url) throws IOException, URISyntaxException {
         final URI uri = url.toURI();
         PdfReader result = _readerCache.get(uri);
         if (result == null) {
-            result = new PdfReader(url);
+            final byte[] data;
+            final InputStream is = url.openStream();
+            try {
+                data = RandomAccessFileOrArray.InputStreamToArray(is);
+            } finally {
+                is.close();
+            }
+            final String hash = ContentHash.sha1(data);
+            result = _readersByContent.get(hash);
+            if (result == null) {
+                result = new PdfReader(data);
+                _readersByContent.put(hash, result);
+            }
             _readerCache.put(uri, result);
         }
         return result;
@@ -906,6 +1093,41 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
         return _dotsPerPoint;
     }
 
+    /**
+     * Forgets the document last written (bookmarks, metadata, imported PDFs
+     * and the drawing state), so the device can write another one.
+     */
+    public void reset() {
+        _currentPage = null;
+        _pageHeight = 0;
+        _font = null;
+        _transform = new AffineTransform();
+        _color = Color.BLACK;
+        _fillColor = null;
+        _strokeColor = null;
+        _stroke = null;
+        _originalStroke = null;
+        _oldStroke = null;
+        _clip = null;
+        _writer = null;
+        _readerCache.clear();
+        _readersByContent.clear();
+        _defaultDestination = null;
+        _bookmarks.clear();
+        _metadata.clear();
+        _root = null;
+        _startPageNo = 0;
+        _nextFormFieldIndex = 0;
+        _linkTargetAreas = null;
+        haveOpacity = false;
+        _inText = false;
+        _textFont = null;
+        _textFillStroke = false;
+        _textCharSpacing = 0;
+        _textWordSpacing = 0;
+        _haveTextLineMatrix = false;
+    }
+
     public void start(final Document doc) {
         loadBookmarks(doc);
         loadMetadata(doc);
@@ -1343,6 +1565,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 		final Color s = new Color(start.getRed(), start.getGreen(), start.getBlue());
 		final Color e = new Color(end.getRed(), end.getGreen(), end.getBlue());
 		final PdfShading shader = PdfShading.simpleAxial(_writer, x, y, x + width, y + height, s, e);
+		endText();
 		_currentPage.setShadingFill(new PdfShadingPattern(shader));
 		_currentPage.paintShading(shader);
 	}
@@ -1354,6 +1577,7 @@ public class ITextOutputDevice extends AbstractOutputDevice implements OutputDev
 			final PdfGState gs = new PdfGState();
 			gs.setBlendMode(PdfGState.BM_NORMAL);
 			gs.setFillOpacity(opacity);
+			endText();
 			_currentPage.setGState(gs);
 			haveOpacity = true;
 		}
@@ -41,6 +41,7 @@ import org.xhtmlrenderer.css.style.CalculatedStyle;
 import org.xhtmlrenderer.extend.NamespaceHandler;
 import org.xhtmlrenderer.extend.UserInterface;
 import org.xhtmlrenderer.layout.BoxBuilder;
+import org.xhtmlrenderer.layout.CompletedPageListener;
 import org.xhtmlrenderer.layout.Layer;
 import org.xhtmlrenderer.layout.LayoutContext;
 import org.xhtmlrenderer.layout.SharedContext;
@@ -54,6 +55,7 @@ import org.xhtmlrenderer.util.Configuration;
 import org.xhtmlrenderer.util.JsoupUtil;
 
 import com.lowagie.text.DocumentException;
+import com.lowagie.text.PageSize;
 import com.lowagie.text.pdf.PdfWriter;
 
 public class ITextRenderer {
@@ -86,23 +88,51 @@ public class ITextRenderer {
 
     private PDFCreationListener _listener;
 
+    private final ITextRendererFactory _factory;
+
     public ITextRenderer() {
         this(DEFAULT_DOTS_PER_POINT, DEFAULT_DOTS_PER_PIXEL);
     }
 
     public ITextRenderer(final float dotsPerPoint, final int dotsPerPixel) {
+        this(dotsPerPoint, dotsPerPixel, null);
+    }
+
+    /**
+     * Creates a renderer which uses the stylesheet cache, fonts and image
+     * cache of <code>factory</code>.
+     *
+     * @see ITextRendererFactory#createRenderer()
+     */
+    ITextRenderer(final ITextRendererFactory factory) {
+        this(factory.getDotsPerPoint(), factory.getDotsPerPixel(), factory);
+    }
+
+    private ITextRenderer(final float dotsPerPoint, final int dotsPerPixel, final ITextRendererFactory factory) {
         _dotsPerPoint = dotsPerPoint;
+        _factory = factory;
 
         _outputDevice = new ITextOutputDevice(_dotsPerPoint);
 
-        final ITextUserAgent userAgent = new ITextUserAgent(_outputDevice);
+        final ITextUserAgent userAgent;
+        if (factory == null) {
+            userAgent = new ITextUserAgent(_outputDevice);
+        } else {
+            userAgent = new ITextUserAgent(_outputDevice, factory.getImageCache());
+            userAgent.setStylesheetCache(factory.getStylesheetCache());
+        }
         _sharedContext = new SharedContext();
         _sharedContext.setUserAgentCallback(userAgent);
         _sharedContext.setCss(new StyleReference(userAgent));
         userAgent.setSharedContext(_sharedContext);
         _outputDevice.setSharedContext(_sharedContext);
 
-        final ITextFontResolver fontResolver = new ITextFontResolver(_sharedContext);
+        final ITextFontResolver fontResolver;
+        if (factory == null) {
+            fontResolver = new ITextFontResolver(_sharedContext);
+        } else {
+            fontResolver = factory.createFontResolver(_sharedContext);
+        }
         _sharedContext.setFontResolver(fontResolver);
 
         final ITextReplacedElementFactory replacedElementFactory = new ITextReplacedElementFactory(_outputDevice);
@@ -168,6 +198,37 @@ public class ITextRenderer {
         getFontResolver().importFontFaces(_sharedContext.getCss().getFontFaceRules());
     }
 
+    /**
+     * Forgets the current document, so the renderer can be used for the
+     * next one without building a new renderer. Registered fonts, the
+     * default stylesheet, cached stylesheets and images and resolved fonts
+     * are kept. The PDF version, encryption and creation listener are set
+     * back to their defaults.
+     *
+     * @see ITextRendererPool
+     */
+    public void reset() {
+        _doc = null;
+        _root = null;
+        _pdfDoc = null;
+        _writer = null;
+        _pdfEncryption = null;
+        _pdfVersion = null;
+        _listener = null;
+
+        getFontResolver().flushFontFaceFonts();
+        _sharedContext.reset();
+        _sharedContext.getCss().resetDocumentContext();
+        _outputDevice.reset();
+    }
+
+    /**
+     * @return the factory which created this renderer, or <code>null</code>
+     */
+    ITextRendererFactory getFactory() {
+        return _factory;
+    }
+
     public PDFEncryption getPDFEncryption() {
         return _pdfEncryption;
     }
@@ -280,6 +341,78 @@ public class ITextRenderer {
                 firstPage.getHeight(c) / _dotsPerPoint);
 
         final com.lowagie.text.Document doc = new com.lowagie.text.Document(firstPageSize, 0, 0, 0, 0);
+        final PdfWriter writer = createWriter(doc, os);
+
+        firePreOpen();
+        doc.open();
+
+        writePDF(pages, c, firstPageSize, doc, writer);
+
+        if (finish) {
+            fireOnClose();
+            doc.close();
+        }
+    }
+
+    /**
+     * Lays out the document and writes it as a PDF, writing each page as
+     * soon as layout has moved past it. The boxes on written pages are then
+     * released, so memory use doesn't grow with the length of the document.
+     * This replaces calling {@link #layout()} and
+     * {@link #createPDF(OutputStream)}.
+     * <p/>
+     * Some features need the whole document to be laid out and don't work
+     * on pages written during layout:
+     * <ul>
+     * <li><code>counter(pages)</code> gives the number of pages laid out so
+     * far (a warning is logged)</li>
+     * <li>links and <code>target-counter()</code> referring to content
+     * further on in the document are dropped</li>
+     * <li>absolute and fixed content of the root element is missing (a
+     * warning is logged)</li>
+     * <li>{@link PDFCreationListener#preWrite(ITextRenderer, int)} is given
+     * the number of pages laid out when the first page is written, not the
+     * final page count</li>
+     * </ul>
+     * Pages are held back while their content may still move, e.g. inside a
+     * paginated table, a block avoiding page breaks inside or a block with
+     * a fixed height. Such content stays in memory until it has been laid
+     * out completely.
+     * <p/>
+     * <B>NOTE:</B> Caller is responsible for cleaning up the OutputStream if
+     * something goes wrong.
+     */
+    public void createPDFIncrementally(final OutputStream os) throws DocumentException {
+        createPDFIncrementally(os, true);
+    }
+
+    public void createPDFIncrementally(final OutputStream os, final boolean finish) throws DocumentException {
+        final LayoutContext c = newLayoutContext();
+        final BlockBox root = BoxBuilder.createRootBox(c, _doc);
+        root.setContainingBlock(new ViewportBox(getInitialExtents(c)));
+        _root = root;
+
+        // The page size is set once the first page is known
+        final com.lowagie.text.Document doc = new com.lowagie.text.Document(PageSize.A4, 0, 0, 0, 0);
+        final PdfWriter writer = createWriter(doc, os);
+
+        final IncrementalWriter pageWriter = new IncrementalWriter(doc, writer);
+        c.setCompletedPageListener(pageWriter);
+        root.layout(c);
+        c.setCompletedPageListener(null);
+
+        final Dimension dim = root.getLayer().getPaintingDimension(c);
+        root.getLayer().trimEmptyPages(c, dim.height);
+
+        pageWriter.finish(c);
+
+        if (finish) {
+            fireOnClose();
+            doc.close();
+        }
+    }
+
+    private PdfWriter createWriter(final com.lowagie.text.Document doc, final OutputStream os) throws DocumentException {
         final PdfWriter writer = PdfWriter.getInstance(doc, os);
         if (_pdfVersion != null) {
             writer.setPdfVersion(_pdfVersion.charValue());
@@ -290,16 +423,12 @@ public class ITextRenderer {
         }
         _pdfDoc = doc;
         _writer = writer;
+        return writer;
+    }
 
-        firePreOpen();
-        doc.open();
-
-        writePDF(pages, c, firstPageSize, doc, writer);
-
-        if (finish) {
-            fireOnClose();
-            doc.close();
-        }
+    private com.lowagie.text.Rectangle getPageSize(final RenderingContext c, final PageBox page) {
+        return new com.lowagie.text.Rectangle(0, 0, page.getWidth(c) / _dotsPerPoint,
+                page.getHeight(c) / _dotsPerPoint);
     }
 
     private void firePreOpen() {
@@ -475,6 +604,84 @@ public class ITextRenderer {
         return _outputDevice.findPagePositionsByID(newLayoutContext(), pattern);
     }
 
+    /**
+     * Writes the pages completed during layout, and the rest of them once
+     * layout has finished.
+     */
+    private class IncrementalWriter implements CompletedPageListener {
+        private final com.lowagie.text.Document _pdfDocument;
+        private final PdfWriter _pdfWriter;
+
+        private RenderingContext _renderingContext;
+        private int _written;
+        private int _paintingTop;
+
+        IncrementalWriter(final com.lowagie.text.Document pdfDocument, final PdfWriter pdfWriter) {
+            _pdfDocument = pdfDocument;
+            _pdfWriter = pdfWriter;
+        }
+
+        public void pagesCompleted(final LayoutContext c, final int pageCount) {
+            write(c.getRootLayer().getPages(), pageCount);
+        }
+
+        void finish(final LayoutContext c) {
+            final List<PageBox> pages = _root.getLayer().getPages();
+            c.setRootDocumentLayer(c.getRootLayer());
+            for (int i = _written; i < pages.size(); i++) {
+                pages.get(i).layout(c);
+            }
+            write(pages, pages.size());
+
+            _outputDevice.finish(_renderingContext, _root);
+        }
+
+        private void write(final List<PageBox> pages, final int end) {
+            if (_renderingContext == null) {
+                start(pages);
+            }
+
+            final RenderingContext c = _renderingContext;
+            c.setPageCount(pages.size());
+            for (int i = _written; i < end; i++) {
+                final PageBox page = pages.get(i);
+                page.setPaintingTop(_paintingTop);
+                page.setPaintingBottom(_paintingTop + page.getContentHeight(c));
+                _paintingTop = page.getPaintingBottom();
+
+                if (i > 0) {
+                    final com.lowagie.text.Rectangle pageSize = getPageSize(c, page);
+                    _pdfDocument.setPageSize(pageSize);
+                    _pdfDocument.newPage();
+                    _outputDevice.initializePage(_pdfWriter.getDirectContent(), pageSize.getHeight());
+                }
+
+                c.setPage(i, page);
+                paintPage(c, _pdfWriter, page);
+                _outputDevice.finishPage();
+            }
+            _written = end;
+        }
+
+        private void start(final List<PageBox> pages) {
+            _renderingContext = newRenderingContext();
+
+            final com.lowagie.text.Rectangle firstPageSize = getPageSize(_renderingContext, pages.get(0));
+            _pdfDocument.setPageSize(firstPageSize);
+
+            firePreOpen();
+            _pdfDocument.open();
+
+            _outputDevice.setRoot(_root);
+            _outputDevice.start(_doc);
+            _outputDevice.setWriter(_pdfWriter);
+            _outputDevice.initializePage(_pdfWriter.getDirectContent(), firstPageSize.getHeight());
+
+            firePreWrite(pages.size()); // opportunity to adjust meta data
+            setDidValues(_pdfDocument); // set PDF header fields from meta data
+        }
+    }
+
     private static final class NullUserInterface implements UserInterface {
         public boolean isHover(final Element e) {
             return false;
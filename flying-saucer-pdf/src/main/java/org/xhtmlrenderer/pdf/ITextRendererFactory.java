@@ -0,0 +1,147 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.pdf;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xhtmlrenderer.layout.SharedContext;
+import org.xhtmlrenderer.resource.ImageResource;
+import org.xhtmlrenderer.swing.StylesheetCache;
+
+import com.lowagie.text.DocumentException;
+
+/**
+ * Creates {@link ITextRenderer}s which share their expensive resources:
+ * parsed stylesheets, registered fonts and decoded images. A factory is
+ * thread-safe, typically one is created when a server starts and each
+ * request gets its own renderer from {@link #createRenderer()}. Renderers
+ * themselves are still not thread-safe, an {@link ITextRendererPool} keeps
+ * them for reuse.
+ * <p/>
+ * Fonts should be added to the factory before renderers are created, a
+ * renderer only sees the fonts added before it was created.
+ */
+public class ITextRendererFactory {
+    // These two defaults combine to produce an effective resolution of 96 px to
+    // the inch
+    private static final float DEFAULT_DOTS_PER_POINT = 20f * 4f / 3f;
+    private static final int DEFAULT_DOTS_PER_PIXEL = 20;
+
+    private static final int DEFAULT_IMAGE_CACHE_SIZE = 256;
+
+    private final float _dotsPerPoint;
+    private final int _dotsPerPixel;
+
+    private final StylesheetCache _stylesheetCache = new StylesheetCache();
+    private final Map<String, ImageResource> _imageCache;
+
+    /**
+     * Holds the registered fonts, renderers get a copy. Guarded by this.
+     */
+    private final ITextFontResolver _fontResolver = new ITextFontResolver(null);
+
+    public ITextRendererFactory() {
+        this(DEFAULT_DOTS_PER_POINT, DEFAULT_DOTS_PER_PIXEL);
+    }
+
+    public ITextRendererFactory(final float dotsPerPoint, final int dotsPerPixel) {
+        this(dotsPerPoint, dotsPerPixel, DEFAULT_IMAGE_CACHE_SIZE);
+    }
+
+    /**
+     * @param imageCacheSize Number of decoded images to hold in the shared
+     * cache before the least recently used are released.
+     */
+    public ITextRendererFactory(final float dotsPerPoint, final int dotsPerPixel, final int imageCacheSize) {
+        _dotsPerPoint = dotsPerPoint;
+        _dotsPerPixel = dotsPerPixel;
+        _imageCache = Collections.synchronizedMap(
+                new LinkedHashMap<String, ImageResource>(imageCacheSize, 0.75f, true) {
+                    private static final long serialVersionUID = 1L;
+
+                    protected boolean removeEldestEntry(final Map.Entry<String, ImageResource> eldest) {
+                        return size() > imageCacheSize;
+                    }
+                });
+    }
+
+    /**
+     * Returns a new renderer using this factory's resources.
+     */
+    public ITextRenderer createRenderer() {
+        return new ITextRenderer(this);
+    }
+
+    public synchronized void addFontDirectory(final String dir, final boolean embedded)
+            throws DocumentException, IOException {
+        _fontResolver.addFontDirectory(dir, embedded);
+    }
+
+    public synchronized void addFont(final String path, final boolean embedded)
+            throws DocumentException, IOException {
+        _fontResolver.addFont(path, embedded);
+    }
+
+    public synchronized void addFont(final String path, final String encoding, final boolean embedded)
+            throws DocumentException, IOException {
+        _fontResolver.addFont(path, encoding, embedded);
+    }
+
+    public synchronized void addFont(final String path, final String encoding, final boolean embedded, final String pathToPFB)
+            throws DocumentException, IOException {
+        _fontResolver.addFont(path, encoding, embedded, pathToPFB);
+    }
+
+    public synchronized void addFont(final String path, final String fontFamilyNameOverride,
+                                     final String encoding, final boolean embedded, final String pathToPFB)
+            throws DocumentException, IOException {
+        _fontResolver.addFont(path, fontFamilyNameOverride, encoding, embedded, pathToPFB);
+    }
+
+    /**
+     * Empties the shared stylesheet and image caches, e.g. after the
+     * resources they were loaded from have changed.
+     */
+    public void flushCaches() {
+        _stylesheetCache.flushCachedStylesheets();
+        _imageCache.clear();
+    }
+
+    public float getDotsPerPoint() {
+        return _dotsPerPoint;
+    }
+
+    public int getDotsPerPixel() {
+        return _dotsPerPixel;
+    }
+
+    StylesheetCache getStylesheetCache() {
+        return _stylesheetCache;
+    }
+
+    Map<String, ImageResource> getImageCache() {
+        return _imageCache;
+    }
+
+    synchronized ITextFontResolver createFontResolver(final SharedContext sharedContext) {
+        return new ITextFontResolver(sharedContext, _fontResolver);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package org.xhtmlrenderer.pdf;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Keeps renderers created by an {@link ITextRendererFactory} for reuse.
+ * A renderer is taken with {@link #acquire()}, used for one document and
+ * handed back with {@link #release(ITextRenderer)}, which resets it. The
+ * pool is thread-safe, a renderer must only be used by one thread at a time.
+ * <pre>
+ * ITextRenderer renderer = pool.acquire();
+ * try {
+ *     renderer.setDocument(doc, url);
+ *     renderer.layout();
+ *     renderer.createPDF(os);
+ * } finally {
+ *     pool.release(renderer);
+ * }
+ * </pre>
+ */
+public class ITextRendererPool {
+    private final ITextRendererFactory _factory;
+    private final BlockingQueue<ITextRenderer> _idle;
+
+    /**
+     * @param maxIdle the number of renderers kept while not in use, usually
+     * the number of threads creating PDFs
+     */
+    public ITextRendererPool(final ITextRendererFactory factory, final int maxIdle) {
+        if (maxIdle < 1) {
+            throw new IllegalArgumentException("maxIdle must be at least 1");
+        }
+        _factory = factory;
+        _idle = new LinkedBlockingQueue<ITextRenderer>(maxIdle);
+    }
+
+    /**
+     * Returns an idle renderer, or a new one if there is none.
+     */
+    public ITextRenderer acquire() {
+        final ITextRenderer result = _idle.poll();
+        return result == null ? _factory.createRenderer() : result;
+    }
+
+    /**
+     * Resets <code>renderer</code> and keeps it for the next
+     * {@link #acquire()}, unless there are already enough idle renderers.
+     * The renderer must not be used anymore by the caller.
+     *
+     * @throws IllegalArgumentException if the renderer wasn't created by
+     * this pool's factory
+     */
+    public void release(final ITextRenderer renderer) {
+        if (renderer.getFactory() != _factory) {
+            throw new IllegalArgumentException("Renderer wasn't created by this pool's factory");
+        }
+        renderer.reset();
+        _idle.offer(renderer);
+    }
+
+    /**
+     * Drops all idle renderers.
+     */
+    public void clear() {
+        _idle.clear();
+    }
+
+    public int getIdleCount() {
+        return _idle.size();
+    }
+
+    public ITextRendererFactory getFactory() {
+        return _factory;
+    }
+}
@@ -28,6 +28,7 @@ import org.xhtmlrenderer.extend.TextRenderer;
 import org.xhtmlrenderer.pdf.ITextFontResolver.FontDescription;
 import org.xhtmlrenderer.render.FSFont;
 import org.xhtmlrenderer.render.FSFontMetrics;
+import org.xhtmlrenderer.render.FSTextWidths;
 import org.xhtmlrenderer.render.JustificationInfo;
 
 import com.lowagie.text.pdf.BaseFont;
@@ -69,8 +70,25 @@ public class ITextTextRenderer implements TextRenderer {
     }
 
     public int getWidth(final FontContext context, final FSFont font, final String string) {
-        final BaseFont bf = ((ITextFSFont)font).getFontDescription().getFont();
-        final float result = bf.getWidthPoint(string, font.getSize2D());
+        final int width = ((ITextFSFont)font).getWidth(string);
+        return round(width * 0.001f * font.getSize2D());
+    }
+
+    public FSTextWidths getTextWidths(final FontContext context, final FSFont font, final String string) {
+        final int[] prefixWidths = ((ITextFSFont)font).getPrefixWidths(string);
+        final float size = font.getSize2D();
+        return new FSTextWidths() {
+            public int getWidth(final int start, final int end) {
+                return round((prefixWidths[end] - prefixWidths[start]) * 0.001f * size);
+            }
+        };
+    }
+
+    /**
+     * Rounds a width in points down if it is within TEXT_MEASURING_DELTA of a
+     * whole point, up otherwise
+     */
+    private static int round(final float result) {
         if (result - Math.floor(result) < TEXT_MEASURING_DELTA) {
             return (int)result;
         } else {
@@ -24,6 +24,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +33,7 @@ import org.xhtmlrenderer.layout.SharedContext;
 import org.xhtmlrenderer.resource.ImageResource;
 import org.xhtmlrenderer.swing.NaiveUserAgent;
 
+import com.lowagie.text.BadElementException;
 import com.lowagie.text.Image;
 import com.lowagie.text.Rectangle;
 import com.lowagie.text.pdf.PdfReader;
@@ -40,15 +42,29 @@ import org.xhtmlrenderer.util.ImageUtil;
 public class ITextUserAgent extends NaiveUserAgent {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ITextUserAgent.class);
-    private static final int IMAGE_CACHE_CAPACITY = 32;
+    // URIs and contents of images, so an image takes two entries
+    private static final int IMAGE_CACHE_CAPACITY = 64;
 
     private SharedContext _sharedContext;
 
     private final ITextOutputDevice _outputDevice;
 
+    private final Map<String, ImageResource> _sharedImageCache;
+
     public ITextUserAgent(final ITextOutputDevice outputDevice) {
+        this(outputDevice, null);
+    }
+
+    /**
+     * @param sharedImageCache if not <code>null</code>, decoded images are
+     * cached here instead of in this user agent. The map must be thread-safe
+     * if it is shared by user agents on different threads, and should only be
+     * shared by user agents with the same dots per pixel.
+     */
+    public ITextUserAgent(final ITextOutputDevice outputDevice, final Map<String, ImageResource> sharedImageCache) {
         super(IMAGE_CACHE_CAPACITY);
         _outputDevice = outputDevice;
+        _sharedImageCache = sharedImageCache;
     }
 
     private byte[] readStream(final InputStream is) throws IOException {
@@ -68,7 +84,7 @@ public class ITextUserAgent extends NaiveUserAgent {
             resource = loadEmbeddedBase64ImageResource(uri);
         } else {
             uri = resolveURI(uri);
-            resource = _imageCache.get(uri);
+            resource = getCachedImage(uri);
             if (resource == null) {
                 final InputStream is = resolveAndOpenStream(uri);
                 if (is != null) {
@@ -82,11 +98,9 @@ public class ITextUserAgent extends NaiveUserAgent {
                             image.setInitialHeight(rect.getHeight() * _outputDevice.getDotsPerPoint());
                             resource = new ImageResource(uri, image);
                         } else {
-                            final Image image = Image.getInstance(readStream(is));
-                            scaleToOutputResolution(image);
-                            resource = new ImageResource(uri, new ITextFSImage(image));
+                            resource = getImageResource(uri, readStream(is));
                         }
-                        _imageCache.put(uri, resource);
+                        putCachedImage(uri, resource);
                     } catch (final Exception e) {
                         LOGGER.error("Can't read image file; unexpected problem for URI '" + uri + "'", e);
                     } finally {
@@ -100,20 +114,65 @@ public class ITextUserAgent extends NaiveUserAgent {
             }
 
             if (resource != null) {
-                resource = new ImageResource(resource.getImageUri(), (FSImage) ((ITextFSImage) resource.getImage()).clone());
+                resource = new ImageResource(resource.getImageUri(), copyImage(resource.getImage()));
             } else {
                 resource = new ImageResource(uri, null);
             }
         }
         return resource;
     }
+
+    /**
+     * Returns the image read from <code>data</code>. Images are cached by
+     * their contents too, so an image used with different URIs (or
+     * embedded in the document several times) is only read once, and
+     * its copies are written to the PDF once.
+     */
+    private ImageResource getImageResource(final String uri, final byte[] data) throws IOException, BadElementException {
+        final String hash = ContentHash.sha1(data);
+        final String key = "sha1:" + hash;
+        ImageResource result = getCachedImage(key);
+        if (result == null) {
+            final Image image = Image.getInstance(data);
+            scaleToOutputResolution(image);
+            result = new ImageResource(uri, new ITextFSImage(image,
+                    ITextImageResampler.getInstance().createSource(data, hash, image)));
+            putCachedImage(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of a cached image for a replaced element to scale.
+     */
+    private FSImage copyImage(final FSImage image) {
+        if (image instanceof PDFAsImage) {
+            return (FSImage) ((PDFAsImage) image).clone();
+        } else {
+            return (FSImage) ((ITextFSImage) image).clone();
+        }
+    }
     
+    protected boolean isResourceCached(final String uri) {
+        return getCachedImage(uri) != null || super.isResourceCached(uri);
+    }
+
+    private ImageResource getCachedImage(final String uri) {
+        return _sharedImageCache == null ? _imageCache.get(uri) : _sharedImageCache.get(uri);
+    }
+
+    private void putCachedImage(final String uri, final ImageResource resource) {
+        if (_sharedImageCache == null) {
+            _imageCache.put(uri, resource);
+        } else {
+            _sharedImageCache.put(uri, resource);
+        }
+    }
+
     private ImageResource loadEmbeddedBase64ImageResource(final String uri) {
         try {
             final byte[] buffer = ImageUtil.getEmbeddedBase64Image(uri);
-            final Image image = Image.getInstance(buffer);
-            scaleToOutputResolution(image);
-            return new ImageResource(null, new ITextFSImage(image));
+            return new ImageResource(null, copyImage(getImageResource(null, buffer).getImage()));
         } catch (final Exception e) {
             LOGGER.error("Can't read XHTML embedded image.", e);
         }
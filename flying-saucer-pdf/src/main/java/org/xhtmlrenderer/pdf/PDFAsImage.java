@@ -23,7 +23,7 @@ import java.net.URL;
 
 import org.xhtmlrenderer.extend.FSImage;
 
-public class PDFAsImage implements FSImage {
+public class PDFAsImage implements FSImage, Cloneable {
     private final URL _source;
     
     private float _width;
@@ -109,5 +109,14 @@ public class PDFAsImage implements FSImage {
     public float scaleWidth() {
         return _width / _unscaledWidth;
     }
-
+
+    public Object clone() {
+        final PDFAsImage result = new PDFAsImage(_source);
+        result._width = _width;
+        result._height = _height;
+        result._unscaledWidth = _unscaledWidth;
+        result._unscaledHeight = _unscaledHeight;
+        return result;
+    }
+
 }
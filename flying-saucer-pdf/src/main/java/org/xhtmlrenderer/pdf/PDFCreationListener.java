@@ -42,9 +42,15 @@ public interface PDFCreationListener {
      * This is an opportunity to modify any document metadata that will be used to generate
      * the PDF header fields (the document information dictionary). Document metadata may be accessed
      * through the {@link ITextOutputDevice} that is returned by {@link ITextRenderer#getOutputDevice()}.
+     * <p/>
+     * With {@link ITextRenderer#createPDFIncrementally(java.io.OutputStream)} this is called before
+     * the first page is written, while the rest of the document is still being laid out. The page
+     * count passed then is only the number of pages laid out so far. The final page count is known
+     * by the time {@link #onClose(ITextRenderer)} is called.
      *
      * @param iTextRenderer the renderer preparing the document
-     * @param pageCount the number of pages that will be written to the PDF document
+     * @param pageCount the number of pages that will be written to the PDF document, or the number
+     * laid out so far when the document is written incrementally
      */
     void preWrite(ITextRenderer iTextRenderer, int pageCount);
 
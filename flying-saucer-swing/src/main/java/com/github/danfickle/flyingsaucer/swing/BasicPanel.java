@@ -133,6 +133,11 @@ public abstract class BasicPanel extends RootPanel implements
             return;
         }
 
+        if (isLayoutOnLayoutThread()) {
+            paintLaidOutContent(g);
+            return;
+        }
+
         // if this is the first time painting this document, then calc layout
         Layer root = getRootLayer();
         if (root == null || isNeedRelayout()) {
@@ -153,6 +158,29 @@ public abstract class BasicPanel extends RootPanel implements
         }
     }
 
+    /**
+     * Paints the content laid out so far by the layout thread, see
+     * {@link #setAsyncLayout(boolean)}.
+     */
+    private void paintLaidOutContent(final Graphics g) {
+        if (isNeedRelayout() || (getRootLayer() == null && ! isLayoutRunning())) {
+            startDocumentLayout(g);
+        }
+
+        if (lockLayout()) {
+            try {
+                final Layer root = getRootLayer();
+                if (root != null) {
+                    doRender(newRenderingContext((Graphics2D) g.create()), root);
+                    return;
+                }
+            } finally {
+                unlockLayout();
+            }
+        }
+        paintDefaultBackground(g);
+    }
+
     protected void doRender(final RenderingContext c, final Layer root) {
         try {
             // paint the normal swing background first
@@ -33,6 +33,14 @@ import java.awt.event.MouseEvent;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 
 import javax.swing.CellRendererPane;
@@ -59,14 +67,17 @@ import org.xhtmlrenderer.extend.FSCanvas;
 import org.xhtmlrenderer.extend.NamespaceHandler;
 import org.xhtmlrenderer.extend.UserInterface;
 import org.xhtmlrenderer.layout.BoxBuilder;
+import org.xhtmlrenderer.layout.IncrementalLayout;
 import org.xhtmlrenderer.layout.Layer;
 import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.layout.LayoutProgressListener;
 import org.xhtmlrenderer.layout.SharedContext;
 import org.xhtmlrenderer.render.BlockBox;
 import org.xhtmlrenderer.render.Box;
 import org.xhtmlrenderer.render.PageBox;
 import org.xhtmlrenderer.render.RenderingContext;
 import org.xhtmlrenderer.render.ViewportBox;
+import org.xhtmlrenderer.simple.extend.form.FormFieldFactory;
 import org.xhtmlrenderer.swing.Java2DFontContext;
 import org.xhtmlrenderer.swing.Java2DOutputDevice;
 import org.xhtmlrenderer.swing.RepaintListener;
@@ -81,6 +92,7 @@ public class RootPanel extends JPanel implements ComponentListener,
 
     private Box rootBox = null;
     private boolean needRelayout = false;
+    private boolean needIncrementalRelayout = false;
     private CellRendererPane cellRendererPane;
     protected Map<DocumentListener, DocumentListener> documentListeners;
 
@@ -100,11 +112,29 @@ public class RootPanel extends JPanel implements ComponentListener,
 
     private volatile LayoutContext layoutContext;
 
+    // How long painting waits for the layout thread before it only paints
+    // the background
+    private static final long LAYOUT_LOCK_TIMEOUT_MS = 50;
+
+    private boolean asyncLayout = Configuration.isTrue("xr.use.threads", false) &&
+            Configuration.isTrue("xr.incremental.enabled", false);
+
+    // Held by the layout thread, except where the content laid out so far
+    // can be painted
+    private final ReentrantLock layoutLock = new ReentrantLock(true);
+    private ExecutorService layoutExecutor;
+    private LayoutTask layoutTask;
+    private volatile boolean layoutPaintable = true;
+    private volatile boolean paintPending;
+    private boolean documentHasFormFields;
+
     public void setDocument(final Document doc, final String url, final NamespaceHandler nsh) {
+        cancelDocumentLayout(true);
 		fireDocumentStarted();
 		resetScrollPosition();
         setRootBox(null);
         this.doc = doc;
+        this.documentHasFormFields = hasFormFields(doc);
 
         //have to do this first
         if (Configuration.isTrue("xr.cache.stylesheets", true)) {
@@ -300,7 +330,10 @@ public class RootPanel extends JPanel implements ComponentListener,
 
     public void doDocumentLayout(final Graphics g) {
         try {
-            this.removeAll();
+            final boolean incremental = isNeedIncrementalRelayout() && ! isExtentsHaveChanged();
+            if (! incremental) {
+                this.removeAll();
+            }
             if (g == null) {
                 return;
             }
@@ -313,108 +346,435 @@ public class RootPanel extends JPanel implements ComponentListener,
                 this.layoutContext = c;
             }
 
-            final long start = System.currentTimeMillis();
-
             BlockBox root = (BlockBox)getRootBox();
-            if (root != null && isNeedRelayout()) {
-                root.reset(c);
-            } else {
-                root = BoxBuilder.createRootBox(c, doc);
-                setRootBox(root);
+            if (! incremental || ! layoutIncrementally(c, root)) {
+                if (incremental) {
+                    this.removeAll();
+                }
+                root = layoutDocument(c, getRootBox() != null && isNeedRelayout(), getInitialExtents(c));
             }
+            documentLaidOut(c, root, root.getLayer().getPaintingDimension(c));
+            layoutPaintable = true;
+        } catch (final ThreadDeath t) {
+            throw t;
+        } catch (final Throwable t) {
+            handleLayoutException(t);
+        }
+    }
+
+    /**
+     * Lays out only the content of the document which has been resized again,
+     * see {@link IncrementalLayout}. If this returns <code>false</code>, the
+     * whole document must be laid out again.
+     */
+    private boolean layoutIncrementally(final LayoutContext c, final BlockBox root) {
+        final long start = System.currentTimeMillis();
+        if (IncrementalLayout.layout(c, root)) {
+            LOGGER.info( "Incremental layout took " + (System.currentTimeMillis() - start) + "ms");
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Lays out the document again or for the first time and returns its
+     * root box.
+     *
+     * @param reset whether to reuse the boxes of the previous layout
+     */
+    private BlockBox layoutDocument(final LayoutContext c, final boolean reset, final Rectangle extents) {
+        final long start = System.currentTimeMillis();
+
+        BlockBox root = (BlockBox)getRootBox();
+        if (reset) {
+            root.reset(c);
+            root.setContainingBlock(new ViewportBox(extents));
+        } else {
+            root = BoxBuilder.createRootBox(c, doc);
+            root.setContainingBlock(new ViewportBox(extents));
+            setRootBox(root);
+        }
+
+        initFontFromComponent(root);
+
+        root.layout(c);
+
+        final long end = System.currentTimeMillis();
+
+        LOGGER.info( "Layout took " + (end - start) + "ms");
 
-            initFontFromComponent(root);
+        /*
+        System.out.println(root.dump(c, "", BlockBox.DUMP_LAYOUT));
+        */
 
-            root.setContainingBlock(new ViewportBox(getInitialExtents(c)));
+        return root;
+    }
+
+    /**
+     * Sizes the panel to fit the document once it has been laid out.
+     */
+    private void documentLaidOut(final LayoutContext c, final BlockBox root, final Dimension intrinsic_size) {
+        // if there is a fixed child then we need to set opaque to false
+        // so that the entire viewport will be repainted. this is slower
+        // but that's the hit you get from using fixed layout
+        if (root.getLayer().containsFixedContent()) {
+            super.setOpaque(false);
+        } else {
+            super.setOpaque(true);
+        }
 
-            root.layout(c);
+        LOGGER.trace( "after layout: " + root);
 
-            final long end = System.currentTimeMillis();
+        if (c.isPrint()) {
+            root.getLayer().trimEmptyPages(c, intrinsic_size.height);
+            root.getLayer().layoutPages(c);
+        }
 
-            LOGGER.info( "Layout took " + (end - start) + "ms");
+        setPreferredSize(intrinsic_size);
+        revalidate();
 
-            /*
-            System.out.println(root.dump(c, "", BlockBox.DUMP_LAYOUT));
-            */
+        // if doc is shorter than viewport
+        // then stretch canvas to fill viewport exactly
+        // then adjust the body element accordingly
+        if (enclosingScrollPane != null) {
+            if (intrinsic_size.height < enclosingScrollPane.getViewport().getHeight()) {
+                //Uu.p("int height is less than viewport height");
+                // XXX Not threadsafe
+                if (enclosingScrollPane.getViewport().getHeight() != this.getHeight()) {
+                    this.setPreferredSize(new Dimension(
+                            intrinsic_size.width, enclosingScrollPane.getViewport().getHeight()));
+                    this.revalidate();
+                }
+                //Uu.p("need to do the body hack");
+                if (root != null && ! c.isPrint()) {
+                    intrinsic_size.height = root.getHeight();
+                }
+            }
 
-    // if there is a fixed child then we need to set opaque to false
-    // so that the entire viewport will be repainted. this is slower
-    // but that's the hit you get from using fixed layout
+            // turn on simple scrolling mode if there's any fixed elements
             if (root.getLayer().containsFixedContent()) {
-                super.setOpaque(false);
+                // Uu.p("is fixed");
+                enclosingScrollPane.getViewport().setScrollMode(JViewport.SIMPLE_SCROLL_MODE);
             } else {
-                super.setOpaque(true);
+                // Uu.p("is not fixed");
+                enclosingScrollPane.getViewport().setScrollMode(default_scroll_mode);
             }
+        }
+
+        this.fireDocumentLoaded();
+        /* FIXME
+        if (Configuration.isTrue("xr.image.background.greedy", false)) {
+            EventQueue.invokeLater(new Runnable() {
+                public void run() {
+                    LOGGER.info("loading images in document and css greedily");
+                    requestBGImages(getRootBox());
+                }
+            });
+        }*/
+    }
 
-            LOGGER.trace( "after layout: " + root);
+    /**
+     * Whether the document is laid out on a thread of its own instead of the
+     * event dispatch thread. The content laid out so far is painted while
+     * layout goes on, and layout is cancelled when the document or the width
+     * of the panel changes. Defaults to the <code>xr.incremental.enabled</code>
+     * configuration property, along with <code>xr.use.threads</code>.
+     * <p>
+     * Documents with form controls are still laid out on the event dispatch
+     * thread, since laying them out creates the Swing components of the
+     * controls and adds them to the panel.
+     */
+    public boolean isAsyncLayout() {
+        return asyncLayout;
+    }
+
+    public void setAsyncLayout(final boolean asyncLayout) {
+        if (! asyncLayout) {
+            cancelDocumentLayout(true);
+        }
+        this.asyncLayout = asyncLayout;
+    }
 
-            final Dimension intrinsic_size = root.getLayer().getPaintingDimension(c);
+    /**
+     * Whether the current document is laid out on the layout thread, see
+     * {@link #setAsyncLayout(boolean)}.
+     */
+    protected boolean isLayoutOnLayoutThread() {
+        return asyncLayout && ! documentHasFormFields && ! getSharedContext().isPrint();
+    }
 
-            if (c.isPrint()) {
-                root.getLayer().trimEmptyPages(c, intrinsic_size.height);
-                root.getLayer().layoutPages(c);
+    private static boolean hasFormFields(final Document doc) {
+        if (doc != null) {
+            for (final Element e : doc.getAllElements()) {
+                if (FormFieldFactory.isFormField(e)) {
+                    return true;
+                }
             }
+        }
+        return false;
+    }
 
-            setPreferredSize(intrinsic_size);
-            revalidate();
-
-            // if doc is shorter than viewport
-            // then stretch canvas to fill viewport exactly
-            // then adjust the body element accordingly
-            if (enclosingScrollPane != null) {
-                if (intrinsic_size.height < enclosingScrollPane.getViewport().getHeight()) {
-                    //Uu.p("int height is less than viewport height");
-                    // XXX Not threadsafe
-                    if (enclosingScrollPane.getViewport().getHeight() != this.getHeight()) {
-                        this.setPreferredSize(new Dimension(
-                                intrinsic_size.width, enclosingScrollPane.getViewport().getHeight()));
-                        this.revalidate();
-                    }
-                    //Uu.p("need to do the body hack");
-                    if (root != null && ! c.isPrint()) {
-                        intrinsic_size.height = root.getHeight();
-                    }
+    /**
+     * Whether the layout thread is laying out the document, see
+     * {@link #setAsyncLayout(boolean)}. Must be called on the event dispatch
+     * thread.
+     */
+    public boolean isLayoutRunning() {
+        return layoutTask != null;
+    }
+
+    /**
+     * Starts laying out the document on the layout thread, see
+     * {@link #setAsyncLayout(boolean)}. A layout still running for an earlier
+     * width is cancelled, laying out resized content waits until it is done.
+     */
+    protected void startDocumentLayout(final Graphics g) {
+        final boolean incremental = isNeedIncrementalRelayout() && ! isExtentsHaveChanged();
+        if (incremental && isLayoutRunning()) {
+            return;
+        }
+
+        cancelDocumentLayout(false);
+        if (! incremental) {
+            removeAll();
+        }
+
+        final LayoutContext c = newLayoutContext((Graphics2D) g);
+        final LayoutTask task = new LayoutTask(
+                c, incremental, getRootBox() != null && isNeedRelayout(), getInitialExtents(c));
+        setNeedRelayout(false);
+        layoutTask = task;
+        getLayoutExecutor().execute(task);
+    }
+
+    /**
+     * Cancels the layout running on the layout thread. Its boxes are only
+     * partly laid out, so the document is laid out again from scratch.
+     *
+     * @param wait whether to wait until the layout thread has stopped
+     */
+    protected void cancelDocumentLayout(final boolean wait) {
+        final LayoutTask task = layoutTask;
+        if (task == null) {
+            return;
+        }
+        layoutTask = null;
+        task.c.cancel();
+        setRootBox(null);
+        setNeedRelayout(false);
+        if (wait) {
+            task.await();
+        }
+    }
+
+    /**
+     * Waits a little for the layout thread to reach a point where the
+     * document can be painted. If this returns <code>true</code>,
+     * {@link #unlockLayout()} must be called once painting is done.
+     */
+    protected boolean lockLayout() {
+        boolean locked;
+        try {
+            locked = layoutLock.tryLock(LAYOUT_LOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            locked = false;
+        }
+
+        if (locked && ! layoutPaintable) {
+            layoutLock.unlock();
+            locked = false;
+        }
+        if (! locked) {
+            // Repainted as soon as layout gets there
+            paintPending = true;
+        }
+        return locked;
+    }
+
+    protected void unlockLayout() {
+        layoutLock.unlock();
+    }
+
+    private ExecutorService getLayoutExecutor() {
+        if (layoutExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(final Runnable r) {
+                    final Thread result = new Thread(r, "Document layout");
+                    result.setDaemon(true);
+                    return result;
                 }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            layoutExecutor = executor;
+        }
+        return layoutExecutor;
+    }
+
+    private void showLaidOutContent(final LayoutTask task, final Dimension size) {
+        if (task != layoutTask) {
+            return;
+        }
+        if (task.reset) {
+            // Don't scroll back while the document grows to its height again
+            size.height = Math.max(size.height, getPreferredSize().height);
+        }
+        setPreferredSize(size);
+        revalidate();
+        repaint();
+    }
+
+    private void layoutFinished(final LayoutTask task, final BlockBox root, final Dimension intrinsic_size) {
+        if (task != layoutTask) {
+            return;
+        }
+        layoutTask = null;
+        synchronized (this) {
+            this.layoutContext = task.c;
+        }
+        try {
+            documentLaidOut(task.c, root, intrinsic_size);
+        } catch (final ThreadDeath t) {
+            throw t;
+        } catch (final Throwable t) {
+            handleLayoutException(t);
+        }
+        // Also lays out content resized in the meantime
+        repaint();
+    }
+
+    private void layoutFailed(final LayoutTask task, final Throwable t) {
+        if (task != layoutTask) {
+            return;
+        }
+        layoutTask = null;
+        handleLayoutException(t);
+    }
+
+    /**
+     * Lays out the document on the layout thread. Whenever painting waits for
+     * it, or the document has grown for a while, the layout lock is released
+     * at the next point where the content laid out so far can be painted.
+     */
+    private class LayoutTask implements Runnable, LayoutProgressListener {
+        private final LayoutContext c;
+        private final boolean incremental;
+        private final boolean reset;
+        private final Rectangle extents;
+
+        private final int repaintInterval = Configuration.valueAsInt("xr.incremental.repaint-interval", 100);
+        private final int layoutDelay = Configuration.valueAsInt("xr.incremental.debug.layoutdelay", 0);
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private long nextRepaint;
+
+        LayoutTask(final LayoutContext c, final boolean incremental, final boolean reset, final Rectangle extents) {
+            this.c = c;
+            this.incremental = incremental;
+            this.reset = reset;
+            this.extents = extents;
+        }
 
-                // turn on simple scrolling mode if there's any fixed elements
-                if (root.getLayer().containsFixedContent()) {
-                    // Uu.p("is fixed");
-                    enclosingScrollPane.getViewport().setScrollMode(JViewport.SIMPLE_SCROLL_MODE);
-                } else {
-                    // Uu.p("is not fixed");
-                    enclosingScrollPane.getViewport().setScrollMode(default_scroll_mode);
+        public void run() {
+            layoutLock.lock();
+            try {
+                if (c.isCancelled()) {
+                    return;
                 }
+                layoutPaintable = false;
+
+                // Components are only added and removed on the event
+                // dispatch thread, documents with form controls are not
+                // laid out here
+                nextRepaint = System.currentTimeMillis() + repaintInterval;
+                c.setLayoutProgressListener(this);
+                final BlockBox root = incremental && layoutIncrementally(c, (BlockBox)getRootBox()) ?
+                        (BlockBox)getRootBox() : layoutDocument(c, reset, extents);
+                c.setLayoutProgressListener(null);
+
+                final Dimension intrinsic_size = root.getLayer().getPaintingDimension(c);
+                layoutPaintable = true;
+                EventQueue.invokeLater(new Runnable() {
+                    public void run() {
+                        layoutFinished(LayoutTask.this, root, intrinsic_size);
+                    }
+                });
+            } catch (final CancellationException e) {
+                LOGGER.debug("Layout cancelled");
+            } catch (final ThreadDeath t) {
+                throw t;
+            } catch (final Throwable t) {
+                if (! c.isCancelled()) {
+                    EventQueue.invokeLater(new Runnable() {
+                        public void run() {
+                            layoutFailed(LayoutTask.this, t);
+                        }
+                    });
+                }
+            } finally {
+                layoutLock.unlock();
+                done.countDown();
             }
+        }
+
+        public boolean isUpdateWanted() {
+            return layoutLock.hasQueuedThreads() || paintPending || layoutDelay > 0 ||
+                    System.currentTimeMillis() >= nextRepaint;
+        }
 
-            this.fireDocumentLoaded();
-            /* FIXME
-            if (Configuration.isTrue("xr.image.background.greedy", false)) {
+        public void contentLaidOut(final LayoutContext c, final int bottom) {
+            if (paintPending || System.currentTimeMillis() >= nextRepaint) {
+                paintPending = false;
+                nextRepaint = System.currentTimeMillis() + repaintInterval;
+                final Dimension size = new Dimension(extents.width, bottom);
                 EventQueue.invokeLater(new Runnable() {
                     public void run() {
-                        LOGGER.info("loading images in document and css greedily");
-                        requestBGImages(getRootBox());
+                        showLaidOutContent(LayoutTask.this, size);
                     }
                 });
-            }*/
-        } catch (final ThreadDeath t) {
-            throw t;
-        } catch (final Throwable t) {
-            if (documentListeners.size() > 0) {
-                fireOnLayoutException(t);
-            } else {
-                if (t instanceof Error) {
-                    throw (Error)t;
-                }
-                if (t instanceof RuntimeException) {
-                    throw (RuntimeException)t;
+            }
+
+            // The lock is fair, so painting waiting for it goes first
+            layoutPaintable = true;
+            layoutLock.unlock();
+            try {
+                if (layoutDelay > 0) {
+                    Thread.sleep(layoutDelay);
                 }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                layoutLock.lock();
+                layoutPaintable = false;
+            }
+        }
 
-                // "Shouldn't" happen
-                LOGGER.error(t.getMessage(), t);
+        void await() {
+            try {
+                done.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
     }
 
+    private void handleLayoutException(final Throwable t) {
+        if (documentListeners.size() > 0) {
+            fireOnLayoutException(t);
+        } else {
+            if (t instanceof Error) {
+                throw (Error)t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException)t;
+            }
+
+            // "Shouldn't" happen
+            LOGGER.error(t.getMessage(), t);
+        }
+    }
+
     private void initFontFromComponent(final BlockBox root) {
         if (isDefaultFontFromComponent()) {
             final CalculatedStyle style = root.getStyle();
@@ -551,6 +911,18 @@ public class RootPanel extends JPanel implements ComponentListener,
         }
     }
 
+    /**
+     * Like {@link #relayout()}, but only lays out the parts of the document
+     * showing replaced elements (e.g. images which have finished loading)
+     * whose size has changed since the last layout, if it can.
+     */
+    protected void relayoutResizedContent() {
+        if (doc != null) {
+            setNeedIncrementalRelayout();
+            repaint();
+        }
+    }
+
     public void componentShown(final ComponentEvent e) {
     }
 
@@ -583,6 +955,9 @@ public class RootPanel extends JPanel implements ComponentListener,
     }
 
     public Box find(final int x, final int y) {
+        if (isLayoutRunning()) {
+            return null;
+        }
         final Layer l = getRootLayer();
         if (l != null) {
             return l.find(layoutContext, x, y, false);
@@ -617,6 +992,21 @@ public class RootPanel extends JPanel implements ComponentListener,
 
     protected synchronized void setNeedRelayout(final boolean needRelayout) {
         this.needRelayout = needRelayout;
+        this.needIncrementalRelayout = false;
+    }
+
+    protected synchronized boolean isNeedIncrementalRelayout() {
+        return needIncrementalRelayout;
+    }
+
+    /**
+     * Requests an incremental layout unless a full one is already pending.
+     */
+    protected synchronized void setNeedIncrementalRelayout() {
+        if (! needRelayout) {
+            needRelayout = true;
+            needIncrementalRelayout = true;
+        }
     }
 
     // On-demand repaint requests for async image loading
@@ -631,7 +1021,7 @@ public class RootPanel extends JPanel implements ComponentListener,
         if (!doLayout || el > maxRepaintRequestWaitMs || pendingRepaintCount > 5) {
             LOGGER.debug( "*** Repainting panel, by request, el: " + el + " pending " + pendingRepaintCount);
             if (doLayout) {
-                relayout();
+                relayoutResizedContent();
             } else {
                 repaint();
             }
@@ -112,6 +112,9 @@ public class ScalableXHTMLPanel extends XHTMLPanel {
 	 * @param y the displayed y position
 	 */
 	public Box find(final int x, final int y) {
+		if (isLayoutRunning()) {
+			return null;
+		}
 		final Point p = convertFromScaled(x, y);
 		final Layer l = getRootLayer();
 		if (l != null) {
@@ -0,0 +1,137 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package com.github.danfickle.flyingsaucer.swing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.event.ContainerEvent;
+import java.awt.event.ContainerListener;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xhtmlrenderer.event.DefaultDocumentListener;
+import org.xhtmlrenderer.simple.HtmlNamespaceHandler;
+
+/**
+ * Checks that laying out documents on the layout thread leaves adding and
+ * removing the Swing components of form controls to the event dispatch
+ * thread.
+ */
+public class AsyncLayoutTest {
+    private static final String FORM =
+            "<html><body><form><p>Name <input type='text' name='n'/></p>" +
+            "<p><textarea name='t'>text</textarea> <select name='s'><option>a</option></select></p></form></body></html>";
+
+    private final List<String> _offThread = Collections.synchronizedList(new ArrayList<String>());
+
+    private XHTMLPanel _panel;
+    private CountDownLatch _loaded;
+
+    @Before
+    public void setUp() throws Exception {
+        EventQueue.invokeAndWait(new Runnable() {
+            public void run() {
+                _panel = new XHTMLPanel();
+                _panel.setSize(800, 600);
+                _panel.setAsyncLayout(true);
+                _panel.getSharedContext().setReplacedElementFactory(new SwingReplacedElementFactory());
+                _panel.addDocumentListener(new DefaultDocumentListener() {
+                    public void documentLoaded() {
+                        _loaded.countDown();
+                    }
+                });
+                _panel.addContainerListener(new ContainerListener() {
+                    public void componentAdded(final ContainerEvent e) {
+                        check("added");
+                    }
+
+                    public void componentRemoved(final ContainerEvent e) {
+                        check("removed");
+                    }
+
+                    private void check(final String what) {
+                        if (! EventQueue.isDispatchThread()) {
+                            _offThread.add(what + " on " + Thread.currentThread().getName());
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Test
+    public void documentWithFormControlsIsLaidOutOnTheEventDispatchThread() throws Exception {
+        show(FORM);
+        assertFalse(_panel.isLayoutOnLayoutThread());
+        assertEquals(3, getComponentCount());
+        assertEquals(Collections.<String>emptyList(), _offThread);
+    }
+
+    @Test
+    public void documentWithoutFormControlsIsLaidOutOnTheLayoutThread() throws Exception {
+        show(FORM);
+        show("<html><body><p>No form controls here</p></body></html>");
+        assertTrue(_panel.isLayoutOnLayoutThread());
+        assertNotNull(_panel.getRootBox());
+        assertEquals(0, getComponentCount());
+        assertEquals(Collections.<String>emptyList(), _offThread);
+
+        show(FORM);
+        assertEquals(3, getComponentCount());
+        assertEquals(Collections.<String>emptyList(), _offThread);
+    }
+
+    /**
+     * Sets the document, paints the panel and waits until the document has
+     * been laid out.
+     */
+    private void show(final String html) throws Exception {
+        _loaded = new CountDownLatch(1);
+        EventQueue.invokeAndWait(new Runnable() {
+            public void run() {
+                _panel.setDocumentFromString(html, "file:///test.html", new HtmlNamespaceHandler());
+                final BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB);
+                final Graphics2D g = image.createGraphics();
+                _panel.paintComponent(g);
+                g.dispose();
+            }
+        });
+        assertTrue("layout timed out", _loaded.await(30, TimeUnit.SECONDS));
+    }
+
+    private int getComponentCount() throws Exception {
+        final int[] result = new int[1];
+        EventQueue.invokeAndWait(new Runnable() {
+            public void run() {
+                result[0] = _panel.getComponentCount();
+            }
+        });
+        return result[0];
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * {{{ header & license
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public License
+ * as published by the Free Software Foundation; either version 2.1
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.	See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ * }}}
+ */
+package com.github.danfickle.flyingsaucer.swing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jsoup.nodes.Element;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xhtmlrenderer.extend.ReplacedElement;
+import org.xhtmlrenderer.extend.ReplacedElementFactory;
+import org.xhtmlrenderer.extend.UserAgentCallback;
+import org.xhtmlrenderer.layout.LayoutContext;
+import org.xhtmlrenderer.render.BlockBox;
+import org.xhtmlrenderer.render.Box;
+import org.xhtmlrenderer.render.InlineLayoutBox;
+import org.xhtmlrenderer.render.InlineText;
+import org.xhtmlrenderer.render.LineBox;
+import org.xhtmlrenderer.simple.HtmlNamespaceHandler;
+import org.xhtmlrenderer.simple.extend.FormSubmissionListener;
+
+/**
+ * Checks that laying out a document again after an image has been resized
+ * gives the same boxes as laying it out from scratch.
+ */
+public class IncrementalLayoutTest {
+    private final Map<String, Dimension> _sizes = new HashMap<String, Dimension>();
+
+    private BufferedImage _image;
+    private Graphics2D _g;
+
+    @Before
+    public void setUp() {
+        _image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_ARGB);
+        _g = _image.createGraphics();
+    }
+
+    @After
+    public void tearDown() {
+        _g.dispose();
+    }
+
+    @Test
+    public void inlineImage() {
+        check(true, "<p>text <img src='a'/> more text</p><div style='margin:20px'><p style='margin:15px'>x</p></div><p>tail</p>");
+    }
+
+    @Test
+    public void collapsedMargins() {
+        check(true, "<div style='margin:30px 0'><div style='margin:20px 0'><p style='margin:25px 0'>img <img src='a'/></p></div></div>" +
+                "<div style='margin:40px 0'><p style='margin:10px'>after</p></div><p>tail</p>");
+        check(true, "<div style='margin:20px 0'></div><p style='margin:30px 0'><img src='a'/></p><div style='margin:15px 0'></div><p>tail</p>");
+    }
+
+    @Test
+    public void blockImage() {
+        check(true, "<div><img src='a' style='display:block;margin:10px'/></div><h1>After</h1><p>tail</p>");
+    }
+
+    @Test
+    public void fixedSizeBox() {
+        check(true, "<div style='width:300px;height:200px;overflow:hidden;border:1px solid'><p>a <img src='a'/> b</p></div><p>tail</p>");
+        check(true, "<div style='float:right;width:100px;height:80px;overflow:hidden'><img src='a'/></div><p>x</p><p>tail</p>");
+    }
+
+    @Test
+    public void positionedContent() {
+        check(true, "<div style='position:relative'><p>x <img src='a'/></p><p>after</p>" +
+                "<div style='position:absolute;top:5px;left:5px;width:50px'>abs</div></div>" +
+                "<div style='position:absolute;bottom:0'>bot</div><p>tail</p>");
+        check(true, "<div style='position:relative'><p>x <img src='a'/></p><div style='position:absolute'>abs static</div><p>after</p></div><p>tail</p>");
+        check(false, "<p>x <span style='position:relative;top:3px'>r</span> <img src='a'/></p><p>tail</p>");
+    }
+
+    @Test
+    public void severalImages() {
+        check(true, "<p><img src='a'/></p><div style='width:200px;height:100px;overflow:auto'><img src='b'/></div><p><img src='c'/></p><p>tail</p>");
+        check(true, "<div><div><div><section><p>x <img src='a'/></p><p>y</p></section><p>z</p></div></div><p>w <img src='b'/></p></div><p>tail</p>");
+    }
+
+    @Test
+    public void tablesAndLists() {
+        check(true, "<table><tr><td>c <img src='a'/></td><td>d</td></tr></table><p>tail</p>");
+        check(true, "<ul><li>one <img src='a'/></li><li>two</li></ul><p>tail</p>");
+    }
+
+    @Test
+    public void floatsInTheSameFormattingContext() {
+        check(false, "<div style='float:right;width:100px'>f</div><p>x <img src='a'/></p><p>tail</p>");
+        check(false, "<p>x <img src='a'/></p><div style='float:left;width:40px;height:40px'>f</div><p>tail</p>");
+        check(false, "<p>x <img src='a'/><span style='float:right;width:40px;height:40px'>f</span></p><p>tail</p>");
+        check(false, "<div style='overflow:hidden'><div style='float:left;width:30px;height:200px'>f</div><p>x <img src='a'/></p></div><p>tail</p>");
+        check(false, "<div style='float:left'><p>x <img src='a'/></p></div><p>tail</p>");
+    }
+
+    @Test
+    public void floatsInOtherFormattingContexts() {
+        check(true, "<div style='overflow:hidden'><div style='float:left;width:50px'>f</div>g</div><p>x <img src='a'/></p>" +
+                "<div style='overflow:hidden'><div style='float:right;width:60px;height:90px'>f</div>h</div><p>tail</p>");
+        check(true, "<table><tr><td><div style='float:left'>f</div>cell</td></tr></table><p>x <img src='a'/></p><p>tail</p>");
+    }
+
+    /**
+     * Lays out <code>body</code> with small images, makes them bigger, lays
+     * it out again and compares the result with a new layout.
+     * <code>incremental</code> is whether only the affected content should
+     * have been laid out again.
+     */
+    private void check(final boolean incremental, final String body) {
+        final String html = "<html><head><style>body { margin: 8px }</style></head><body>" + body + "</body></html>";
+
+        _sizes.put("a", new Dimension(10, 10));
+        _sizes.put("b", new Dimension(10, 10));
+        _sizes.put("c", new Dimension(10, 10));
+        final TestPanel panel = newPanel(html);
+        final Box lastLine = getLastLine(panel.getRootBox());
+
+        _sizes.put("a", new Dimension(220, 140));
+        _sizes.put("b", new Dimension(50, 300));
+        _sizes.put("c", new Dimension(5, 3));
+        panel.relayoutIncrementally(_g);
+
+        assertEquals(body, incremental, getLastLine(panel.getRootBox()) == lastLine);
+        assertEquals(body, describe(newPanel(html)), describe(panel));
+    }
+
+    private TestPanel newPanel(final String html) {
+        final TestPanel panel = new TestPanel();
+        panel.setSize(800, 600);
+        panel.getSharedContext().setReplacedElementFactory(new TestReplacedElementFactory());
+        panel.setDocumentFromString(html, "file:///test.html", new HtmlNamespaceHandler());
+        panel.layout(_g);
+        return panel;
+    }
+
+    private static String describe(final TestPanel panel) {
+        final StringBuilder result = new StringBuilder();
+        describe(panel.getRootBox(), "", result);
+        result.append("preferred size ").append(panel.getPreferredSize()).append('\n');
+        result.append("painted ").append(
+                panel.getRootBox().calcPaintingInfo(panel.getLayoutContext(), true).getAggregateBounds());
+        return result.toString();
+    }
+
+    private static void describe(final Box box, final String indent, final StringBuilder result) {
+        result.append(indent).append(box.getClass().getSimpleName()).append(' ')
+                .append(box.getAbsX()).append(',').append(box.getAbsY()).append(' ')
+                .append(box.getWidth()).append('x').append(box.getHeight()).append('\n');
+        for (int i = 0; i < box.getChildCount(); i++) {
+            describe(box.getChild(i), indent + "  ", result);
+        }
+        if (box instanceof LineBox) {
+            for (final Box content : ((LineBox)box).getNonFlowContent()) {
+                describe(content, indent + "  ", result);
+            }
+        } else if (box instanceof InlineLayoutBox) {
+            final InlineLayoutBox iB = (InlineLayoutBox)box;
+            for (int i = 0; i < iB.getInlineChildCount(); i++) {
+                final Object child = iB.getInlineChild(i);
+                if (child instanceof Box) {
+                    describe((Box)child, indent + "  ", result);
+                } else {
+                    result.append(indent).append("  text ").append(((InlineText)child).getX()).append('\n');
+                }
+            }
+        }
+    }
+
+    private static Box getLastLine(final Box box) {
+        Box result = box instanceof LineBox ? box : null;
+        for (int i = 0; i < box.getChildCount(); i++) {
+            final Box line = getLastLine(box.getChild(i));
+            if (line != null) {
+                result = line;
+            }
+        }
+        return result;
+    }
+
+    private static class TestPanel extends XHTMLPanel {
+        private static final long serialVersionUID = 1L;
+
+        public void layout(final Graphics2D g) {
+            doDocumentLayout(g);
+            setNeedRelayout(false);
+        }
+
+        public void relayoutIncrementally(final Graphics2D g) {
+            setNeedIncrementalRelayout();
+            layout(g);
+        }
+    }
+
+    private class TestReplacedElementFactory implements ReplacedElementFactory {
+        private final Map<Element, TestReplacedElement> _elements = new HashMap<Element, TestReplacedElement>();
+
+        public ReplacedElement createReplacedElement(final LayoutContext c, final BlockBox box,
+                final UserAgentCallback uac, final int cssWidth, final int cssHeight) {
+            final Element e = box.getElement();
+            if (e == null || ! e.nodeName().equals("img")) {
+                return null;
+            }
+            TestReplacedElement result = _elements.get(e);
+            if (result == null) {
+                result = new TestReplacedElement(e.attr("src"));
+                _elements.put(e, result);
+            }
+            return result;
+        }
+
+        public void reset() {
+        }
+
+        public void remove(final Element e) {
+        }
+
+        public void setFormSubmissionListener(final FormSubmissionListener listener) {
+        }
+    }
+
+    /**
+     * An image whose size can be changed after it has been laid out.
+     */
+    private class TestReplacedElement implements ReplacedElement {
+        private final String _src;
+        private Point _location = new Point(0, 0);
+
+        public TestReplacedElement(final String src) {
+            _src = src;
+        }
+
+        public int getIntrinsicWidth() {
+            return _sizes.get(_src).width;
+        }
+
+        public int getIntrinsicHeight() {
+            return _sizes.get(_src).height;
+        }
+
+        public Point getLocation() {
+            return _location;
+        }
+
+        public void setLocation(final int x, final int y) {
+            _location = new Point(x, y);
+        }
+
+        public void detach(final LayoutContext c) {
+        }
+
+        public boolean isRequiresInteractivePaint() {
+            return false;
+        }
+
+        public boolean hasBaseline() {
+            return false;
+        }
+
+        public int getBaseline() {
+            return 0;
+        }
+    }
+}